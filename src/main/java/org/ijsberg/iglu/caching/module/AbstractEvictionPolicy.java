@@ -0,0 +1,191 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import org.ijsberg.iglu.util.caching.EvictionPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Base class for eviction policies that maintain their bookkeeping under a lock.
+ * <p/>
+ * Cache hits are not applied to the bookkeeping right away. They are written to
+ * striped, lossy buffers that are drained by whichever thread obtains the lock
+ * without having to wait for it. This keeps the read path free of blocking.
+ * Writes acquire the lock, drain the buffers and apply the update.
+ * All bookkeeping operations of subclasses must run in (amortized) constant time.
+ */
+public abstract class AbstractEvictionPolicy<K> implements EvictionPolicy<K> {
+
+	private static final int NROF_STRIPES = 4;
+	private static final int STRIPE_SIZE = 32;
+	private static final int DRAIN_THRESHOLD = 16;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final AtomicReferenceArray<K>[] readBuffers;
+	private final AtomicInteger[] readCounters;
+
+	protected long maximumWeight;
+
+	protected AbstractEvictionPolicy(long maximumWeight) {
+		this.maximumWeight = maximumWeight;
+		readBuffers = new AtomicReferenceArray[NROF_STRIPES];
+		readCounters = new AtomicInteger[NROF_STRIPES];
+		for (int i = 0; i < NROF_STRIPES; i++) {
+			readBuffers[i] = new AtomicReferenceArray<K>(STRIPE_SIZE);
+			readCounters[i] = new AtomicInteger();
+		}
+	}
+
+	public void setMaximumWeight(long maximumWeight) {
+		lock.lock();
+		try {
+			this.maximumWeight = maximumWeight;
+			onResize();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	/**
+	 * Adds the key to a read buffer. Older accesses may be overwritten
+	 * if the buffer isn't drained in time, which is acceptable
+	 * since only the trend in access patterns matters.
+	 *
+	 * @param key
+	 */
+	public void recordAccess(K key) {
+		int stripe = (int) Thread.currentThread().getId() & (NROF_STRIPES - 1);
+		int index = readCounters[stripe].getAndIncrement();
+		readBuffers[stripe].lazySet(index & (STRIPE_SIZE - 1), key);
+		if ((index & (DRAIN_THRESHOLD - 1)) == DRAIN_THRESHOLD - 1 && lock.tryLock()) {
+			try {
+				drainReadBuffers();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	public List<K> recordStore(K key, int weight) {
+		List<K> evicted = new ArrayList<K>(1);
+		lock.lock();
+		try {
+			drainReadBuffers();
+			onStore(key, weight, evicted);
+		} finally {
+			lock.unlock();
+		}
+		return evicted;
+	}
+
+	public List<K> recordStores(Map<K, Integer> weights) {
+		List<K> evicted = new ArrayList<K>();
+		lock.lock();
+		try {
+			drainReadBuffers();
+			for (Map.Entry<K, Integer> entry : weights.entrySet()) {
+				onStore(entry.getKey(), entry.getValue(), evicted);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return evicted;
+	}
+
+	public void recordRemoval(K key) {
+		lock.lock();
+		try {
+			drainReadBuffers();
+			onRemoval(key);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void clear() {
+		lock.lock();
+		try {
+			for (int i = 0; i < NROF_STRIPES; i++) {
+				for (int j = 0; j < STRIPE_SIZE; j++) {
+					readBuffers[i].set(j, null);
+				}
+			}
+			onClear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void drainReadBuffers() {
+		for (int i = 0; i < NROF_STRIPES; i++) {
+			for (int j = 0; j < STRIPE_SIZE; j++) {
+				K key = readBuffers[i].getAndSet(j, null);
+				if (key != null) {
+					onAccess(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Invoked under lock.
+	 *
+	 * @param key
+	 */
+	protected abstract void onAccess(K key);
+
+	/**
+	 * Invoked under lock. Must stop tracking the entries it evicts
+	 * and add their keys to the given list.
+	 *
+	 * @param key
+	 * @param weight
+	 * @param evicted list to add victims to
+	 */
+	protected abstract void onStore(K key, int weight, List<K> evicted);
+
+	/**
+	 * Invoked under lock.
+	 *
+	 * @param key
+	 */
+	protected abstract void onRemoval(K key);
+
+	/**
+	 * Invoked under lock.
+	 */
+	protected abstract void onClear();
+
+	/**
+	 * Invoked under lock after the maximum weight has changed.
+	 * Entries will be evicted on subsequent stores.
+	 */
+	protected void onResize() {
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import org.ijsberg.iglu.util.caching.CachedObject;
+
+import java.io.*;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Binary file containing cached objects, used to warm up a cache after a restart.
+ * <p/>
+ * Entries are written and read one at a time, so that neither writing nor reading
+ * requires the complete contents to be held in memory. Each entry is serialized
+ * separately, so that an entry that fails to serialize can be left out.
+ * A snapshot is written to a temporary file first and replaces the previous
+ * snapshot once it is complete.
+ */
+public class CacheSnapshot<K, V> {
+
+	private static final int MAGIC = 0x49474c43;// 'IGLC'
+	private static final int VERSION = 2;
+
+	private final File file;
+
+	/**
+	 * @param file location of the snapshot
+	 */
+	public CacheSnapshot(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return true if a snapshot is available
+	 */
+	public boolean exists() {
+		return file.exists();
+	}
+
+	/**
+	 * Writes a snapshot. Placeholders of objects being retrieved and entries
+	 * that are not serializable are skipped.
+	 *
+	 * @param entries
+	 * @return the number of entries written
+	 * @throws IOException if the snapshot could not be written, in which case the previous snapshot is retained
+	 */
+	public int write(Collection<Map.Entry<K, CachedObject<V>>> entries) throws IOException {
+		File tempFile = new File(file.getPath() + ".tmp");
+		int count = 0;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			for (Map.Entry<K, CachedObject<V>> entry : entries) {
+				CachedObject<V> co = entry.getValue();
+				if (co == null || co.isBeingRetrieved()) {
+					continue;
+				}
+				byte[] data = serialize(entry.getKey(), co);
+				if (data == null) {
+					continue;
+				}
+				out.writeBoolean(true);
+				out.writeInt(data.length);
+				out.write(data);
+				count++;
+			}
+			out.writeBoolean(false);
+		} catch (IOException e) {
+			out.close();
+			tempFile.delete();
+			throw e;
+		}
+		out.close();
+		if (file.exists() && !file.delete() || !tempFile.renameTo(file)) {
+			tempFile.delete();
+			throw new IOException("unable to replace snapshot " + file);
+		}
+		return count;
+	}
+
+	private static byte[] serialize(Object key, CachedObject<?> co) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(key);
+			out.writeObject(co);
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			//key or object (or something it refers to) is not serializable
+			return null;
+		}
+	}
+
+	/**
+	 * @return a reader positioned at the first entry of the snapshot
+	 * @throws IOException if the snapshot is absent or not a cache snapshot
+	 */
+	public Reader openReader() throws IOException {
+		return new Reader();
+	}
+
+	/**
+	 * Reads entries from a snapshot one at a time.
+	 */
+	public class Reader {
+
+		private final DataInputStream in;
+
+		private Reader() throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				in.close();
+				throw new IOException("file " + file + " is not a cache snapshot of version " + VERSION);
+			}
+		}
+
+		/**
+		 * @return the next entry or null if the snapshot is exhausted
+		 * @throws IOException
+		 * @throws ClassNotFoundException if the class of a cached object is not available
+		 */
+		public Map.Entry<K, CachedObject<V>> readEntry() throws IOException, ClassNotFoundException {
+			if (!in.readBoolean()) {
+				return null;
+			}
+			byte[] data = new byte[in.readInt()];
+			in.readFully(data);
+			ObjectInputStream entryIn = new ObjectInputStream(new ByteArrayInputStream(data));
+			try {
+				K key = (K) entryIn.readObject();
+				CachedObject<V> co = (CachedObject<V>) entryIn.readObject();
+				return new AbstractMap.SimpleImmutableEntry<K, CachedObject<V>>(key, co);
+			} finally {
+				entryIn.close();
+			}
+		}
+
+		public void close() {
+			try {
+				in.close();
+			} catch (IOException ignore) {
+			}
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import org.ijsberg.iglu.util.caching.CacheStorage;
+import org.ijsberg.iglu.util.caching.CachedObject;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lock-striped cache storage.
+ * Lookups do not lock at all, writes only lock the segment a key belongs to.
+ * <p/>
+ * Like the ConcurrentHashMap it is based on, this storage does not accept null keys.
+ */
+public class ConcurrentCacheStorage<K, V> implements CacheStorage<K, V> {
+
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+	private final ConcurrentHashMap<K, CachedObject<V>> data;
+
+	/**
+	 * Constructs storage with a default number of segments.
+	 */
+	public ConcurrentCacheStorage() {
+		this(DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * @param concurrencyLevel estimated number of concurrently writing threads
+	 */
+	public ConcurrentCacheStorage(int concurrencyLevel) {
+		data = new ConcurrentHashMap<K, CachedObject<V>>(50, 0.75f, concurrencyLevel);
+	}
+
+	public CachedObject<V> get(K key) {
+		return data.get(key);
+	}
+
+	/**
+	 * Reads do not lock, so keys are simply looked up one by one.
+	 */
+	public Map<K, CachedObject<V>> getAll(Collection<K> keys) {
+		HashMap<K, CachedObject<V>> retval = new HashMap<K, CachedObject<V>>(keys.size());
+		for (K key : keys) {
+			CachedObject<V> cachedObject = data.get(key);
+			if (cachedObject != null) {
+				retval.put(key, cachedObject);
+			}
+		}
+		return retval;
+	}
+
+	public CachedObject<V> put(K key, CachedObject<V> cachedObject) {
+		return data.put(key, cachedObject);
+	}
+
+	public CachedObject<V> putIfAbsent(K key, CachedObject<V> cachedObject) {
+		return data.putIfAbsent(key, cachedObject);
+	}
+
+	public Map<K, CachedObject<V>> putAll(Map<K, CachedObject<V>> cachedObjects) {
+		HashMap<K, CachedObject<V>> previous = new HashMap<K, CachedObject<V>>();
+		for (Map.Entry<K, CachedObject<V>> entry : cachedObjects.entrySet()) {
+			CachedObject<V> cachedObject = data.put(entry.getKey(), entry.getValue());
+			if (cachedObject != null) {
+				previous.put(entry.getKey(), cachedObject);
+			}
+		}
+		return previous;
+	}
+
+	public CachedObject<V> remove(K key) {
+		return data.remove(key);
+	}
+
+	public boolean remove(K key, CachedObject<V> cachedObject) {
+		return data.remove(key, cachedObject);
+	}
+
+	/**
+	 * @return a weakly consistent view on all entries
+	 */
+	public Collection<Map.Entry<K, CachedObject<V>>> entries() {
+		return data.entrySet();
+	}
+
+	public int size() {
+		return data.size();
+	}
+
+	public void clear() {
+		data.clear();
+	}
+
+	public String toString() {
+		return "concurrent storage";
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import java.util.Arrays;
+
+/**
+ * Count-min sketch that estimates how often keys have been seen recently.
+ * Counters saturate at 15. All counters are halved once the number of
+ * increments reaches a sample size, so that old popularity fades.
+ * <p/>
+ * The table can be enlarged as the number of distinct keys grows,
+ * at the expense of the counts collected so far.
+ * <p/>
+ * This class is not thread safe.
+ */
+public class FrequencySketch<K> {
+
+	private static final int[] SEEDS = {0x97cb3127, 0xb3c4c0a5, 0x5bd1e995, 0x7a646e4d};
+	private static final int MAX_COUNT = 15;
+	private static final int MAX_TABLE_SIZE = 1 << 26;
+
+	private byte[] table;
+	private int mask;
+	private int sampleSize;
+	private int additions;
+
+	/**
+	 * @param capacity expected number of distinct keys in the cache
+	 */
+	public FrequencySketch(long capacity) {
+		allocate(tableSizeFor(capacity));
+	}
+
+	/**
+	 * Enlarges the table if it's too small for the given number of distinct keys.
+	 * All counters are reset in that case.
+	 *
+	 * @param capacity number of distinct keys in the cache
+	 */
+	public void ensureCapacity(long capacity) {
+		int size = tableSizeFor(capacity);
+		if (size > table.length) {
+			allocate(size);
+		}
+	}
+
+	/**
+	 * @return number of counters in the table
+	 */
+	public int getTableSize() {
+		return table.length;
+	}
+
+	private void allocate(int size) {
+		table = new byte[size];
+		mask = size - 1;
+		sampleSize = 10 * size;
+		additions = 0;
+	}
+
+	private static int tableSizeFor(long capacity) {
+		int size = 16;
+		while (size < capacity && size < MAX_TABLE_SIZE) {
+			size <<= 1;
+		}
+		return size;
+	}
+
+	/**
+	 * @param key
+	 */
+	public void increment(K key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int i = 0; i < SEEDS.length; i++) {
+			int index = indexOf(hash, i);
+			if (table[index] < MAX_COUNT) {
+				table[index]++;
+				added = true;
+			}
+		}
+		if (added && ++additions >= sampleSize) {
+			age();
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return estimated number of recent occurrences of key, 15 at most
+	 */
+	public int frequency(K key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAX_COUNT;
+		for (int i = 0; i < SEEDS.length; i++) {
+			frequency = Math.min(frequency, table[indexOf(hash, i)]);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Resets all counters.
+	 */
+	public void clear() {
+		Arrays.fill(table, (byte) 0);
+		additions = 0;
+	}
+
+	private void age() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] >>= 1;
+		}
+		additions /= 2;
+	}
+
+	private int indexOf(int hash, int i) {
+		int h = (hash ^ SEEDS[i]) * 0x9e3779b9;
+		h ^= h >>> 16;
+		return h & mask;
+	}
+
+	private static int spread(int hash) {
+		hash ^= hash >>> 17;
+		hash *= 0xed5ad4bb;
+		hash ^= hash >>> 11;
+		return hash;
+	}
+}
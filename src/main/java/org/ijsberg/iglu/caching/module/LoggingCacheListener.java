@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import org.ijsberg.iglu.logging.Level;
+import org.ijsberg.iglu.logging.LogEntry;
+import org.ijsberg.iglu.util.caching.CacheListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs a sample of cache events.
+ * Only one out of every n events is logged, so that tracing a busy cache
+ * does not turn every cache operation into a write to the log.
+ */
+public class LoggingCacheListener<K, V> implements CacheListener<K, V> {
+
+	private final int sampleInterval;
+	private final Level level;
+	private final AtomicLong nrofEvents = new AtomicLong();
+
+	/**
+	 * @param sampleInterval 1 to log every event, n to log one out of n events
+	 * @param level          level of the log entries
+	 */
+	public LoggingCacheListener(int sampleInterval, Level level) {
+		if (sampleInterval < 1) {
+			throw new IllegalArgumentException("sample interval must be at least 1");
+		}
+		this.sampleInterval = sampleInterval;
+		this.level = level;
+	}
+
+	private boolean isSampled() {
+		return sampleInterval == 1 || nrofEvents.getAndIncrement() % sampleInterval == 0;
+	}
+
+	public void onStore(K key, V object) {
+		if (isSampled()) {
+			System.out.println(new LogEntry(level, "object with key " + key + " stored in cache"));
+		}
+	}
+
+	public void onRemoval(K key) {
+		if (isSampled()) {
+			System.out.println(new LogEntry(level, "object with key " + key + " removed from cache"));
+		}
+	}
+
+	public void onEviction(K key) {
+		if (isSampled()) {
+			System.out.println(new LogEntry(level, "object with key " + key + " evicted from cache"));
+		}
+	}
+
+	public void onExpiry(K key) {
+		if (isSampled()) {
+			System.out.println(new LogEntry(level, "object with key " + key + " expired"));
+		}
+	}
+
+	public String toString() {
+		return "logging 1 of " + sampleInterval + " events";
+	}
+}
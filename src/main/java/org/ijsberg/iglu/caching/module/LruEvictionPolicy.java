@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evicts the least recently used entries once the maximum weight is exceeded.
+ */
+public class LruEvictionPolicy<K> extends AbstractEvictionPolicy<K> {
+
+	//ordered from least to most recently used
+	private final LinkedHashMap<K, Integer> order = new LinkedHashMap<K, Integer>(64, 0.75f, true);
+	private volatile long totalWeight;
+
+	/**
+	 * @param maximumWeight maximum total weight of all entries
+	 */
+	public LruEvictionPolicy(long maximumWeight) {
+		super(maximumWeight);
+	}
+
+	public long getTotalWeight() {
+		return totalWeight;
+	}
+
+	protected void onAccess(K key) {
+		order.get(key);
+	}
+
+	protected void onStore(K key, int weight, List<K> evicted) {
+		Integer previousWeight = order.put(key, weight);
+		totalWeight += weight - (previousWeight != null ? previousWeight : 0);
+		Iterator<Map.Entry<K, Integer>> i = order.entrySet().iterator();
+		while (totalWeight > maximumWeight && i.hasNext()) {
+			Map.Entry<K, Integer> eldest = i.next();
+			i.remove();
+			totalWeight -= eldest.getValue();
+			evicted.add(eldest.getKey());
+		}
+	}
+
+	protected void onRemoval(K key) {
+		Integer weight = order.remove(key);
+		if (weight != null) {
+			totalWeight -= weight;
+		}
+	}
+
+	protected void onClear() {
+		order.clear();
+		totalWeight = 0;
+	}
+
+	public String toString() {
+		return "LRU";
+	}
+}
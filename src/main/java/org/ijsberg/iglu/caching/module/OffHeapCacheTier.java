@@ -0,0 +1,265 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import org.ijsberg.iglu.util.caching.CachedObject;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Second cache tier that keeps serialized cached objects outside the heap,
+ * in slabs of direct memory.
+ * <p/>
+ * Slabs are filled one after another. Once all slabs are full, the oldest slab
+ * is recycled and the objects it contains are dropped. Space of objects that are
+ * removed earlier is reclaimed when their slab is recycled.
+ * Objects that are not serializable or that do not fit in a slab are not stored.
+ */
+public class OffHeapCacheTier<K, V> {
+
+	private final ByteBuffer[] slabs;
+	private final ArrayList<K>[] slabKeys;
+	private final HashMap<K, Location> index = new HashMap<K, Location>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private int currentSlab;
+
+	//statistics
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private long stored;
+	private long rejected;
+	private long dropped;
+
+	private static class Location {
+		private final int slab;
+		private final int offset;
+		private final int length;
+
+		private Location(int slab, int offset, int length) {
+			this.slab = slab;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * @param capacity total size in bytes
+	 * @param slabSize size of a slab in bytes, reduced if the capacity does not hold at least 2 slabs
+	 */
+	public OffHeapCacheTier(long capacity, int slabSize) {
+		slabSize = (int) Math.max(1, Math.min(slabSize, capacity / 2));
+		int nrofSlabs = (int) Math.max(2, capacity / slabSize);
+		slabs = new ByteBuffer[nrofSlabs];
+		slabKeys = new ArrayList[nrofSlabs];
+		for (int i = 0; i < nrofSlabs; i++) {
+			slabs[i] = ByteBuffer.allocateDirect(slabSize);
+			slabKeys[i] = new ArrayList<K>();
+		}
+	}
+
+	/**
+	 * Stores a serialized copy of a cached object, replacing any previous copy.
+	 *
+	 * @param key
+	 * @param cachedObject
+	 * @return true if the object was stored
+	 */
+	public boolean store(K key, CachedObject<V> cachedObject) {
+		byte[] data = serialize(cachedObject);
+		lock.writeLock().lock();
+		try {
+			index.remove(key);
+			if (data == null || data.length > slabs[currentSlab].capacity()) {
+				rejected++;
+				return false;
+			}
+			if (data.length > slabs[currentSlab].remaining()) {
+				recycleNextSlab();
+			}
+			ByteBuffer slab = slabs[currentSlab];
+			index.put(key, new Location(currentSlab, slab.position(), data.length));
+			slabKeys[currentSlab].add(key);
+			slab.put(data);
+			stored++;
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void recycleNextSlab() {
+		currentSlab = (currentSlab + 1) % slabs.length;
+		for (K key : slabKeys[currentSlab]) {
+			Location location = index.get(key);
+			if (location != null && location.slab == currentSlab) {
+				index.remove(key);
+				dropped++;
+			}
+		}
+		slabKeys[currentSlab].clear();
+		slabs[currentSlab].clear();
+	}
+
+	/**
+	 * Removes a cached object from this tier.
+	 * Since this happens on every miss of the heap tier, absent keys
+	 * are looked up without obtaining the write lock.
+	 *
+	 * @param key
+	 * @return the deserialized object or null if absent
+	 */
+	public CachedObject<V> remove(K key) {
+		lock.readLock().lock();
+		try {
+			if (!index.containsKey(key)) {
+				misses.incrementAndGet();
+				return null;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		byte[] data;
+		lock.writeLock().lock();
+		try {
+			Location location = index.remove(key);
+			if (location == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			data = new byte[location.length];
+			ByteBuffer slab = slabs[location.slab].duplicate();
+			slab.position(location.offset);
+			slab.get(data);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		hits.incrementAndGet();
+		return deserialize(data);
+	}
+
+	/**
+	 * Drops the copy of an object, if any.
+	 *
+	 * @param key
+	 */
+	public void discard(K key) {
+		lock.readLock().lock();
+		try {
+			if (!index.containsKey(key)) {
+				return;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		lock.writeLock().lock();
+		try {
+			index.remove(key);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Drops all objects.
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			index.clear();
+			for (int i = 0; i < slabs.length; i++) {
+				slabKeys[i].clear();
+				slabs[i].clear();
+			}
+			currentSlab = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return number of objects stored
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return index.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return number of objects found in this tier
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of objects looked up in vain
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private byte[] serialize(CachedObject<V> cachedObject) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(cachedObject);
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			//object is not serializable
+			return null;
+		}
+	}
+
+	private CachedObject<V> deserialize(byte[] data) {
+		try {
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+			return (CachedObject<V>) in.readObject();
+		} catch (Exception e) {
+			//class may have changed or may be unavailable
+			return null;
+		}
+	}
+
+	/**
+	 * @return a report containing statistics
+	 */
+	public String getReport() {
+		StringBuffer info = new StringBuffer();
+		info.append("off-heap capacity: " + ((long) slabs.length * slabs[0].capacity()) + " bytes in " + slabs.length + " slabs\n");
+		info.append("off-heap size: " + size() + " objects\n");
+		info.append("off-heap hits: " + hits.get() + '\n');
+		info.append("off-heap misses: " + misses.get() + '\n');
+		info.append("off-heap objects stored: " + stored + '\n');
+		info.append("off-heap objects rejected: " + rejected + '\n');
+		info.append("off-heap objects dropped: " + dropped + '\n');
+		return info.toString();
+	}
+}
@@ -18,36 +18,114 @@
  */
 package org.ijsberg.iglu.caching.module;
 
+import org.ijsberg.iglu.configuration.ConfigurationException;
 import org.ijsberg.iglu.configuration.Startable;
+import org.ijsberg.iglu.exception.ResourceException;
 import org.ijsberg.iglu.logging.Level;
 import org.ijsberg.iglu.logging.LogEntry;
 import org.ijsberg.iglu.scheduling.Pageable;
+import org.ijsberg.iglu.util.caching.BulkLoader;
 import org.ijsberg.iglu.util.caching.Cache;
+import org.ijsberg.iglu.util.caching.CacheListener;
+import org.ijsberg.iglu.util.caching.CacheStatistics;
+import org.ijsberg.iglu.util.caching.CacheStorage;
 import org.ijsberg.iglu.util.caching.CachedObject;
+import org.ijsberg.iglu.util.caching.EvictionPolicy;
+import org.ijsberg.iglu.util.caching.Loader;
+import org.ijsberg.iglu.util.caching.Weigher;
+import org.ijsberg.iglu.util.statistics.LatencyHistogram;
+import org.ijsberg.iglu.util.statistics.StripedCounter;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This class is a basic caching service that stores objects for a certain amount of time.
+ * <p/>
+ * Cached objects are kept in a pluggable storage engine, by default a lock-striped
+ * ConcurrentCacheStorage. Expiry data is part of the cached objects themselves.
+ * Null keys are not supported.
+ * <p/>
+ * The cache may be bounded by number of entries or by weight. In that case an
+ * eviction policy decides which entries to evict as soon as new entries are stored.
+ * <p/>
+ * Expiry deadlines are tracked in a timing wheel, so that a cleanup run only
+ * visits objects that have actually expired.
+ * <p/>
+ * Objects may be loaded through the cache by get(key, loader). Concurrent misses
+ * on the same key share one load, and threads waiting for a load are woken up
+ * as soon as the object is stored.
+ * <p/>
+ * Objects obtained by get(key, loader) may be refreshed in the background
+ * before they expire (refresh-ahead), and expired objects may still be served
+ * for a while after expiry as long as a background load replaces them (stale-while-revalidate).
+ * <p/>
+ * Optionally, objects evicted because the cache is full are demoted to an off-heap
+ * tier that keeps them in serialized form. They are promoted back on access.
+ * <p/>
+ * Individual stores and removals are not logged. Cache events can be traced
+ * by registering a CacheListener, such as a LoggingCacheListener that logs a sample of the events.
+ * <p/>
+ * If a snapshot file is configured, the contents of the cache are saved on stop
+ * and, optionally, periodically. On start, the snapshot is loaded in the background
+ * to warm up the cache without delaying startup.
  */
 public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 	private Date lastRun = new Date();
 
-	private final HashMap<K, CachedObject<V>> data = new HashMap<K, CachedObject<V>>(50);
-	private final HashMap<K, CachedObject<V>> mirror = new HashMap<K, CachedObject<V>>(50);
+	private CacheStorage<K, V> storage = new ConcurrentCacheStorage<K, V>();
+	private final TimerWheel<K> expiryWheel = new TimerWheel<K>(System.currentTimeMillis());
+	private final ConcurrentHashMap<K, FutureTask<V>> loadsInProgress = new ConcurrentHashMap<K, FutureTask<V>>();
 
 	public static final int DEFAULT_TTL = 900;// 15 minutes; 0 = don't cache
 	public static final int DEFAULT_CLEANUP_INTERVAL = 180; // 3 minutes; 0 = never cleanup
 
 	private int ttlInSeconds = DEFAULT_TTL;
 	private long cleanupInterval = DEFAULT_CLEANUP_INTERVAL;
+	private int concurrencyLevel = ConcurrentCacheStorage.DEFAULT_CONCURRENCY_LEVEL;
 
-	//statistics
-	private long hits;
-	private long misses;
-	private long unavailable;
-	private long delayedHits;
-	private long delayedMisses;
+	private EvictionPolicy<K> evictionPolicy;
+	private Weigher<K, V> weigher;
+	private boolean boundedByWeight;
+
+	public static final int DEFAULT_NROF_REFRESH_THREADS = 2;
+	private static final int MAX_QUEUED_REFRESHES = 1000;
+
+	private float refreshAheadFactor;// 0 = no refresh-ahead
+	private int staleWhileRevalidateInSeconds;// 0 = no stale objects served
+	private int nrofRefreshThreads = DEFAULT_NROF_REFRESH_THREADS;
+	private ThreadPoolExecutor refreshExecutor;
+
+	public static final int DEFAULT_OFFHEAP_SLAB_SIZE = 4 * 1024 * 1024;
+
+	private long offHeapCapacity;// 0 = no off-heap tier
+	private int offHeapSlabSize = DEFAULT_OFFHEAP_SLAB_SIZE;
+	private OffHeapCacheTier<K, V> offHeapTier;
+
+	private CacheSnapshot<K, V> snapshot;// null = no snapshot
+	private long snapshotInterval;// 0 = snapshot on stop only
+	private long lastSnapshotTime;
+	private Thread warmUpThread;
+
+	private final CopyOnWriteArrayList<CacheListener<K, V>> listeners = new CopyOnWriteArrayList<CacheListener<K, V>>();
+	//checked before any event is created
+	private volatile boolean hasListeners;
+	private LoggingCacheListener<K, V> eventLogger;
+
+	//statistics, updated concurrently
+	private final StripedCounter hits = new StripedCounter();
+	private final StripedCounter misses = new StripedCounter();
+	private final StripedCounter unavailable = new StripedCounter();
+	private final StripedCounter delayedHits = new StripedCounter();
+	private final StripedCounter delayedMisses = new StripedCounter();
+	private final StripedCounter evictions = new StripedCounter();
+	private final StripedCounter staleHits = new StripedCounter();
+	private final StripedCounter refreshes = new StripedCounter();
+	private final StripedCounter failedRefreshes = new StripedCounter();
+	private final StripedCounter failedLoads = new StripedCounter();
+	private final LatencyHistogram loadLatency = new LatencyHistogram();
 
 	/**
 	 * Constructs a cache.
@@ -56,6 +134,15 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 	public StandardCache() {
 	}
 
+	/**
+	 * Constructs a cache that keeps its objects in the given storage.
+	 *
+	 * @param storage storage engine
+	 */
+	public StandardCache(CacheStorage<K, V> storage) {
+		this.storage = storage;
+	}
+
 	/**
 	 * Constructs a cache.
 	 *
@@ -84,24 +171,130 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 
 		info.append("time to live: " + ttlInSeconds + " s\n");
 		info.append("cleanup interval: " + cleanupInterval + " s\n");
-		info.append("cache size: " + data.size() + " objects\n");
-		info.append("cache mirror size: " + mirror.size() + " object(s)\n");
-		info.append("cache hits: " + hits + '\n');
-		info.append("cache misses: " + misses + '\n');
-		info.append("cache unavailable: " + unavailable + '\n');
-		info.append("cache delayed hits: " + delayedHits + '\n');
-		info.append("cache delayed misses: " + delayedMisses + '\n');
+		info.append("cache storage: " + storage + "\n");
+		info.append("cache size: " + storage.size() + " objects\n");
+		if (evictionPolicy != null) {
+			info.append("eviction policy: " + evictionPolicy + "\n");
+			info.append("cache " + (boundedByWeight ? "weight: " : "entries: ") + evictionPolicy.getTotalWeight() + " (max " + evictionPolicy.getMaximumWeight() + ")\n");
+			info.append("cache evictions: " + evictions.get() + '\n');
+		}
+		if (isRefreshEnabled()) {
+			info.append("refresh-ahead factor: " + refreshAheadFactor + "\n");
+			info.append("stale-while-revalidate: " + staleWhileRevalidateInSeconds + " s\n");
+			info.append("cache stale hits: " + staleHits.get() + '\n');
+			info.append("cache background refreshes: " + refreshes.get() + '\n');
+			info.append("cache failed background refreshes: " + failedRefreshes.get() + '\n');
+		}
+		if (offHeapTier != null) {
+			info.append(offHeapTier.getReport());
+		}
+		info.append("cache hits: " + hits.get() + '\n');
+		info.append("cache misses: " + misses.get() + '\n');
+		info.append("cache unavailable: " + unavailable.get() + '\n');
+		info.append("cache delayed hits: " + delayedHits.get() + '\n');
+		info.append("cache delayed misses: " + delayedMisses.get() + '\n');
+		info.append("cache failed loads: " + failedLoads.get() + '\n');
+		info.append("cache load latency: " + loadLatency.getSnapshot() + '\n');
 		info.append("next cleanup run: " + new Date(lastRun.getTime() + (cleanupInterval * 1000)) + "\n");
 		return info.toString();
 	}
 
 
+	/**
+	 * @return snapshot of the statistics of this cache
+	 */
+	public CacheStatistics getStatistics() {
+		return new CacheStatistics(storage.size(), hits.get(), misses.get(), unavailable.get(),
+				delayedHits.get(), delayedMisses.get(), staleHits.get(), evictions.get(),
+				refreshes.get(), failedRefreshes.get(), failedLoads.get(), loadLatency.getSnapshot());
+	}
+
 	private boolean isStarted = false;
 
 	/**
 	 */
 	public void start() {
+		if (isRefreshEnabled()) {
+			refreshExecutor = new ThreadPoolExecutor(nrofRefreshThreads, nrofRefreshThreads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(MAX_QUEUED_REFRESHES), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "cache refresh");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			refreshExecutor.allowCoreThreadTimeOut(true);
+		}
+		if (offHeapCapacity > 0) {
+			offHeapTier = new OffHeapCacheTier<K, V>(offHeapCapacity, offHeapSlabSize);
+		}
 		isStarted = true;
+		lastSnapshotTime = System.currentTimeMillis();
+		if (snapshot != null && snapshot.exists() && isCachingEnabled()) {
+			warmUpThread = new Thread(new Runnable() {
+				public void run() {
+					loadSnapshot();
+				}
+			}, "cache warm-up");
+			warmUpThread.setDaemon(true);
+			warmUpThread.start();
+		}
+	}
+
+	/**
+	 * Stores entries from the snapshot that have not expired and that are not stored already.
+	 */
+	private void loadSnapshot() {
+		int loaded = 0;
+		try {
+			CacheSnapshot<K, V>.Reader reader = snapshot.openReader();
+			try {
+				Map.Entry<K, CachedObject<V>> entry;
+				while (!Thread.currentThread().isInterrupted() && (entry = reader.readEntry()) != null) {
+					CachedObject<V> co = entry.getValue();
+					if ((isCachingPermanent() || System.currentTimeMillis() < getExpiryDeadline(co)) && storeIfAbsent(entry.getKey(), co) == null) {
+						loaded++;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			System.out.println(new LogEntry(Level.DEBUG, "cache warmed up with " + loaded + " objects from snapshot"));
+		} catch (Exception e) {
+			System.out.println(new LogEntry(Level.CRITICAL, "unable to load cache snapshot after " + loaded + " objects", e));
+		}
+	}
+
+	private boolean isWarmingUp() {
+		Thread thread = warmUpThread;
+		return thread != null && thread.isAlive();
+	}
+
+	/**
+	 * Saves the contents of the cache to the snapshot file.
+	 *
+	 * @return the number of objects saved
+	 */
+	public int saveSnapshot() {
+		if (snapshot == null) {
+			throw new ConfigurationException("no snapshot file configured for cache");
+		}
+		if (isWarmingUp()) {
+			//the previous snapshot is more complete than the current contents
+			return 0;
+		}
+		lastSnapshotTime = System.currentTimeMillis();
+		try {
+			int saved = snapshot.write(storage.entries());
+			System.out.println(new LogEntry(Level.DEBUG, "cache snapshot saved with " + saved + " objects"));
+			return saved;
+		} catch (IOException e) {
+			throw new ResourceException("unable to save cache snapshot", e);
+		}
+	}
+
+	private boolean isRefreshEnabled() {
+		return refreshAheadFactor > 0 || staleWhileRevalidateInSeconds > 0;
 	}
 
 	/**
@@ -109,13 +302,51 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 	 * Is invoked by superclass.
 	 */
 	public void stop() {
-		hits = 0;
-		misses = 0;
-		unavailable = 0;
-		delayedHits = 0;
-		delayedMisses = 0;
-		data.clear();
-		mirror.clear();
+		if (isWarmingUp()) {
+			warmUpThread.interrupt();
+			try {
+				warmUpThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		} else if (snapshot != null && isCachingEnabled()) {
+			try {
+				saveSnapshot();
+			} catch (ResourceException e) {
+				System.out.println(new LogEntry(Level.CRITICAL, "cache contents are lost", e));
+			}
+		}
+		warmUpThread = null;
+		hits.reset();
+		misses.reset();
+		unavailable.reset();
+		delayedHits.reset();
+		delayedMisses.reset();
+		evictions.reset();
+		staleHits.reset();
+		refreshes.reset();
+		failedRefreshes.reset();
+		failedLoads.reset();
+		loadLatency.reset();
+		if (refreshExecutor != null) {
+			//queued refreshes will never run
+			for (Runnable refresh : refreshExecutor.shutdownNow()) {
+				((Future<?>) refresh).cancel(false);
+			}
+			refreshExecutor = null;
+		}
+		//threads waiting for a load that is cancelled load the object themselves
+		for (FutureTask<V> load : loadsInProgress.values()) {
+			load.cancel(false);
+		}
+		loadsInProgress.clear();
+		//memory is released once the buffers are garbage collected
+		offHeapTier = null;
+		storage.clear();
+		expiryWheel.clear();
+		if (evictionPolicy != null) {
+			evictionPolicy.clear();
+		}
 		isStarted = false;
 	}
 
@@ -125,11 +356,116 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 	 * <ul>
 	 * <li>ttlInSeconds: time to live for stored objects in seconds (default: 900 = 15 minutes)</li>
 	 * <li>cleanup_interval: interval for check for expired objects in seconds (default: 180 = 3 minutes)</li>
+	 * <li>storage: storage engine, 'concurrent' (default) or 'synchronized'</li>
+	 * <li>concurrency_level: estimated number of concurrently writing threads for concurrent storage (default: 16)</li>
+	 * <li>max_entries: maximum number of entries (default: unbounded)</li>
+	 * <li>max_weight: maximum total weight of entries as determined by the weigher (default: unbounded)</li>
+	 * <li>eviction_policy: 'lru' (default), 'tinylfu' or the class name of an EvictionPolicy with a constructor that takes the maximum weight (long)</li>
+	 * <li>refresh_ahead_factor: fraction of the time to live after which get(key, loader) reloads an object in the background (default: 0 = disabled)</li>
+	 * <li>stale_while_revalidate: period in seconds after expiry in which get(key, loader) still returns an object while it's reloaded in the background (default: 0 = disabled)</li>
+	 * <li>refresh_threads: number of threads for background loads (default: 2)</li>
+	 * <li>offheap_capacity: size in bytes of the off-heap tier for evicted objects (default: 0 = no off-heap tier)</li>
+	 * <li>offheap_slab_size: size in bytes of off-heap memory slabs (default: 4 MB)</li>
+	 * <li>snapshot_file: file in which the contents of the cache are saved on stop and loaded on start (default: none)</li>
+	 * <li>snapshot_interval: interval in seconds for saving snapshots while running, checked on cleanup (default: 0 = on stop only)</li>
+	 * <li>log_events: n to log one out of every n cache events at level DEBUG (default: 0 = no event logging)</li>
 	 * </ul>
+	 * Background loading and off-heap settings take effect on the next start.
 	 */
 	public void setProperties(Properties properties) {
 		ttlInSeconds = Integer.valueOf(properties.getProperty("ttlInSeconds", "" + ttlInSeconds));
 		cleanupInterval = Integer.valueOf(properties.getProperty("cleanup_interval", "" + cleanupInterval));
+		concurrencyLevel = Integer.valueOf(properties.getProperty("concurrency_level", "" + concurrencyLevel));
+		refreshAheadFactor = Float.valueOf(properties.getProperty("refresh_ahead_factor", "" + refreshAheadFactor));
+		staleWhileRevalidateInSeconds = Integer.valueOf(properties.getProperty("stale_while_revalidate", "" + staleWhileRevalidateInSeconds));
+		nrofRefreshThreads = Integer.valueOf(properties.getProperty("refresh_threads", "" + nrofRefreshThreads));
+		offHeapCapacity = Long.valueOf(properties.getProperty("offheap_capacity", "" + offHeapCapacity));
+		offHeapSlabSize = Integer.valueOf(properties.getProperty("offheap_slab_size", "" + offHeapSlabSize));
+		snapshotInterval = Long.valueOf(properties.getProperty("snapshot_interval", "" + snapshotInterval));
+		int eventLogSampleInterval = Integer.valueOf(properties.getProperty("log_events", "0"));
+		if (eventLogger != null) {
+			removeListener(eventLogger);
+			eventLogger = null;
+		}
+		if (eventLogSampleInterval > 0) {
+			eventLogger = new LoggingCacheListener<K, V>(eventLogSampleInterval, Level.DEBUG);
+			addListener(eventLogger);
+		}
+		String snapshotFile = properties.getProperty("snapshot_file");
+		if (snapshotFile != null) {
+			snapshot = new CacheSnapshot<K, V>(new File(snapshotFile));
+		}
+		if (refreshAheadFactor < 0 || refreshAheadFactor >= 1) {
+			throw new ConfigurationException("refresh_ahead_factor must be at least 0 and smaller than 1");
+		}
+		String storageType = properties.getProperty("storage");
+		if (storageType != null) {
+			storage = createStorage(storageType);
+		}
+		String maxEntries = properties.getProperty("max_entries");
+		String maxWeight = properties.getProperty("max_weight");
+		if (maxEntries != null && maxWeight != null) {
+			throw new ConfigurationException("cache can be bounded by either max_entries or max_weight, not both");
+		}
+		if (maxEntries != null || maxWeight != null || properties.getProperty("eviction_policy") != null) {
+			boundedByWeight = maxWeight != null;
+			long maximumWeight = Long.valueOf(boundedByWeight ? maxWeight : (maxEntries != null ? maxEntries : "0"));
+			evictionPolicy = maximumWeight > 0 ? createEvictionPolicy(properties.getProperty("eviction_policy", "lru"), maximumWeight) : null;
+		}
+	}
+
+	private EvictionPolicy<K> createEvictionPolicy(String policyName, long maximumWeight) {
+		if ("lru".equals(policyName)) {
+			return new LruEvictionPolicy<K>(maximumWeight);
+		}
+		if ("tinylfu".equals(policyName)) {
+			return new TinyLfuEvictionPolicy<K>(maximumWeight);
+		}
+		try {
+			return (EvictionPolicy<K>) Class.forName(policyName).getConstructor(Long.TYPE).newInstance(maximumWeight);
+		} catch (Exception e) {
+			throw new ConfigurationException("unable to create eviction policy '" + policyName + "'", e);
+		}
+	}
+
+	/**
+	 * Bounds the cache using a custom eviction policy.
+	 *
+	 * @param evictionPolicy policy or null to make the cache unbounded
+	 */
+	public void setEvictionPolicy(EvictionPolicy<K> evictionPolicy) {
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	/**
+	 * Sets a weigher that determines the weight of entries if the cache is bounded by max_weight.
+	 *
+	 * @param weigher
+	 */
+	public void setWeigher(Weigher<K, V> weigher) {
+		this.weigher = weigher;
+		boundedByWeight = weigher != null;
+	}
+
+	/**
+	 * Entries that are still being loaded are not weighed, since they hold no value yet.
+	 * They are weighed when the loaded object is stored.
+	 */
+	private int getWeight(K key, CachedObject<V> co) {
+		if (boundedByWeight && weigher != null && !co.isBeingRetrieved()) {
+			return weigher.getWeight(key, co.getObject());
+		}
+		return 1;
+	}
+
+	private CacheStorage<K, V> createStorage(String storageType) {
+		if ("synchronized".equals(storageType)) {
+			return new SynchronizedCacheStorage<K, V>();
+		}
+		if ("concurrent".equals(storageType)) {
+			return new ConcurrentCacheStorage<K, V>(concurrencyLevel);
+		}
+		throw new ConfigurationException("unknown cache storage '" + storageType + "', use 'concurrent' or 'synchronized'");
 	}
 
 
@@ -145,6 +481,53 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 		if (isCachingEnabled()) {
 			CachedObject<V> co = new CachedObject<V>(object);
 			storeCachedObject(key, co);
+			discardOffHeap(key);
+		}
+	}
+
+	/**
+	 * Stores a number of objects in the cache.
+	 * The eviction policy is updated once for all objects.
+	 *
+	 * @param objects objects to be cached by key
+	 */
+	public void storeAll(Map<K, V> objects) {
+		if (!isCachingEnabled() || objects.isEmpty()) {
+			return;
+		}
+		Map<K, CachedObject<V>> cachedObjects = new HashMap<K, CachedObject<V>>(objects.size() * 2);
+		for (Map.Entry<K, V> entry : objects.entrySet()) {
+			cachedObjects.put(entry.getKey(), new CachedObject<V>(entry.getValue()));
+		}
+		for (Map.Entry<K, CachedObject<V>> previous : storage.putAll(cachedObjects).entrySet()) {
+			if (previous.getValue().isBeingRetrieved()) {
+				//wake up threads waiting for the retrieval
+				previous.getValue().setObject(objects.get(previous.getKey()));
+			}
+		}
+		Map<K, Integer> weights = evictionPolicy != null ? new HashMap<K, Integer>(objects.size() * 2) : null;
+		for (Map.Entry<K, CachedObject<V>> entry : cachedObjects.entrySet()) {
+			K key = entry.getKey();
+			scheduleExpiry(key, entry.getValue());
+			if (weights != null) {
+				weights.put(key, getWeight(key, entry.getValue()));
+			}
+			discardOffHeap(key);
+		}
+		if (hasListeners) {
+			for (Map.Entry<K, V> entry : objects.entrySet()) {
+				fireStore(entry.getKey(), entry.getValue());
+			}
+		}
+		if (weights != null) {
+			evict(evictionPolicy.recordStores(weights));
+		}
+	}
+
+	private void discardOffHeap(K key) {
+		OffHeapCacheTier<K, V> tier = offHeapTier;
+		if (tier != null) {
+			tier.discard(key);
 		}
 	}
 
@@ -182,27 +565,29 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 		if (isCachingEnabled()) {
 			CachedObject<V> co = getCachedObject(key);
 			if (co == null || isCachedObjectExpired(co)) {
-				misses++;
+				misses.increment();
 				co = new CachedObject<V>();
 				co.setBeingRetrieved();
 				this.storeCachedObject(key, co);
 			} else if (co.getObject() != null) {
-				hits++;
+				hits.increment();
+				recordAccess(key);
 				retval = co.getObject();
 			} else {
 				//the timeout for retrieving an object is used instead of the cache timeout
 				co = getCachedObjectOnceRetrievedByOtherThread(key, timeout);
 				if (co == null) {
 					//this could happen on a rare occasion and may not lead to problems
-					delayedMisses++;
+					delayedMisses.increment();
 				} else if (co.getObject() == null) { // still null
-					delayedMisses++;
+					delayedMisses.increment();
 					if (co.isExpired(timeout) && co.isBeingRetrieved()) {
 						// prolongate retrieval state if cached object is not a designated null
 						co.setBeingRetrieved();
+						scheduleExpiry(key, co);
 					}
 				} else {
-					delayedHits++;
+					delayedHits.increment();
 					retval = co.getObject();
 				}
 			}
@@ -211,22 +596,185 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 	}
 
 	private CachedObject<V> getCachedObjectOnceRetrievedByOtherThread(K key, int timeout) {
-		CachedObject<V> co;
-		do {
+		CachedObject<V> co = getCachedObject(key);
+		while (co != null //which may occur if it was removed from data
+				&& co.getObject() == null //not retrieved
+				&& co.isBeingRetrieved() //still trying
+				&& !co.isExpired(timeout)) {//retrieval timeout not expired
 			try {
-				Thread.sleep(10);
+				//returns as soon as the object is stored
+				co.awaitRetrieval(timeout);
 			} catch (InterruptedException ie) {
-				//...
+				Thread.currentThread().interrupt();
+				break;
 			}
 			co = getCachedObject(key);
 		}
-		while (co != null //which may occur if it was removed from data
-				&& co.getObject() == null //not retrieved
-				&& co.isBeingRetrieved() //still trying
-				&& !co.isExpired(timeout));//retrieval timeout not expired
 		return co;
 	}
 
+	/**
+	 * Retrieves an object from cache or loads it if it's not found or expired.
+	 * Concurrent requests for an object that is not cached share a single load.
+	 * While the object is loaded, threads invoking retrieve(key, timeout) will
+	 * wait for it as well.
+	 * <p/>
+	 * If refresh-ahead is enabled, an object that is older than the refresh-ahead
+	 * fraction of the time to live is returned and reloaded in the background.
+	 * If stale-while-revalidate is enabled, an expired object is returned and reloaded
+	 * in the background, as long as it's not expired for longer than the configured period.
+	 *
+	 * @param key    the key to retrieve the object by
+	 * @param loader loads the object from the original location
+	 * @return the cached or loaded object
+	 * @throws ResourceException if loading fails
+	 */
+	public V get(K key, Loader<K, V> loader) {
+		if (!isCachingEnabled()) {
+			return load(key, loader);
+		}
+		CachedObject<V> co = getCachedObject(key);
+		if (co != null && !co.isBeingRetrieved()) {
+			long age = System.currentTimeMillis() - co.getTimeoutStartTime();
+			if (!isCachedObjectExpired(co)) {
+				hits.increment();
+				recordAccess(key);
+				if (refreshAheadFactor > 0 && !isCachingPermanent() && age > ttlInSeconds * 1000L * refreshAheadFactor) {
+					refreshInBackground(key, loader);
+				}
+				return co.getObject();
+			}
+			if (age <= (ttlInSeconds + staleWhileRevalidateInSeconds) * 1000L) {
+				staleHits.increment();
+				recordAccess(key);
+				refreshInBackground(key, loader);
+				return co.getObject();
+			}
+		}
+		misses.increment();
+		return loadOnce(key, loader);
+	}
+
+	/**
+	 * Reloads an object unless it's already being loaded.
+	 * The current object remains available until the load completes.
+	 */
+	private void refreshInBackground(final K key, final Loader<K, V> loader) {
+		ThreadPoolExecutor executor = refreshExecutor;
+		if (executor == null || loadsInProgress.containsKey(key)) {
+			return;
+		}
+		FutureTask<V> refresh = new LoadTask(key, new Callable<V>() {
+			public V call() throws Exception {
+				try {
+					V object = timedLoad(key, loader);
+					store(key, object);
+					refreshes.increment();
+					return object;
+				} catch (Exception e) {
+					failedRefreshes.increment();
+					System.out.println(new LogEntry(Level.CRITICAL, "background refresh of object with key " + key + " failed", e));
+					throw e;
+				}
+			}
+		});
+		if (loadsInProgress.putIfAbsent(key, refresh) == null) {
+			try {
+				executor.execute(refresh);
+			} catch (RejectedExecutionException e) {
+				//too many refreshes queued, a later request will try again
+				refresh.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Load that unregisters itself once it's done.
+	 */
+	private class LoadTask extends FutureTask<V> {
+		private final K key;
+
+		private LoadTask(K key, Callable<V> callable) {
+			super(callable);
+			this.key = key;
+		}
+
+		protected void done() {
+			loadsInProgress.remove(key, this);
+		}
+	}
+
+	private V timedLoad(K key, Loader<K, V> loader) throws Exception {
+		long start = System.nanoTime();
+		try {
+			return loader.load(key);
+		} catch (Exception e) {
+			failedLoads.increment();
+			throw e;
+		} finally {
+			loadLatency.record(System.nanoTime() - start);
+		}
+	}
+
+	private V load(K key, Loader<K, V> loader) {
+		try {
+			return timedLoad(key, loader);
+		} catch (Exception e) {
+			throw new ResourceException("unable to load object with key " + key, e);
+		}
+	}
+
+	private V loadOnce(final K key, final Loader<K, V> loader) {
+		FutureTask<V> load = loadsInProgress.get(key);
+		if (load == null) {
+			FutureTask<V> newLoad = new LoadTask(key, new Callable<V>() {
+				public V call() throws Exception {
+					return loadAndStore(key, loader);
+				}
+			});
+			load = loadsInProgress.putIfAbsent(key, newLoad);
+			if (load == null) {
+				load = newLoad;
+				load.run();
+			}
+		}
+		try {
+			return load.get();
+		} catch (CancellationException e) {
+			//background refresh that could not be scheduled, or cache stopped
+			return loadOnce(key, loader);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResourceException("interrupted while waiting for object with key " + key, e);
+		} catch (ExecutionException e) {
+			throw new ResourceException("unable to load object with key " + key, e.getCause());
+		}
+	}
+
+	private V loadAndStore(K key, Loader<K, V> loader) throws Exception {
+		CachedObject<V> co = getCachedObject(key);
+		if (co != null && !co.isBeingRetrieved() && !isCachedObjectExpired(co)) {
+			//stored by a load that finished just before this one started
+			return co.getObject();
+		}
+		//let threads that use retrieve(key, timeout) wait for this load
+		CachedObject<V> placeholder = new CachedObject<V>();
+		placeholder.setBeingRetrieved();
+		storeCachedObject(key, placeholder);
+		V object;
+		try {
+			object = timedLoad(key, loader);
+		} catch (Exception e) {
+			if (storage.remove(key, placeholder)) {
+				recordRemoval(key);
+			}
+			placeholder.setObject(null);
+			throw e;
+		}
+		store(key, object);
+		return object;
+	}
+
 	/**
 	 * Places an empty wrapper in the cache to indicate that some thread should
 	 * be busy retrieving the object, after which it should be cached after all.
@@ -235,15 +783,19 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 	 * @return
 	 */
 	private Object storeCachedObject(K key, CachedObject<V> co) {
-		//data is only locked if cleanup removes cached objects
-		synchronized (data) {
-			data.put(key, co);
+		CachedObject<V> previous = storage.put(key, co);
+		if (previous != null && previous.isBeingRetrieved()) {
+			//wake up threads waiting for the retrieval
+			previous.setObject(co.getObject());
+		}
+		scheduleExpiry(key, co);
+		if (hasListeners && !co.isBeingRetrieved()) {
+			fireStore(key, co.getObject());
 		}
-		//mirror is also locked if cleanup is busy collecting cached objects
-		synchronized (mirror) {
-			mirror.put(key, co);
+		if (evictionPolicy != null) {
+			//evicted entries may include the one just stored
+			evict(evictionPolicy.recordStore(key, getWeight(key, co)));
 		}
-		System.out.println(new LogEntry("object with key " + key + " stored in cache"));
 		return co;
 	}
 
@@ -252,12 +804,11 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 	 */
 	public Set<V> retrieveAll() {
 		HashSet<V> retval = new HashSet<V>();
-		synchronized (data) {
-			for (CachedObject<V> co : data.values()) {
-				if (co.getObject() != null) //skip temp objects
-				{
-					retval.add(co.getObject());
-				}
+		for (Map.Entry<K, CachedObject<V>> entry : storage.entries()) {
+			V object = entry.getValue().getObject();
+			if (object != null) //skip temp objects
+			{
+				retval.add(object);
 			}
 		}
 		return retval;
@@ -275,25 +826,204 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 			CachedObject<V> co = getCachedObject(key);
 			if (co == null || (isCachedObjectExpired(co))) {
 				//take pressure off of cleanup
-				misses++;
+				misses.increment();
 			} else if (co.getObject() == null) {
-				unavailable++;
+				unavailable.increment();
 			} else {
-				hits++;
+				hits.increment();
+				recordAccess(key);
 				retval = co.getObject();
 			}
 		}
 		return retval;
 	}
 
+	/**
+	 * Retrieves a number of objects from cache.
+	 *
+	 * @param keys the keys to retrieve the objects by
+	 * @return the cached objects that are found by key
+	 */
+	public Map<K, V> retrieveAll(Collection<K> keys) {
+		Map<K, V> retval = new HashMap<K, V>(keys.size() * 2);
+		if (isCachingEnabled()) {
+			Map<K, CachedObject<V>> found = storage.getAll(keys);
+			for (K key : keys) {
+				CachedObject<V> co = found.get(key);
+				if (co == null) {
+					co = promote(key);
+				}
+				if (co == null || isCachedObjectExpired(co)) {
+					misses.increment();
+				} else if (co.getObject() == null) {
+					unavailable.increment();
+				} else {
+					hits.increment();
+					recordAccess(key);
+					retval.put(key, co.getObject());
+				}
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Retrieves a number of objects from cache and loads the ones that are not found
+	 * or expired in a single call. The loaded objects are stored in the cache.
+	 * Keys that the loader does not return an object for are stored as null.
+	 * Unlike get(key, loader), concurrent loads of the same keys are not shared.
+	 *
+	 * @param keys   the keys to retrieve the objects by
+	 * @param loader loads the objects from the original location
+	 * @return the cached or loaded objects by key, including nulls
+	 * @throws ResourceException if loading fails
+	 */
+	public Map<K, V> getAll(Collection<K> keys, BulkLoader<K, V> loader) {
+		Map<K, V> retval = new HashMap<K, V>(keys.size() * 2);
+		List<K> keysToLoad = new ArrayList<K>();
+		if (isCachingEnabled()) {
+			Map<K, CachedObject<V>> found = storage.getAll(keys);
+			for (K key : keys) {
+				CachedObject<V> co = found.get(key);
+				if (co == null) {
+					co = promote(key);
+				}
+				if (co == null || co.isBeingRetrieved() || isCachedObjectExpired(co)) {
+					misses.increment();
+					keysToLoad.add(key);
+				} else {
+					hits.increment();
+					recordAccess(key);
+					retval.put(key, co.getObject());
+				}
+			}
+		} else {
+			keysToLoad.addAll(keys);
+		}
+		if (!keysToLoad.isEmpty()) {
+			Map<K, V> loaded = loadAll(keysToLoad, loader);
+			Map<K, V> objects = new HashMap<K, V>(keysToLoad.size() * 2);
+			for (K key : keysToLoad) {
+				objects.put(key, loaded.get(key));
+			}
+			retval.putAll(objects);
+			storeAll(objects);
+		}
+		return retval;
+	}
+
+	private Map<K, V> loadAll(Collection<K> keys, BulkLoader<K, V> loader) {
+		long start = System.nanoTime();
+		try {
+			Map<K, V> loaded = loader.loadAll(keys);
+			return loaded != null ? loaded : Collections.<K, V>emptyMap();
+		} catch (Exception e) {
+			failedLoads.increment();
+			throw new ResourceException("unable to load objects with keys " + keys, e);
+		} finally {
+			loadLatency.record(System.nanoTime() - start);
+		}
+	}
+
+	private void recordAccess(K key) {
+		if (evictionPolicy != null) {
+			evictionPolicy.recordAccess(key);
+		}
+	}
+
+	private void recordRemoval(K key) {
+		if (evictionPolicy != null) {
+			evictionPolicy.recordRemoval(key);
+		}
+	}
+
+	private void evict(List<K> victims) {
+		for (K victim : victims) {
+			CachedObject<V> co = storage.remove(victim);
+			if (co == null) {
+				//removed by another thread in the meantime
+				continue;
+			}
+			demote(victim, co);
+			evictions.increment();
+			if (hasListeners) {
+				for (CacheListener<K, V> listener : listeners) {
+					listener.onEviction(victim);
+				}
+			}
+		}
+	}
+
+	private void demote(K key, CachedObject<V> co) {
+		OffHeapCacheTier<K, V> tier = offHeapTier;
+		if (tier != null && co != null && !co.isBeingRetrieved() && !isCachedObjectExpired(co)) {
+			tier.store(key, co);
+		}
+	}
+
+	/**
+	 * Moves an object from the off-heap tier back to the heap.
+	 *
+	 * @return the promoted object or null if it's not available or expired
+	 */
+	private CachedObject<V> promote(K key) {
+		OffHeapCacheTier<K, V> tier = offHeapTier;
+		if (tier == null) {
+			return null;
+		}
+		CachedObject<V> co = tier.remove(key);
+		if (co == null || isCachedObjectExpired(co)) {
+			return null;
+		}
+		CachedObject<V> current = storeIfAbsent(key, co);
+		//may be stored by another thread in the meantime
+		return current != null ? current : co;
+	}
+
+	/**
+	 * Stores an object that was cached before, unless the key is present already.
+	 *
+	 * @return the object currently stored or null if the given object was stored
+	 */
+	private CachedObject<V> storeIfAbsent(K key, CachedObject<V> co) {
+		CachedObject<V> current = storage.putIfAbsent(key, co);
+		if (current != null) {
+			return current;
+		}
+		scheduleExpiry(key, co);
+		if (evictionPolicy != null) {
+			evict(evictionPolicy.recordStore(key, getWeight(key, co)));
+		}
+		return null;
+	}
+
+	/**
+	 * Must be invoked whenever the timeout start time of a stored object is set,
+	 * since timers of an object only apply to the timeout start time they were scheduled with.
+	 */
+	private void scheduleExpiry(K key, CachedObject<V> co) {
+		if (!isCachingPermanent()) {
+			expiryWheel.schedule(key, co.getTimeoutStartTime(), getExpiryDeadline(co));
+		}
+	}
+
+	/**
+	 * @return time after which an object is of no use anymore, even as stale object
+	 */
+	private long getExpiryDeadline(CachedObject<V> co) {
+		return co.getTimeoutStartTime() + (ttlInSeconds + staleWhileRevalidateInSeconds) * 1000L;
+	}
+
 	private boolean isCachedObjectExpired(CachedObject<V> co) {
 		return co.isExpired(ttlInSeconds * 1000) && !isCachingPermanent();
 	}
 
 	private CachedObject<V> getCachedObject(K key) {
-		synchronized (data) {
-			return data.get(key);
+		CachedObject<V> co = storage.get(key);
+		if (co == null) {
+			co = promote(key);
 		}
+		return co;
 	}
 
 
@@ -309,6 +1039,13 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 		if (cleanupInterval > 0 && isCachingEnabled()) {
 			lastRun = new Date();
 			cleanup();
+			if (snapshot != null && snapshotInterval > 0 && System.currentTimeMillis() - lastSnapshotTime >= snapshotInterval * 1000) {
+				try {
+					saveSnapshot();
+				} catch (ResourceException e) {
+					System.out.println(new LogEntry(Level.CRITICAL, "periodic cache snapshot failed", e));
+				}
+			}
 		}
 	}
 
@@ -321,28 +1058,31 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 		int garbageSize = 0;
 		if (isCachingEnabled()) {
 			System.out.println(new LogEntry(Level.VERBOSE, "Identifying expired objects"));
-			ArrayList<K> garbage = getExpiredObjects();
-			garbageSize = garbage.size();
-			System.out.println(new LogEntry("cache cleanup: expired objects: " + garbageSize));
-			for (K key : garbage) {
-				clear(key);
-			}
-		}
-		return garbageSize;
-	}
-
-	private ArrayList<K> getExpiredObjects() {
-		CachedObject<V> cachedObject;
-		ArrayList<K> garbage = new ArrayList<K>();
-		synchronized (mirror) {
-			for (K key : mirror.keySet()) {
-				cachedObject = (CachedObject<V>) mirror.get(key);
-				if (cachedObject.isExpired(ttlInSeconds * 1000)) {
-					garbage.add(key);
+			for (TimerWheel.Timer<K> timer : expiryWheel.advance(System.currentTimeMillis())) {
+				K key = timer.getKey();
+				CachedObject<V> co = storage.get(key);
+				if (co == null || co.getTimeoutStartTime() != timer.getTimeoutStartTime()) {
+					//object was replaced, removed or prolonged in the meantime and has a timer of its own
+					continue;
+				}
+				if (System.currentTimeMillis() > getExpiryDeadline(co)) {
+					if (storage.remove(key, co)) {
+						recordRemoval(key);
+						garbageSize++;
+						if (hasListeners) {
+							for (CacheListener<K, V> listener : listeners) {
+								listener.onExpiry(key);
+							}
+						}
+					}
+				} else {
+					//time to live was raised
+					scheduleExpiry(key, co);
 				}
 			}
+			System.out.println(new LogEntry("cache cleanup: expired objects: " + garbageSize));
 		}
-		return garbage;
+		return garbageSize;
 	}
 
 
@@ -354,13 +1094,12 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 	public void clear(Object key) {
 		Object removed;
 		if (isCachingEnabled()) {
-			synchronized (mirror) {
-				synchronized (data) {
-					removed = data.remove(key);
-					mirror.remove(key);
-				}
+			removed = storage.remove((K) key);
+			recordRemoval((K) key);
+			discardOffHeap((K) key);
+			if (removed != null) {
+				fireRemoval((K) key);
 			}
-			System.out.println(new LogEntry("object with key " + key + (removed == null ? " NOT" : "") + " removed from cache"));
 		}
 	}
 
@@ -370,27 +1109,62 @@ public class StandardCache<K, V> implements Cache<K, V>, Startable, Pageable {
 	 * @param keys object keys
 	 */
 	public void clear(Collection keys) {
-		synchronized (mirror) {
-			synchronized (data) {
-				Iterator i = keys.iterator();
-				while (i.hasNext()) {
-					Object key = i.next();
-					data.remove(key);
-					mirror.remove(key);
-				}
+		Iterator i = keys.iterator();
+		while (i.hasNext()) {
+			K key = (K) i.next();
+			if (storage.remove(key) != null) {
+				fireRemoval(key);
 			}
+			recordRemoval(key);
+			discardOffHeap(key);
 		}
 	}
 
-	public void clear() {
-		synchronized (mirror) {
-			synchronized (data) {
-				data.clear();
-				mirror.clear();
+	/**
+	 * Registers a listener for cache events.
+	 * As long as no listeners are registered, events are not created at all.
+	 *
+	 * @param listener
+	 */
+	public void addListener(CacheListener<K, V> listener) {
+		listeners.add(listener);
+		hasListeners = true;
+	}
+
+	/**
+	 * @param listener
+	 */
+	public void removeListener(CacheListener<K, V> listener) {
+		listeners.remove(listener);
+		hasListeners = !listeners.isEmpty();
+	}
+
+	private void fireStore(K key, V object) {
+		for (CacheListener<K, V> listener : listeners) {
+			listener.onStore(key, object);
+		}
+	}
+
+	private void fireRemoval(K key) {
+		if (hasListeners) {
+			for (CacheListener<K, V> listener : listeners) {
+				listener.onRemoval(key);
 			}
 		}
 	}
 
+	public void clear() {
+		storage.clear();
+		expiryWheel.clear();
+		OffHeapCacheTier<K, V> tier = offHeapTier;
+		if (tier != null) {
+			tier.clear();
+		}
+		if (evictionPolicy != null) {
+			evictionPolicy.clear();
+		}
+	}
+
 
 
 	/**
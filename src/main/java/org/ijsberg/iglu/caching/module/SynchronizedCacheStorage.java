@@ -0,0 +1,152 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import org.ijsberg.iglu.util.caching.CacheStorage;
+import org.ijsberg.iglu.util.caching.CachedObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache storage that guards a single HashMap with one monitor.
+ * This is the behaviour StandardCache used to have. It may be of use
+ * in environments with very little concurrency and as a baseline for comparison.
+ */
+public class SynchronizedCacheStorage<K, V> implements CacheStorage<K, V> {
+
+	private final HashMap<K, CachedObject<V>> data = new HashMap<K, CachedObject<V>>(50);
+
+	public CachedObject<V> get(K key) {
+		synchronized (data) {
+			return data.get(key);
+		}
+	}
+
+	public Map<K, CachedObject<V>> getAll(Collection<K> keys) {
+		HashMap<K, CachedObject<V>> retval = new HashMap<K, CachedObject<V>>(keys.size());
+		synchronized (data) {
+			for (K key : keys) {
+				CachedObject<V> cachedObject = data.get(key);
+				if (cachedObject != null) {
+					retval.put(key, cachedObject);
+				}
+			}
+		}
+		return retval;
+	}
+
+	public CachedObject<V> put(K key, CachedObject<V> cachedObject) {
+		synchronized (data) {
+			return data.put(key, cachedObject);
+		}
+	}
+
+	public CachedObject<V> putIfAbsent(K key, CachedObject<V> cachedObject) {
+		synchronized (data) {
+			CachedObject<V> current = data.get(key);
+			if (current == null) {
+				data.put(key, cachedObject);
+			}
+			return current;
+		}
+	}
+
+	public Map<K, CachedObject<V>> putAll(Map<K, CachedObject<V>> cachedObjects) {
+		HashMap<K, CachedObject<V>> previous = new HashMap<K, CachedObject<V>>();
+		synchronized (data) {
+			for (Map.Entry<K, CachedObject<V>> entry : cachedObjects.entrySet()) {
+				CachedObject<V> cachedObject = data.put(entry.getKey(), entry.getValue());
+				if (cachedObject != null) {
+					previous.put(entry.getKey(), cachedObject);
+				}
+			}
+		}
+		return previous;
+	}
+
+	public CachedObject<V> remove(K key) {
+		synchronized (data) {
+			return data.remove(key);
+		}
+	}
+
+	public boolean remove(K key, CachedObject<V> cachedObject) {
+		synchronized (data) {
+			if (data.get(key) == cachedObject) {
+				data.remove(key);
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @return a snapshot of all entries
+	 */
+	public Collection<Map.Entry<K, CachedObject<V>>> entries() {
+		synchronized (data) {
+			ArrayList<Map.Entry<K, CachedObject<V>>> retval = new ArrayList<Map.Entry<K, CachedObject<V>>>(data.size());
+			for (Map.Entry<K, CachedObject<V>> entry : data.entrySet()) {
+				retval.add(new Entry<K, V>(entry.getKey(), entry.getValue()));
+			}
+			return retval;
+		}
+	}
+
+	public int size() {
+		synchronized (data) {
+			return data.size();
+		}
+	}
+
+	public void clear() {
+		synchronized (data) {
+			data.clear();
+		}
+	}
+
+	public String toString() {
+		return "synchronized storage";
+	}
+
+	private static class Entry<K, V> implements Map.Entry<K, CachedObject<V>> {
+		private final K key;
+		private final CachedObject<V> value;
+
+		private Entry(K key, CachedObject<V> value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		public K getKey() {
+			return key;
+		}
+
+		public CachedObject<V> getValue() {
+			return value;
+		}
+
+		public CachedObject<V> setValue(CachedObject<V> value) {
+			throw new UnsupportedOperationException("entry is part of a snapshot");
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hierarchical timing wheel that keeps track of expiry deadlines of cached objects.
+ * <p/>
+ * The wheel has 4 levels of 64 buckets. A bucket at level 0 spans one tick (a second),
+ * a bucket at level 1 spans 64 ticks etc. Timers are placed at the lowest level
+ * that can hold their deadline and cascade to lower levels as time advances.
+ * Advancing the wheel only touches timers in buckets that have come due, plus those
+ * that cascade, rather than all timers.
+ * <p/>
+ * Scheduling a timer is a lock-free O(1) operation, so writers are never blocked.
+ * New timers are queued and placed in the wheel by the thread that advances it,
+ * so that their position is always relative to the tick the wheel is actually at.
+ * <p/>
+ * There is at most one timer per key. A timer scheduled for a key replaces
+ * the previous one, both while it's queued and once it's in the wheel,
+ * so the number of timers does not grow with the number of stores.
+ * <p/>
+ * Timers do not refer to cached objects, only to their key and the time the
+ * timeout of the object started. This way replaced or removed objects
+ * can be garbage collected before their timers fire.
+ */
+public class TimerWheel<K> {
+
+	public static final long TICK_IN_MS = 1000;
+
+	private static final int NROF_LEVELS = 4;
+	private static final int BITS_PER_LEVEL = 6;
+	private static final int BUCKETS_PER_LEVEL = 1 << BITS_PER_LEVEL;
+	private static final int BUCKET_MASK = BUCKETS_PER_LEVEL - 1;
+
+	//only accessed by the advancing thread
+	private final ArrayDeque<Timer<K>>[][] buckets;
+	//current timer of every key in the wheel, timers in buckets that are not current are dropped
+	private final HashMap<K, Timer<K>> timers = new HashMap<K, Timer<K>>();
+	private long currentTick;
+
+	//timers waiting to be placed, a key is queued only if it has no timer waiting already
+	private final ConcurrentHashMap<K, Timer<K>> pending = new ConcurrentHashMap<K, Timer<K>>();
+	private final ConcurrentLinkedQueue<K> scheduled = new ConcurrentLinkedQueue<K>();
+
+	/**
+	 * Expiry deadline of a cached object.
+	 */
+	public static class Timer<K> {
+		private final K key;
+		//updated by the advancing thread if the timer is replaced by one with a later deadline
+		private long timeoutStartTime;
+		private long deadline;
+
+		public Timer(K key, long timeoutStartTime, long deadline) {
+			this.key = key;
+			this.timeoutStartTime = timeoutStartTime;
+			this.deadline = deadline;
+		}
+
+		public K getKey() {
+			return key;
+		}
+
+		/**
+		 * @return timeout start time of the cached object at the moment the timer was scheduled
+		 */
+		public long getTimeoutStartTime() {
+			return timeoutStartTime;
+		}
+
+		/**
+		 * @return time in millis after which the cached object expires
+		 */
+		public long getDeadline() {
+			return deadline;
+		}
+	}
+
+	/**
+	 * @param currentTime time in millis to start from
+	 */
+	public TimerWheel(long currentTime) {
+		buckets = new ArrayDeque[NROF_LEVELS][BUCKETS_PER_LEVEL];
+		for (int level = 0; level < NROF_LEVELS; level++) {
+			for (int i = 0; i < BUCKETS_PER_LEVEL; i++) {
+				buckets[level][i] = new ArrayDeque<Timer<K>>();
+			}
+		}
+		currentTick = currentTime / TICK_IN_MS;
+	}
+
+	/**
+	 * Schedules a timer, replacing the timer of the key if there is one.
+	 *
+	 * @param key
+	 * @param timeoutStartTime timeout start time of the cached object
+	 * @param deadline time in millis after which the cached object expires
+	 */
+	public void schedule(K key, long timeoutStartTime, long deadline) {
+		if (pending.put(key, new Timer<K>(key, timeoutStartTime, deadline)) == null) {
+			scheduled.add(key);
+		}
+	}
+
+	/**
+	 * Makes a timer the current timer of its key.
+	 */
+	private void replace(Timer<K> timer) {
+		Timer<K> current = timers.get(timer.key);
+		if (current != null && timer.deadline >= current.deadline) {
+			//current timer stays in its bucket and is placed again once it comes due
+			current.timeoutStartTime = timer.timeoutStartTime;
+			current.deadline = timer.deadline;
+			return;
+		}
+		//a current timer with a later deadline is dropped once its bucket comes due
+		timers.put(timer.key, timer);
+		place(timer);
+	}
+
+	private void place(Timer<K> timer) {
+		long tick = currentTick;
+		//timers that are already due will be picked up on the next tick
+		long deadlineTick = Math.max(timer.deadline / TICK_IN_MS, tick + 1);
+		long delta = deadlineTick - tick;
+		int level = 0;
+		while (level < NROF_LEVELS - 1 && delta >= (1L << (BITS_PER_LEVEL * (level + 1)))) {
+			level++;
+		}
+		if (delta >= (1L << (BITS_PER_LEVEL * NROF_LEVELS))) {
+			//beyond reach of the wheel: park in the furthest bucket and cascade from there
+			deadlineTick = tick + (1L << (BITS_PER_LEVEL * NROF_LEVELS)) - 1;
+		}
+		buckets[level][(int) (deadlineTick >> (BITS_PER_LEVEL * level)) & BUCKET_MASK].add(timer);
+	}
+
+	/**
+	 * Advances the wheel to the given time.
+	 * Timers scheduled while the wheel is advancing are placed on the next advance.
+	 *
+	 * @param currentTime time in millis
+	 * @return timers with deadlines that have passed
+	 */
+	public synchronized List<Timer<K>> advance(long currentTime) {
+		K key;
+		while ((key = scheduled.poll()) != null) {
+			Timer<K> timer = pending.remove(key);
+			if (timer != null) {
+				replace(timer);
+			}
+		}
+		List<Timer<K>> expired = new ArrayList<Timer<K>>();
+		long targetTick = currentTime / TICK_IN_MS;
+		for (long tick = currentTick + 1; tick <= targetTick; tick++) {
+			currentTick = tick;
+			//cascade higher levels before expiring level 0
+			for (int level = NROF_LEVELS - 1; level > 0; level--) {
+				if ((tick & ((1L << (BITS_PER_LEVEL * level)) - 1)) == 0) {
+					drain(buckets[level][(int) (tick >> (BITS_PER_LEVEL * level)) & BUCKET_MASK], currentTime, expired);
+				}
+			}
+			drain(buckets[0][(int) tick & BUCKET_MASK], currentTime, expired);
+		}
+		return expired;
+	}
+
+	private void drain(ArrayDeque<Timer<K>> bucket, long currentTime, List<Timer<K>> expired) {
+		Timer<K> timer;
+		//timers placed back in the same bucket belong to a later revolution
+		int size = bucket.size();
+		while (size-- > 0 && (timer = bucket.poll()) != null) {
+			if (timers.get(timer.key) != timer) {
+				//replaced
+				continue;
+			}
+			if (timer.deadline <= currentTime) {
+				timers.remove(timer.key);
+				expired.add(timer);
+			} else {
+				place(timer);
+			}
+		}
+	}
+
+	/**
+	 * Removes all timers.
+	 */
+	public synchronized void clear() {
+		//in this order, so that a key that is scheduled meanwhile is always queued
+		scheduled.clear();
+		pending.clear();
+		timers.clear();
+		for (int level = 0; level < NROF_LEVELS; level++) {
+			for (int i = 0; i < BUCKETS_PER_LEVEL; i++) {
+				buckets[level][i].clear();
+			}
+		}
+	}
+}
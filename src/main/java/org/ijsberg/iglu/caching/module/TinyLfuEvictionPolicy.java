@@ -0,0 +1,208 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frequency-aware eviction policy (W-TinyLFU).
+ * <p/>
+ * New entries enter a small LRU window. Entries that drop out of the window
+ * are candidates for the main space, which is divided in a probation and a protected segment.
+ * A candidate is only admitted if it has been seen more often recently than the entry
+ * it would replace, according to a frequency sketch. Entries in probation are promoted
+ * to the protected segment when they are hit. This protects frequently used entries
+ * from being flushed out by bursts of entries that are used only once.
+ * <p/>
+ * The frequency sketch is sized to the number of entries actually tracked,
+ * since the maximum weight does not say how many entries fit in the cache
+ * if entries are weighed in, for instance, bytes.
+ */
+public class TinyLfuEvictionPolicy<K> extends AbstractEvictionPolicy<K> {
+
+	private static final double WINDOW_FRACTION = 0.01;
+	private static final double PROTECTED_FRACTION = 0.8;
+	private static final int INITIAL_SKETCH_CAPACITY = 1024;
+
+	//segments are ordered from least to most recently used
+	private final LinkedHashMap<K, Integer> window = new LinkedHashMap<K, Integer>(16, 0.75f, true);
+	private final LinkedHashMap<K, Integer> probation = new LinkedHashMap<K, Integer>(64, 0.75f, true);
+	private final LinkedHashMap<K, Integer> protectedSegment = new LinkedHashMap<K, Integer>(64, 0.75f, true);
+
+	private volatile long windowWeight;
+	private volatile long probationWeight;
+	private volatile long protectedWeight;
+
+	private long maxWindowWeight;
+	private long maxProtectedWeight;
+
+	private FrequencySketch<K> sketch;
+
+	/**
+	 * @param maximumWeight maximum total weight of all entries
+	 */
+	public TinyLfuEvictionPolicy(long maximumWeight) {
+		super(maximumWeight);
+		onResize();
+	}
+
+	public long getTotalWeight() {
+		return windowWeight + probationWeight + protectedWeight;
+	}
+
+	protected void onResize() {
+		maxWindowWeight = Math.max(1, (long) (maximumWeight * WINDOW_FRACTION));
+		maxProtectedWeight = (long) ((maximumWeight - maxWindowWeight) * PROTECTED_FRACTION);
+		sketch = new FrequencySketch<K>(Math.min(maximumWeight, INITIAL_SKETCH_CAPACITY));
+	}
+
+	protected void onAccess(K key) {
+		sketch.increment(key);
+		if (window.get(key) != null) {
+			return;
+		}
+		Integer weight = probation.remove(key);
+		if (weight != null) {
+			probationWeight -= weight;
+			protectedSegment.put(key, weight);
+			protectedWeight += weight;
+			demoteProtectedOverflow();
+		} else {
+			protectedSegment.get(key);
+		}
+	}
+
+	protected void onStore(K key, int weight, List<K> evicted) {
+		sketch.increment(key);
+		Integer previousWeight;
+		if ((previousWeight = window.get(key)) != null) {
+			window.put(key, weight);
+			windowWeight += weight - previousWeight;
+		} else if ((previousWeight = probation.get(key)) != null) {
+			probation.put(key, weight);
+			probationWeight += weight - previousWeight;
+		} else if ((previousWeight = protectedSegment.get(key)) != null) {
+			protectedSegment.put(key, weight);
+			protectedWeight += weight - previousWeight;
+			demoteProtectedOverflow();
+		} else {
+			window.put(key, weight);
+			windowWeight += weight;
+			sketch.ensureCapacity(window.size() + probation.size() + protectedSegment.size());
+		}
+		evictFromWindow(evicted);
+		//replaced entries may have grown
+		while (getTotalWeight() > maximumWeight) {
+			K victim = removeVictim();
+			if (victim == null) {
+				break;
+			}
+			evicted.add(victim);
+		}
+	}
+
+	private void evictFromWindow(List<K> evicted) {
+		Iterator<Map.Entry<K, Integer>> i = window.entrySet().iterator();
+		while (windowWeight > maxWindowWeight && i.hasNext()) {
+			Map.Entry<K, Integer> candidate = i.next();
+			i.remove();
+			windowWeight -= candidate.getValue();
+			admit(candidate.getKey(), candidate.getValue(), evicted);
+		}
+	}
+
+	/**
+	 * Lets a candidate from the window compete with entries in the main space.
+	 */
+	private void admit(K candidate, int weight, List<K> evicted) {
+		int candidateFrequency = sketch.frequency(candidate);
+		while (getTotalWeight() + weight > maximumWeight) {
+			K victim = getVictim();
+			if (victim == null || candidateFrequency <= sketch.frequency(victim)) {
+				evicted.add(candidate);
+				return;
+			}
+			removeVictim();
+			evicted.add(victim);
+		}
+		probation.put(candidate, weight);
+		probationWeight += weight;
+	}
+
+	private K getVictim() {
+		if (!probation.isEmpty()) {
+			return probation.keySet().iterator().next();
+		}
+		if (!protectedSegment.isEmpty()) {
+			return protectedSegment.keySet().iterator().next();
+		}
+		return null;
+	}
+
+	private K removeVictim() {
+		K victim = getVictim();
+		if (victim != null) {
+			onRemoval(victim);
+		}
+		return victim;
+	}
+
+	private void demoteProtectedOverflow() {
+		Iterator<Map.Entry<K, Integer>> i = protectedSegment.entrySet().iterator();
+		while (protectedWeight > maxProtectedWeight && i.hasNext()) {
+			Map.Entry<K, Integer> eldest = i.next();
+			i.remove();
+			protectedWeight -= eldest.getValue();
+			probation.put(eldest.getKey(), eldest.getValue());
+			probationWeight += eldest.getValue();
+		}
+	}
+
+	protected void onRemoval(K key) {
+		Integer weight;
+		if ((weight = window.remove(key)) != null) {
+			windowWeight -= weight;
+		} else if ((weight = probation.remove(key)) != null) {
+			probationWeight -= weight;
+		} else if ((weight = protectedSegment.remove(key)) != null) {
+			protectedWeight -= weight;
+		}
+	}
+
+	protected void onClear() {
+		window.clear();
+		probation.clear();
+		protectedSegment.clear();
+		windowWeight = 0;
+		probationWeight = 0;
+		protectedWeight = 0;
+		sketch.clear();
+	}
+
+	int getSketchSize() {
+		return sketch.getTableSize();
+	}
+
+	public String toString() {
+		return "W-TinyLFU";
+	}
+}
@@ -22,9 +22,17 @@ package org.ijsberg.iglu.database;
 import java.sql.SQLException;
 
 /**
+ * Reports the failure of a batch of statements that is executed in chunks,
+ * each in its own transaction.
+ * <p/>
+ * Chunks executed before the failing chunk have been committed,
+ * the failing chunk has been rolled back.
  */
 public class BatchSQLException extends SQLException {
-	private int rowIndex;
+	private int rowIndex = -1;
+	private int[] failedRowIndexes = new int[0];
+	private int nrofRowsCommitted;
+	private Object[] generatedKeys;
 
 	public BatchSQLException() {
 	}
@@ -40,4 +48,53 @@ public class BatchSQLException extends SQLException {
 	public BatchSQLException(String reason, String SQLState, int vendorCode) {
 		super(reason, SQLState, vendorCode);
 	}
+
+	/**
+	 * @param reason
+	 * @param cause             the exception raised by the driver
+	 * @param nrofRowsCommitted number of rows in chunks committed before the failure
+	 * @param failedRowIndexes  indexes of the rows that failed, empty if unknown
+	 */
+	public BatchSQLException(String reason, SQLException cause, int nrofRowsCommitted, int[] failedRowIndexes) {
+		super(reason, cause.getSQLState(), cause.getErrorCode(), cause);
+		this.nrofRowsCommitted = nrofRowsCommitted;
+		this.failedRowIndexes = failedRowIndexes;
+		if (failedRowIndexes.length > 0) {
+			rowIndex = failedRowIndexes[0];
+		}
+	}
+
+	/**
+	 * @return index in the batch of the first row that failed, or -1 if unknown
+	 */
+	public int getRowIndex() {
+		return rowIndex;
+	}
+
+	/**
+	 * @return indexes in the batch of the rows that failed, empty if unknown
+	 */
+	public int[] getFailedRowIndexes() {
+		return failedRowIndexes;
+	}
+
+	/**
+	 * Rows up to this number have been stored, so a batch may be resumed from here.
+	 *
+	 * @return number of rows in chunks committed before the failure
+	 */
+	public int getNrofRowsCommitted() {
+		return nrofRowsCommitted;
+	}
+
+	/**
+	 * @return keys generated for the rows committed, or null if keys were not requested
+	 */
+	public Object[] getGeneratedKeys() {
+		return generatedKeys;
+	}
+
+	public void setGeneratedKeys(Object[] generatedKeys) {
+		this.generatedKeys = generatedKeys;
+	}
 }
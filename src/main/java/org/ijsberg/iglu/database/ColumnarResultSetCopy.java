@@ -0,0 +1,338 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * A ResultSetCopy that stores its values per column instead of per row.
+ * <p/>
+ * Integer, long and double columns are kept in primitive arrays, String columns
+ * as indexes into a dictionary of distinct values and null values in a bitmap
+ * per column. Other values are stored as objects. For large, mostly numeric results
+ * this takes a fraction of the memory of a row based copy.
+ * <p/>
+ * Values are accessed in the same way as in a ResultSetCopy. Values of primitive
+ * columns are boxed when they are retrieved as objects.
+ */
+public class ColumnarResultSetCopy extends ResultSetCopy {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Column[] columns;
+	private int rowIndex = -1;
+
+
+	/**
+	 * @param rs          original result set
+	 * @param maxRowLog   maximum number of rows to log
+	 * @param resolveLOBs read LOB's into byte array
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public ColumnarResultSetCopy(ResultSet rs, int maxRowLog, boolean resolveLOBs) throws SQLException, IOException {
+		super(maxRowLog, resolveLOBs);
+		copy(rs);
+		checkLobReadException();
+	}
+
+
+	/**
+	 * @param rs        original result set
+	 * @param maxRowLog maximum number of rows to log
+	 * @throws SQLException
+	 */
+	public ColumnarResultSetCopy(ResultSet rs, int maxRowLog) throws SQLException {
+		super(maxRowLog, false);
+		copy(rs);
+	}
+
+
+	public void copy(ResultSet rs) throws SQLException {
+		super.copy(rs);
+		for (Column column : columns) {
+			column.trim(size());
+		}
+	}
+
+
+	protected void copyMetaData(ResultSetMetaData meta) throws SQLException {
+		super.copyMetaData(meta);
+		columns = new Column[getColCount()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = createColumn(getColumnClassName(i + 1));
+		}
+	}
+
+
+	private Column createColumn(String className) {
+		if (Integer.class.getName().equals(className)) {
+			return new IntColumn();
+		}
+		if (Long.class.getName().equals(className)) {
+			return new LongColumn();
+		}
+		if (Double.class.getName().equals(className)) {
+			return new DoubleColumn();
+		}
+		if (String.class.getName().equals(className)) {
+			return new StringColumn();
+		}
+		return new ObjectColumn();
+	}
+
+
+	protected void addRow(ResultSet rs) throws SQLException {
+		int row = size();
+		for (int i = 0; i < columns.length; i++) {
+			columns[i].read(rs, i + 1, row);
+		}
+	}
+
+
+	public void reset() {
+		rowIndex = -1;
+	}
+
+
+	public boolean next() {
+		if (rowIndex + 1 < size()) {
+			rowIndex++;
+			return true;
+		}
+		return false;
+	}
+
+
+	protected boolean hasCurrentRow() {
+		return rowIndex >= 0;
+	}
+
+
+	protected Object getValue(int columnIndex) {
+		return columns[columnIndex - 1].get(rowIndex);
+	}
+
+
+	protected Object[] getRow(int rowIndex) {
+		Object[] row = new Object[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			row[i] = columns[i].get(rowIndex);
+		}
+		return row;
+	}
+
+
+	/**
+	 * @return the values of the present row, copied into a new array
+	 */
+	public Object[] getRow() {
+		if (!hasCurrentRow()) {
+			return null;
+		}
+		return getRow(rowIndex);
+	}
+
+
+	public Integer getInt(String colName) {
+		checkCurrentRowBeforeRetrieval();
+		Column column = columns[getColumnIndexByName(colName) - 1];
+		if (column instanceof IntColumn) {
+			return column.isNull(rowIndex) ? null : Integer.valueOf(((IntColumn) column).values[rowIndex]);
+		}
+		return super.getInt(colName);
+	}
+
+
+	public Long getLong(String colName) {
+		checkCurrentRowBeforeRetrieval();
+		Column column = columns[getColumnIndexByName(colName) - 1];
+		if (column instanceof LongColumn) {
+			return column.isNull(rowIndex) ? null : Long.valueOf(((LongColumn) column).values[rowIndex]);
+		}
+		if (column instanceof IntColumn) {
+			return column.isNull(rowIndex) ? null : Long.valueOf(((IntColumn) column).values[rowIndex]);
+		}
+		return super.getLong(colName);
+	}
+
+
+	/**
+	 * Storage of the values of one column.
+	 */
+	private abstract static class Column implements Serializable {
+		protected final BitSet nulls = new BitSet();
+
+		abstract void read(ResultSet rs, int columnIndex, int row) throws SQLException;
+
+		abstract Object get(int row);
+
+		/**
+		 * Releases storage that is not needed after copying.
+		 *
+		 * @param size number of rows
+		 */
+		abstract void trim(int size);
+
+		boolean isNull(int row) {
+			return nulls.get(row);
+		}
+	}
+
+
+	private static class IntColumn extends Column {
+		private int[] values = new int[INITIAL_CAPACITY];
+
+		void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+			if (row == values.length) {
+				values = Arrays.copyOf(values, row * 2);
+			}
+			values[row] = rs.getInt(columnIndex);
+			if (rs.wasNull()) {
+				nulls.set(row);
+			}
+		}
+
+		Object get(int row) {
+			return nulls.get(row) ? null : Integer.valueOf(values[row]);
+		}
+
+		void trim(int size) {
+			values = Arrays.copyOf(values, size);
+		}
+	}
+
+
+	private static class LongColumn extends Column {
+		private long[] values = new long[INITIAL_CAPACITY];
+
+		void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+			if (row == values.length) {
+				values = Arrays.copyOf(values, row * 2);
+			}
+			values[row] = rs.getLong(columnIndex);
+			if (rs.wasNull()) {
+				nulls.set(row);
+			}
+		}
+
+		Object get(int row) {
+			return nulls.get(row) ? null : Long.valueOf(values[row]);
+		}
+
+		void trim(int size) {
+			values = Arrays.copyOf(values, size);
+		}
+	}
+
+
+	private static class DoubleColumn extends Column {
+		private double[] values = new double[INITIAL_CAPACITY];
+
+		void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+			if (row == values.length) {
+				values = Arrays.copyOf(values, row * 2);
+			}
+			values[row] = rs.getDouble(columnIndex);
+			if (rs.wasNull()) {
+				nulls.set(row);
+			}
+		}
+
+		Object get(int row) {
+			return nulls.get(row) ? null : Double.valueOf(values[row]);
+		}
+
+		void trim(int size) {
+			values = Arrays.copyOf(values, size);
+		}
+	}
+
+
+	/**
+	 * Stores each distinct value once.
+	 */
+	private static class StringColumn extends Column {
+		private int[] codes = new int[INITIAL_CAPACITY];
+		private ArrayList<String> dictionary = new ArrayList<String>();
+		//only needed while copying
+		private transient HashMap<String, Integer> codeByValue = new HashMap<String, Integer>();
+
+		void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+			if (row == codes.length) {
+				codes = Arrays.copyOf(codes, row * 2);
+			}
+			String value = rs.getString(columnIndex);
+			if (value == null) {
+				nulls.set(row);
+				return;
+			}
+			Integer code = codeByValue.get(value);
+			if (code == null) {
+				code = dictionary.size();
+				dictionary.add(value);
+				codeByValue.put(value, code);
+			}
+			codes[row] = code;
+		}
+
+		Object get(int row) {
+			return nulls.get(row) ? null : dictionary.get(codes[row]);
+		}
+
+		void trim(int size) {
+			codes = Arrays.copyOf(codes, size);
+			dictionary.trimToSize();
+			codeByValue = null;
+		}
+	}
+
+
+	/**
+	 * Stores values of any other type as objects.
+	 */
+	private class ObjectColumn extends Column {
+		private ArrayList<Object> values = new ArrayList<Object>();
+
+		void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+			Object value = readObject(rs, columnIndex);
+			if (value == null) {
+				nulls.set(row);
+			}
+			values.add(value);
+		}
+
+		Object get(int row) {
+			return values.get(row);
+		}
+
+		void trim(int size) {
+			values.trimToSize();
+		}
+	}
+}
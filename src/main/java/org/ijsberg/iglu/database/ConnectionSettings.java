@@ -27,6 +27,7 @@ public class ConnectionSettings {
 	public boolean readOnly = false;
 	public int isolationLevel = Connection.TRANSACTION_READ_UNCOMMITTED;
 	public boolean resolveLobs = false;
+	public boolean columnar = false;
 
 	public ConnectionSettings() {
 	}
@@ -44,6 +45,15 @@ public class ConnectionSettings {
 	}
 
 
+	/**
+	 * Results are copied into a ColumnarResultSetCopy, which takes less memory for large results.
+	 */
+	public ConnectionSettings setColumnar() {
+		columnar = true;
+		return this;
+	}
+
+
 	public ConnectionSettings(int isolationLevel) {
 		this.isolationLevel = isolationLevel;
 	}
@@ -18,10 +18,13 @@
  */
 package org.ijsberg.iglu.database;
 
+import org.ijsberg.iglu.invocation.ExposeInConsole;
+
 import java.sql.CallableStatement;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.List;
 
 
 /**
@@ -115,6 +118,41 @@ public interface JdbcProcessor {
 	 */
 	int[] executeBatchPreparedStatement(String statement, Collection inParamsBatch) throws SQLException;
 
+	/**
+	 * Executes a batch of updates in chunks, each chunk in its own transaction.
+	 * Execution stops at the first chunk that fails, which is rolled back.
+	 *
+	 * @param statement     declaration of the prepared statement
+	 * @param inParamsBatch a collection of arrays of parameters to feed the statement
+	 * @param chunkSize     maximum number of rows per chunk
+	 * @return an array of the number of affected rows for each statement
+	 * @throws BatchSQLException reporting the failed rows and the number of rows committed
+	 */
+	int[] executeBatchPreparedStatement(String statement, Collection inParamsBatch, int chunkSize) throws BatchSQLException;
+
+	/**
+	 * Executes an insert statement and retrieves the key generated by the database
+	 * in the same round trip.
+	 *
+	 * @param statement declaration of the prepared insert statement
+	 * @param input     statement parameters
+	 * @return the generated key, or null if no key was generated
+	 * @throws SQLException if execution fails
+	 */
+	Object executeInsert(String statement, StatementInput input) throws SQLException;
+
+	/**
+	 * Executes a batch of inserts in chunks, each chunk in its own transaction,
+	 * and retrieves the generated keys.
+	 *
+	 * @param statement     declaration of the prepared insert statement
+	 * @param inParamsBatch a collection of arrays of parameters to feed the statement
+	 * @param chunkSize     maximum number of rows per chunk
+	 * @return the generated keys in the order of the input rows
+	 * @throws BatchSQLException reporting the failed rows, the number of rows committed and their keys
+	 */
+	Object[] executeBatchInsert(String statement, Collection inParamsBatch, int chunkSize) throws BatchSQLException;
+
 	/**
 	 * @param sqlQuery SQL query statement
 	 * @return a copy of the result set
@@ -122,10 +160,52 @@ public interface JdbcProcessor {
 	 */
 	ResultSetCopy executeQuery(String sqlQuery) throws SQLException;
 
+	/**
+	 * Executes a query and passes the resulting rows one by one to a row handler,
+	 * without copying the result. The statement stays open until all rows are processed.
+	 *
+	 * @param sqlQuery SQL query statement
+	 * @param input    query parameters
+	 * @param handler  processes the rows
+	 * @return the number of rows processed
+	 * @throws SQLException if execution fails
+	 */
+	int executeQuery(String sqlQuery, StatementInput input, RowHandler handler) throws SQLException;
+
+	/**
+	 * Executes a query and passes the resulting rows one by one to a row handler,
+	 * without copying the result. The statement stays open until all rows are processed.
+	 *
+	 * @param sqlQuery SQL query statement
+	 * @param input    query parameters
+	 * @param settings connection settings
+	 * @param handler  processes the rows
+	 * @return the number of rows processed
+	 * @throws SQLException if execution fails
+	 */
+	int executeQuery(String sqlQuery, StatementInput input, ConnectionSettings settings, RowHandler handler) throws SQLException;
+
 	/**
 	 * @param sqlUpdate SQL update statement
 	 * @return the number of affected rows
 	 * @throws SQLException if execution fails
 	 */
 	int executeUpdate(String sqlUpdate) throws SQLException;
+
+
+	/**
+	 * @return latency, row and error statistics per normalized statement, the ones taking the most time in total first
+	 */
+	List<StatementStatistics> getStatementStatistics();
+
+
+	/**
+	 * @return readable overview of the statements taking the most time in total
+	 */
+	@ExposeInConsole(description = "reports statements that take the most time in total", paramDesc = {})
+	String getStatementReport();
+
+
+	@ExposeInConsole(description = "resets statement statistics", paramDesc = {})
+	void resetStatementStatistics();
 }
@@ -22,15 +22,23 @@ package org.ijsberg.iglu.database;
 import org.ijsberg.iglu.configuration.ConfigurationException;
 import org.ijsberg.iglu.util.types.Converter;
 
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  */
 public class RecordMapper<T extends DataObject> {
 
+	//field maps are looked up once per class and set of field names
+	//they refer to their class through its fields, so they're referenced softly to let the class be collected
+	private static final WeakHashMap<Class, SoftReference<ConcurrentHashMap<Set<String>, HashMap<String, Field>>>> fieldMapCache = new WeakHashMap<Class, SoftReference<ConcurrentHashMap<Set<String>, HashMap<String, Field>>>>();
+
 	private HashMap<String, Field> fields;
 	private Set<String> fieldNames;
 	protected T dataObject;
@@ -71,6 +79,24 @@ public class RecordMapper<T extends DataObject> {
 	}
 
 	private static HashMap<String, Field> getFieldMap(Class dataClass, Set<String> fieldNames) {
+		ConcurrentHashMap<Set<String>, HashMap<String, Field>> fieldMaps;
+		synchronized (fieldMapCache) {
+			SoftReference<ConcurrentHashMap<Set<String>, HashMap<String, Field>>> reference = fieldMapCache.get(dataClass);
+			fieldMaps = reference != null ? reference.get() : null;
+			if (fieldMaps == null) {
+				fieldMaps = new ConcurrentHashMap<Set<String>, HashMap<String, Field>>();
+				fieldMapCache.put(dataClass, new SoftReference<ConcurrentHashMap<Set<String>, HashMap<String, Field>>>(fieldMaps));
+			}
+		}
+		HashMap<String, Field> fieldMap = fieldMaps.get(fieldNames);
+		if (fieldMap == null) {
+			fieldMap = findFields(dataClass, fieldNames);
+			fieldMaps.put(new HashSet<String>(fieldNames), fieldMap);
+		}
+		return fieldMap;
+	}
+
+	private static HashMap<String, Field> findFields(Class dataClass, Set<String> fieldNames) {
 		HashMap<String, Field> fieldMap = new HashMap<String, Field>();
 		Class tmpClass = dataClass;
 		while (tmpClass != null) {
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database;
+
+import org.ijsberg.iglu.configuration.ConfigurationException;
+import org.ijsberg.iglu.util.types.Converter;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps rows of a query result directly onto the fields of new objects.
+ * <p/>
+ * A mapping is created once per class and object-relational mapping
+ * (field name -> column name) and shared by all threads. Fields and the
+ * constructor are looked up and made accessible when the mapping is created,
+ * and column indexes are resolved once per result, so mapping a row only
+ * instantiates the object and sets its fields.
+ * <p/>
+ * Shared mappings do not prevent classes, and the class loaders of modules
+ * that are reloaded, from being garbage collected once the mappings are
+ * no longer in use.
+ * <p/>
+ * Values that do not match the type of the field are converted,
+ * null values leave fields at their default value.
+ */
+public class RecordMapping<T> {
+
+	//mappings refer to their class through its fields, so they're referenced softly to let the class be collected
+	private static final WeakHashMap<Class, SoftReference<ConcurrentHashMap<Key, RecordMapping>>> mappingsByClass = new WeakHashMap<Class, SoftReference<ConcurrentHashMap<Key, RecordMapping>>>();
+
+	private final Class<T> type;
+	private final Constructor<T> constructor;
+	private final String[] columnNames;
+	private final FieldSetter[] setters;
+
+
+	/**
+	 * @param type    class of the objects to create
+	 * @param mapping field names mapped to column names
+	 * @return a shared mapping
+	 * @throws ConfigurationException if fields in the mapping can not be found
+	 */
+	public static <T> RecordMapping<T> getInstance(Class<T> type, Properties mapping) {
+		Key key = new Key(type, mapping);
+		ConcurrentHashMap<Key, RecordMapping> mappings = getMappings(type);
+		RecordMapping<T> recordMapping = mappings.get(key);
+		if (recordMapping == null) {
+			recordMapping = new RecordMapping<T>(type, key.mapping);
+			RecordMapping<T> existing = mappings.putIfAbsent(key, recordMapping);
+			if (existing != null) {
+				recordMapping = existing;
+			}
+		}
+		return recordMapping;
+	}
+
+
+	private static ConcurrentHashMap<Key, RecordMapping> getMappings(Class type) {
+		synchronized (mappingsByClass) {
+			SoftReference<ConcurrentHashMap<Key, RecordMapping>> reference = mappingsByClass.get(type);
+			ConcurrentHashMap<Key, RecordMapping> mappings = reference != null ? reference.get() : null;
+			if (mappings == null) {
+				mappings = new ConcurrentHashMap<Key, RecordMapping>();
+				mappingsByClass.put(type, new SoftReference<ConcurrentHashMap<Key, RecordMapping>>(mappings));
+			}
+			return mappings;
+		}
+	}
+
+
+	private RecordMapping(Class<T> type, Map<String, String> mapping) {
+		this.type = type;
+		this.constructor = getDefaultConstructor(type);
+		columnNames = new String[mapping.size()];
+		setters = new FieldSetter[mapping.size()];
+		int i = 0;
+		for (Map.Entry<String, String> entry : mapping.entrySet()) {
+			columnNames[i] = entry.getValue();
+			setters[i] = new FieldSetter(getField(type, entry.getKey()));
+			i++;
+		}
+	}
+
+
+	private static <T> Constructor<T> getDefaultConstructor(Class<T> type) {
+		try {
+			Constructor<T> constructor = type.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return constructor;
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (SecurityException e) {
+			return null;
+		}
+	}
+
+
+	private static Field getField(Class type, String fieldName) {
+		Class tmpClass = type;
+		while (tmpClass != null) {
+			for (Field field : tmpClass.getDeclaredFields()) {
+				if (field.getName().equals(fieldName)) {
+					return field;
+				}
+			}
+			tmpClass = tmpClass.getSuperclass();
+		}
+		throw new ConfigurationException("field " + fieldName + " can not be located in " + type);
+	}
+
+
+	/**
+	 * @return true if objects can be created, which requires a constructor without arguments
+	 */
+	public boolean isInstantiable() {
+		return constructor != null;
+	}
+
+
+	/**
+	 * Creates an object for every row in a result set copy.
+	 *
+	 * @param resultSet
+	 * @return
+	 */
+	public List<T> mapAll(ResultSetCopy resultSet) {
+		int[] columnIndexes = getColumnIndexes(resultSet.getColumnNames());
+		List<T> result = new ArrayList<T>(resultSet.size());
+		resultSet.reset();
+		while (resultSet.next()) {
+			T object = newInstance();
+			for (int i = 0; i < setters.length; i++) {
+				if (columnIndexes[i] > 0) {
+					setters[i].set(object, resultSet.getObject(columnIndexes[i]));
+				}
+			}
+			result.add(object);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Creates an object for every remaining row in a result set.
+	 *
+	 * @param resultSet
+	 * @return
+	 * @throws SQLException
+	 */
+	public List<T> mapAll(ResultSet resultSet) throws SQLException {
+		ResultSetMetaData meta = resultSet.getMetaData();
+		String[] resultColumnNames = new String[meta.getColumnCount()];
+		for (int i = 0; i < resultColumnNames.length; i++) {
+			resultColumnNames[i] = meta.getColumnName(i + 1);
+		}
+		int[] columnIndexes = getColumnIndexes(resultColumnNames);
+		List<T> result = new ArrayList<T>();
+		while (resultSet.next()) {
+			T object = newInstance();
+			for (int i = 0; i < setters.length; i++) {
+				if (columnIndexes[i] > 0) {
+					setters[i].set(object, resultSet.getObject(columnIndexes[i]));
+				}
+			}
+			result.add(object);
+		}
+		return result;
+	}
+
+
+	/**
+	 * @param resultColumnNames
+	 * @return for every mapped field the index of its column, or 0 if the column is missing
+	 */
+	private int[] getColumnIndexes(String[] resultColumnNames) {
+		int[] columnIndexes = new int[columnNames.length];
+		for (int i = 0; i < columnNames.length; i++) {
+			for (int j = 0; j < resultColumnNames.length; j++) {
+				if (columnNames[i].equalsIgnoreCase(resultColumnNames[j])) {
+					columnIndexes[i] = j + 1;
+					break;
+				}
+			}
+		}
+		return columnIndexes;
+	}
+
+
+	private T newInstance() {
+		if (constructor == null) {
+			throw new ConfigurationException("class " + type + " should have a constructor without arguments to be instantiated by record mapping");
+		}
+		try {
+			return constructor.newInstance();
+		} catch (InstantiationException e) {
+			throw new ConfigurationException("class " + type + " can not be instantiated", e);
+		} catch (IllegalAccessException e) {
+			throw new ConfigurationException("constructor of " + type + " not accessible", e);
+		} catch (InvocationTargetException e) {
+			throw new ConfigurationException("constructor of " + type + " failed", e.getCause());
+		}
+	}
+
+
+	public String toString() {
+		return "record mapping for " + type.getName();
+	}
+
+
+	/**
+	 * Sets a field, avoiding conversion if the value already has the right type.
+	 */
+	private static class FieldSetter {
+		private final Field field;
+		private final Class valueType;
+		private final boolean accessible;
+
+		private FieldSetter(Field field) {
+			this.field = field;
+			this.valueType = getWrapperType(field.getType());
+			boolean accessible;
+			try {
+				field.setAccessible(true);
+				accessible = true;
+			} catch (SecurityException e) {
+				accessible = false;
+			}
+			this.accessible = accessible;
+		}
+
+		private void set(Object object, Object value) {
+			if (value == null) {
+				return;
+			}
+			try {
+				if (!valueType.isInstance(value)) {
+					if (valueType == Integer.class && value instanceof Number) {
+						value = ((Number) value).intValue();
+					} else if (valueType == Long.class && value instanceof Number) {
+						value = ((Number) value).longValue();
+					} else if (valueType == Double.class && value instanceof Number) {
+						value = ((Number) value).doubleValue();
+					} else {
+						value = Converter.convertToObject(value, field.getType());
+					}
+				}
+				if (accessible) {
+					field.set(object, value);
+				} else if (object instanceof DataObject) {
+					((DataObject) object).setField(field, value);
+				} else {
+					throw new ConfigurationException("field " + field.getName() + " of " + object.getClass() + " is not accessible");
+				}
+			} catch (IllegalAccessException e) {
+				throw new ConfigurationException("field " + field.getName() + " of " + object.getClass() + " is not accessible", e);
+			}
+		}
+
+		private static Class getWrapperType(Class type) {
+			if (!type.isPrimitive()) {
+				return type;
+			}
+			if (type == Integer.TYPE) {
+				return Integer.class;
+			} else if (type == Long.TYPE) {
+				return Long.class;
+			} else if (type == Double.TYPE) {
+				return Double.class;
+			} else if (type == Boolean.TYPE) {
+				return Boolean.class;
+			} else if (type == Float.TYPE) {
+				return Float.class;
+			} else if (type == Short.TYPE) {
+				return Short.class;
+			} else if (type == Byte.TYPE) {
+				return Byte.class;
+			}
+			return Character.class;
+		}
+	}
+
+
+	private static class Key {
+		private final Class type;
+		private final HashMap<String, String> mapping = new HashMap<String, String>();
+
+		private Key(Class type, Properties mapping) {
+			this.type = type;
+			for (String fieldName : mapping.stringPropertyNames()) {
+				this.mapping.put(fieldName, mapping.getProperty(fieldName));
+			}
+		}
+
+		public boolean equals(Object other) {
+			return other instanceof Key && type == ((Key) other).type && mapping.equals(((Key) other).mapping);
+		}
+
+		public int hashCode() {
+			return type.hashCode() * 31 + mapping.hashCode();
+		}
+	}
+}
@@ -135,6 +135,30 @@ public class ResultSetCopy implements Serializable {
 	}
 
 
+	/**
+	 * Constructor for subclasses that copy the result set themselves.
+	 *
+	 * @param maxRowLog   maximum number of rows to log
+	 * @param resolveLOBs read LOB's into byte array
+	 */
+	protected ResultSetCopy(int maxRowLog, boolean resolveLOBs) {
+		this.maxRowLog = maxRowLog;
+		this.resolveLOBs = resolveLOBs;
+	}
+
+
+	/**
+	 * Throws an exception that occurred while reading a LOB during copy.
+	 *
+	 * @throws IOException
+	 */
+	protected void checkLobReadException() throws IOException {
+		if (lobReadException != null) {
+			throw lobReadException;
+		}
+	}
+
+
 	/**
 	 * Copies ResultSet into ResultSetCopy
 	 *
@@ -142,7 +166,22 @@ public class ResultSetCopy implements Serializable {
 	 * @throws SQLException
 	 */
 	public void copy(ResultSet rs) throws SQLException {
-		ResultSetMetaData meta = rs.getMetaData();
+		copyMetaData(rs.getMetaData());
+
+		while (rs.next()) {
+			addRow(rs);
+			rowCount++;
+		}
+	}
+
+
+	/**
+	 * Copies column names and types.
+	 *
+	 * @param meta meta data of the original result set
+	 * @throws SQLException
+	 */
+	protected void copyMetaData(ResultSetMetaData meta) throws SQLException {
 		colCount = meta.getColumnCount();
 
 		int[] colType = new int[colCount];
@@ -157,36 +196,65 @@ public class ResultSetCopy implements Serializable {
 			colNames.put(meta.getColumnName(i + 1).toLowerCase(), new Integer(i + 1));
 			colName[i] = meta.getColumnName(i + 1);
 		}
+	}
 
-		while (rs.next()) {
-			Object[] row = new Object[colCount];
-			for (int i = 0; i < colCount; i++) {
-				//try {
-					row[i] = rs.getObject(i + 1);
-				//} catch (SQLException e) {
-				//	row[i] = null;
-				//}
-				if (resolveLOBs) {
-					if (row[i] instanceof Clob) {
-						Clob clob = rs.getClob(i + 1);
-						if (clob != null) {
-							try {
-								row[i] = new String(StreamSupport.absorbInputStream(clob.getAsciiStream()));
-							} catch (IOException e) {
-								lobReadException = e;
-							}
-						}
-					} else if (row[i] instanceof Blob) {
-						Blob blob = rs.getBlob(i + 1);
-						if (blob != null) {
-							row[i] = blob.getBytes(1, (int) blob.length());
-						}
+
+	/**
+	 * Copies the current row of a result set.
+	 *
+	 * @param rs result set positioned at the row to copy
+	 * @throws SQLException
+	 */
+	protected void addRow(ResultSet rs) throws SQLException {
+		Object[] row = new Object[colCount];
+		for (int i = 0; i < colCount; i++) {
+			row[i] = readObject(rs, i + 1);
+		}
+		result.add(row);
+	}
+
+
+	/**
+	 * Reads a value from the current row of a result set, resolving LOB's if required.
+	 *
+	 * @param rs          result set positioned at the row to copy
+	 * @param columnIndex
+	 * @return
+	 * @throws SQLException
+	 */
+	protected Object readObject(ResultSet rs, int columnIndex) throws SQLException {
+		//try {
+			Object value = rs.getObject(columnIndex);
+		//} catch (SQLException e) {
+		//	value = null;
+		//}
+		if (resolveLOBs) {
+			if (value instanceof Clob) {
+				Clob clob = rs.getClob(columnIndex);
+				if (clob != null) {
+					try {
+						value = new String(StreamSupport.absorbInputStream(clob.getAsciiStream()));
+					} catch (IOException e) {
+						lobReadException = e;
 					}
 				}
+			} else if (value instanceof Blob) {
+				Blob blob = rs.getBlob(columnIndex);
+				if (blob != null) {
+					value = blob.getBytes(1, (int) blob.length());
+				}
 			}
-			rowCount++;
-			result.add(row);
 		}
+		return value;
+	}
+
+
+	/**
+	 * @param columnIndex
+	 * @return name of the Java class of values in the column
+	 */
+	protected String getColumnClassName(int columnIndex) {
+		return colTypeNames[columnIndex - 1][0];
 	}
 
 	/**
@@ -217,7 +285,7 @@ public class ResultSetCopy implements Serializable {
 	 * @param colName column name as defined in the relational database
 	 * @return column index number
 	 */
-	private int getColumnIndexByName(String colName) {
+	protected int getColumnIndexByName(String colName) {
 		Integer column = (Integer) colNames.get(colName.toLowerCase());
 		if (column == null) {
 			throw new IndexOutOfBoundsException("column '" + colName + "' does not exist");
@@ -274,7 +342,7 @@ public class ResultSetCopy implements Serializable {
 	public Properties rowToProperties(String defaultVal) {
 		Properties properties = new Properties();
 		for (String columnName : colNames.keySet()) {
-			Object value = currentRow[colNames.get(columnName) - 1];
+			Object value = getValue(colNames.get(columnName));
 			if (value != null) {
 				properties.put(columnName, value);
 			} else {
@@ -295,7 +363,7 @@ public class ResultSetCopy implements Serializable {
 			String columnName = (String) mapping.get(fieldName);
 			Integer index = colNames.get(columnName.toLowerCase());
 			if (index != null) {
-				Object value = currentRow[index - 1];
+				Object value = getValue(index);
 				if (value != null) {
 					properties.put(fieldName, value);
 				}
@@ -342,12 +410,38 @@ public class ResultSetCopy implements Serializable {
 	 */
 	public Object getObject(int columnIndex) {
 		checkCurrentRowBeforeRetrieval();
+		return getValue(columnIndex);
+	}
+
+
+	/**
+	 * @param columnIndex
+	 * @return the value in the indicated column at the present row
+	 */
+	protected Object getValue(int columnIndex) {
 		return currentRow[columnIndex - 1];
 	}
 
 
-	private void checkCurrentRowBeforeRetrieval() {
-		if (currentRow == null) {
+	/**
+	 * @return true if next() has positioned the copy at a row
+	 */
+	protected boolean hasCurrentRow() {
+		return currentRow != null;
+	}
+
+
+	/**
+	 * @param rowIndex index of a row, starting at 0
+	 * @return the values of the row
+	 */
+	protected Object[] getRow(int rowIndex) {
+		return (Object[]) result.get(rowIndex);
+	}
+
+
+	protected void checkCurrentRowBeforeRetrieval() {
+		if (!hasCurrentRow()) {
 			throw new IllegalStateException("current row can not be determined, please invoke next() before retrieving data from row");
 		}
 	}
@@ -368,7 +462,7 @@ public class ResultSetCopy implements Serializable {
 	 */
 	public Clob getClob(int columnIndex) {
 		checkCurrentRowBeforeRetrieval();
-		return (Clob) currentRow[columnIndex - 1];
+		return (Clob) getValue(columnIndex);
 	}
 
 
@@ -387,7 +481,7 @@ public class ResultSetCopy implements Serializable {
 	 */
 	public String getClobAsString(int columnIndex) {
 		checkCurrentRowBeforeRetrieval();
-		return (String) currentRow[columnIndex - 1];
+		return (String) getValue(columnIndex);
 	}
 
 
@@ -406,7 +500,7 @@ public class ResultSetCopy implements Serializable {
 	 */
 	public byte[] getBlobAsByteArray(int columnIndex) {
 		checkCurrentRowBeforeRetrieval();
-		return (byte[]) currentRow[columnIndex - 1];
+		return (byte[]) getValue(columnIndex);
 	}
 
 	/**
@@ -424,7 +518,7 @@ public class ResultSetCopy implements Serializable {
 	 */
 	public boolean isNull(int columnIndex) {
 		checkCurrentRowBeforeRetrieval();
-		return currentRow[columnIndex - 1] == null;
+		return getValue(columnIndex) == null;
 	}
 
 
@@ -436,7 +530,7 @@ public class ResultSetCopy implements Serializable {
 			return "Resultset not initialized...";
 		}
 
-		StringBuffer sb = new StringBuffer("resultset contains " + result.size() + " row(s) and " + colName.length + " column(s)\n");
+		StringBuffer sb = new StringBuffer("resultset contains " + rowCount + " row(s) and " + colName.length + " column(s)\n");
 
 		for (int j = 0; j < colName.length; j++) {
 			sb.append(colName[j]).append('(').append(colTypeNames[j][0]).append(")\t");
@@ -444,11 +538,10 @@ public class ResultSetCopy implements Serializable {
 
 		sb.append("\n");
 
-		Iterator i = result.iterator();
 		int count = 0;
 
-		while (i.hasNext() && ((maxRowLog <= 0) || (count++ < maxRowLog))) {
-			Object[] row = (Object[]) i.next();
+		while (count < rowCount && ((maxRowLog <= 0) || (count < maxRowLog))) {
+			Object[] row = getRow(count++);
 			sb.append('(');
 			for (int j = 0; j < row.length; j++) {
 				if (colTypeNames[j][0].endsWith("LOB")) {
@@ -476,7 +569,7 @@ public class ResultSetCopy implements Serializable {
 			}
 			sb.append(")\n");
 		}
-		if (i.hasNext() && (count >= maxRowLog)) {
+		if (count < rowCount) {
 			sb.append("max nr of rows to log exceeded...\n");
 		}
 		return sb.toString();
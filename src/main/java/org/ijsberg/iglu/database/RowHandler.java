@@ -0,0 +1,43 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Processes the rows of a query result one at a time, while the result set
+ * is still connected to the database.
+ * <p/>
+ * Rows are not copied, so a query may return any number of rows
+ * without filling up memory.
+ */
+public interface RowHandler {
+
+	/**
+	 * Invoked for every row in the result.
+	 * The result set is positioned at the current row and must not be moved or closed.
+	 *
+	 * @param resultSet result set positioned at the current row
+	 * @return false to stop processing the remaining rows
+	 * @throws SQLException
+	 */
+	boolean handleRow(ResultSet resultSet) throws SQLException;
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database;
+
+import java.sql.SQLException;
+
+/**
+ * Decides how a JDBC processor deals with a failed statement.
+ */
+public interface SqlErrorClassifier {
+
+	enum ErrorType {
+		/**
+		 * The connection is broken, it must be discarded and the statement may be retried on a fresh one.
+		 */
+		CONNECTION,
+		/**
+		 * The statement was rolled back by the database, for instance in case of a deadlock,
+		 * and may succeed if retried.
+		 */
+		TRANSIENT,
+		/**
+		 * Retrying the statement is pointless, for instance in case of a constraint violation
+		 * or an error in SQL.
+		 */
+		PERMANENT
+	}
+
+	/**
+	 * @param e
+	 * @return the way the error must be handled
+	 */
+	ErrorType classify(SQLException e);
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database;
+
+import org.ijsberg.iglu.configuration.ConfigurationException;
+import org.ijsberg.iglu.logging.Level;
+import org.ijsberg.iglu.logging.LogEntry;
+import org.ijsberg.iglu.util.statistics.StripedCounter;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * Logs executed SQL statements, their parameters, durations and results.
+ * <p/>
+ * Descriptions of statements and results are only built if they are going
+ * to be logged, so a trace level that logs little costs next to nothing.
+ * <p/>
+ * Properties:
+ * <ul>
+ * <li>sql_trace_level: DEBUG: statements and results, VERBOSE: statements with durations and result sizes,
+ * CRITICAL: slow statements only (default), OFF: nothing</li>
+ * <li>sql_slow_threshold: duration in milliseconds from which statements are logged as slow,
+ * regardless of trace level (default: 1000, 0 = disabled)</li>
+ * <li>sql_trace_redaction: none: parameters are logged (default), text: only numeric and boolean parameters
+ * are logged, all: no parameters are logged</li>
+ * </ul>
+ */
+public class SqlTracer {
+
+	public static final String REDACT_NONE = "none";
+	public static final String REDACT_TEXT = "text";
+	public static final String REDACT_ALL = "all";
+
+	private static final int MAX_PARAMETER_LENGTH = 100;
+	private static final String REDACTED = "***";
+
+	//null means off
+	private Level level = Level.CRITICAL;
+	private long slowThresholdNanos = 1000 * 1000000L;
+	private String redaction = REDACT_NONE;
+
+	private final StripedCounter nrofSlowStatements = new StripedCounter();
+
+
+	public void setProperties(Properties properties) {
+		String levelName = properties.getProperty("sql_trace_level", level != null ? level.name() : "OFF");
+		if ("OFF".equalsIgnoreCase(levelName)) {
+			level = null;
+		} else {
+			try {
+				level = Level.valueOf(levelName.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new ConfigurationException("unknown sql_trace_level " + levelName, e);
+			}
+		}
+		slowThresholdNanos = Long.valueOf(properties.getProperty("sql_slow_threshold", "" + slowThresholdNanos / 1000000)) * 1000000;
+		redaction = properties.getProperty("sql_trace_redaction", redaction);
+		if (!REDACT_NONE.equals(redaction) && !REDACT_TEXT.equals(redaction) && !REDACT_ALL.equals(redaction)) {
+			throw new ConfigurationException("sql_trace_redaction must be " + REDACT_NONE + ", " + REDACT_TEXT + " or " + REDACT_ALL + ", not " + redaction);
+		}
+	}
+
+
+	/**
+	 * @param level
+	 * @return true if statements are traced at the given level
+	 */
+	public boolean isTracing(Level level) {
+		return this.level != null && level.ordinal() >= this.level.ordinal();
+	}
+
+
+	/**
+	 * Logs an executed statement if the trace level or its duration requires it.
+	 *
+	 * @param statement
+	 * @param params     parameters bound to the statement, may be null
+	 * @param result     outcome of the statement, may be null
+	 * @param startNanos System.nanoTime() before execution
+	 */
+	public void trace(String statement, Object[] params, Object result, long startNanos) {
+		if (level == null && slowThresholdNanos <= 0) {
+			return;
+		}
+		long durationNanos = System.nanoTime() - startNanos;
+		if (slowThresholdNanos > 0 && durationNanos >= slowThresholdNanos) {
+			nrofSlowStatements.increment();
+			System.out.println(new LogEntry(Level.CRITICAL, "slow statement (" + durationNanos / 1000000 + " ms): " + describe(statement, params) + describeResultSize(result)));
+		} else if (isTracing(Level.VERBOSE)) {
+			System.out.println(new LogEntry(Level.VERBOSE, "executed (" + durationNanos / 1000000 + " ms): " + describe(statement, params) + describeResultSize(result)));
+		}
+		if (isTracing(Level.DEBUG) && result instanceof Serializable) {
+			System.out.println(new LogEntry("result of " + statement, (Serializable) result));
+		}
+	}
+
+
+	private static String describeResultSize(Object result) {
+		if (result instanceof ResultSetCopy) {
+			return " -> " + ((ResultSetCopy) result).size() + " row(s)";
+		}
+		if (result != null) {
+			return " -> " + result;
+		}
+		return "";
+	}
+
+
+	/**
+	 * @param statement
+	 * @param params    parameters bound to the statement, may be null
+	 * @return statement followed by its parameters, redacted as configured
+	 */
+	public String describe(String statement, Object[] params) {
+		if (params == null || params.length == 0) {
+			return statement;
+		}
+		StringBuffer description = new StringBuffer(statement);
+		for (Object param : params) {
+			description.append('[');
+			if (param == null) {
+				description.append("null");
+			} else if (param instanceof JdbcNullObject) {
+				description.append("null(" + ((JdbcNullObject) param).getType() + ")");
+			} else if (REDACT_ALL.equals(redaction) || (REDACT_TEXT.equals(redaction) && !(param instanceof Number || param instanceof Boolean))) {
+				description.append(REDACTED);
+			} else {
+				String value = param.toString();
+				if (value.length() > MAX_PARAMETER_LENGTH) {
+					description.append(value.substring(0, MAX_PARAMETER_LENGTH)).append("...");
+				} else {
+					description.append(value);
+				}
+			}
+			description.append(']');
+		}
+		return description.toString();
+	}
+
+
+	/**
+	 * @return number of statements that took longer than the slow threshold
+	 */
+	public long getNrofSlowStatements() {
+		return nrofSlowStatements.get();
+	}
+
+
+	public String toString() {
+		return "SQL tracer (level: " + (level != null ? level.name() : "OFF") + ", slow threshold: " + slowThresholdNanos / 1000000 + " ms, redaction: " + redaction + ")";
+	}
+}
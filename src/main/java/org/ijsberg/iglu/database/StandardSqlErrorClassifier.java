@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Properties;
+
+/**
+ * Classifies SQL errors by their SQLState, vendor error code and exception type.
+ * Causes and chained exceptions are inspected as well.
+ * <p/>
+ * Properties:
+ * <ul>
+ * <li>connection_sql_states: comma separated (prefixes of) SQLStates of connection failures
+ * (default: 08, 57P01, 57P02, 57P03)</li>
+ * <li>transient_sql_states: comma separated (prefixes of) SQLStates of errors that may be
+ * resolved by a retry, such as deadlocks and serialization failures (default: 40, 55P03)</li>
+ * <li>transient_error_codes: comma separated vendor error codes of errors that may be
+ * resolved by a retry (default: MySQL lock wait timeout and deadlock 1205, 1213, Oracle deadlock 60)</li>
+ * </ul>
+ * Timeouts are not considered transient, since retrying them multiplies the time a caller waits.
+ */
+public class StandardSqlErrorClassifier implements SqlErrorClassifier {
+
+	//maximum number of causes and chained exceptions to inspect
+	private static final int MAX_DEPTH = 10;
+
+	private String[] connectionSqlStates = {"08", "57P01", "57P02", "57P03"};
+	private String[] transientSqlStates = {"40", "55P03"};
+	private int[] transientErrorCodes = {1205, 1213, 60};
+
+
+	public void setProperties(Properties properties) {
+		connectionSqlStates = getList(properties, "connection_sql_states", connectionSqlStates);
+		transientSqlStates = getList(properties, "transient_sql_states", transientSqlStates);
+		String[] codes = getList(properties, "transient_error_codes", null);
+		if (codes != null) {
+			transientErrorCodes = new int[codes.length];
+			for (int i = 0; i < codes.length; i++) {
+				transientErrorCodes[i] = Integer.parseInt(codes[i]);
+			}
+		}
+	}
+
+
+	private static String[] getList(Properties properties, String key, String[] defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		if ("".equals(value.trim())) {
+			return new String[0];
+		}
+		String[] result = value.split(",");
+		for (int i = 0; i < result.length; i++) {
+			result[i] = result[i].trim();
+		}
+		return result;
+	}
+
+
+	public ErrorType classify(SQLException e) {
+		SQLException current = e;
+		for (int depth = 0; current != null && depth < MAX_DEPTH; depth++) {
+			ErrorType type = classifySingle(current);
+			if (type != ErrorType.PERMANENT) {
+				return type;
+			}
+			if (current.getCause() instanceof SQLException && current.getCause() != current) {
+				current = (SQLException) current.getCause();
+			} else {
+				current = current.getNextException();
+			}
+		}
+		return ErrorType.PERMANENT;
+	}
+
+
+	private ErrorType classifySingle(SQLException e) {
+		if (e instanceof SQLNonTransientConnectionException || e instanceof SQLTransientConnectionException
+				|| e instanceof SQLRecoverableException || startsWithAny(e.getSQLState(), connectionSqlStates)) {
+			return ErrorType.CONNECTION;
+		}
+		if (e instanceof SQLTransactionRollbackException || startsWithAny(e.getSQLState(), transientSqlStates)) {
+			return ErrorType.TRANSIENT;
+		}
+		for (int errorCode : transientErrorCodes) {
+			if (e.getErrorCode() == errorCode && errorCode != 0) {
+				return ErrorType.TRANSIENT;
+			}
+		}
+		return ErrorType.PERMANENT;
+	}
+
+
+	private static boolean startsWithAny(String sqlState, String[] prefixes) {
+		if (sqlState == null) {
+			return false;
+		}
+		for (String prefix : prefixes) {
+			if (prefix.length() > 0 && sqlState.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
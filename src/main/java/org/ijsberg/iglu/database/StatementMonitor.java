@@ -0,0 +1,240 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database;
+
+import org.ijsberg.iglu.util.statistics.LatencyHistogram;
+import org.ijsberg.iglu.util.statistics.StripedCounter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps latency, row and error statistics per normalized SQL statement.
+ * <p/>
+ * Statements are normalized by replacing string and numeric literals by question marks,
+ * so that statements that only differ in their literals share their statistics.
+ * <p/>
+ * Properties:
+ * <ul>
+ * <li>max_tracked_statements: maximum number of distinct statements, the executions of
+ * further statements are accumulated under OTHER_STATEMENTS (default: 500)</li>
+ * </ul>
+ */
+public class StatementMonitor {
+
+	public static final String OTHER_STATEMENTS = "(other statements)";
+
+	private int maxTrackedStatements = 500;
+
+	//statement as executed -> statistics of normalized statement
+	private final ConcurrentMap<String, Counters> entriesBySql = new ConcurrentHashMap<String, Counters>();
+	private final ConcurrentMap<String, Counters> entries = new ConcurrentHashMap<String, Counters>();
+	private final Counters otherStatements = new Counters();
+
+	private static class Counters {
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final StripedCounter rows = new StripedCounter();
+		private final StripedCounter errors = new StripedCounter();
+	}
+
+
+	public void setProperties(Properties properties) {
+		maxTrackedStatements = Integer.valueOf(properties.getProperty("max_tracked_statements", "" + maxTrackedStatements));
+	}
+
+
+	/**
+	 * Records the execution of a statement.
+	 *
+	 * @param statement  statement as executed
+	 * @param startNanos System.nanoTime() before execution
+	 * @param rows       number of rows returned or affected
+	 * @param failed     true if execution failed
+	 */
+	public void record(String statement, long startNanos, long rows, boolean failed) {
+		long durationNanos = System.nanoTime() - startNanos;
+		Counters entry = getCounters(statement);
+		entry.latency.record(durationNanos);
+		if (rows > 0) {
+			entry.rows.add(rows);
+		}
+		if (failed) {
+			entry.errors.increment();
+		}
+	}
+
+
+	private Counters getCounters(String statement) {
+		Counters entry = entriesBySql.get(statement);
+		if (entry != null) {
+			return entry;
+		}
+		String normalizedStatement = normalize(statement);
+		entry = entries.get(normalizedStatement);
+		if (entry == null) {
+			if (entries.size() >= maxTrackedStatements) {
+				return otherStatements;
+			}
+			Counters newEntry = new Counters();
+			entry = entries.putIfAbsent(normalizedStatement, newEntry);
+			if (entry == null) {
+				entry = newEntry;
+			}
+		}
+		//statements with inlined literals may vary endlessly
+		if (entriesBySql.size() < maxTrackedStatements * 4) {
+			entriesBySql.put(statement, entry);
+		}
+		return entry;
+	}
+
+
+	/**
+	 * @param statement
+	 * @return statement with literals replaced by question marks, lists of
+	 *         question marks collapsed and whitespace reduced to single spaces
+	 */
+	public static String normalize(String statement) {
+		StringBuffer result = new StringBuffer(statement.length());
+		int length = statement.length();
+		for (int i = 0; i < length; i++) {
+			char c = statement.charAt(i);
+			if (c == '\'') {
+				//skip string literal, including escaped quotes
+				for (i++; i < length; i++) {
+					if (statement.charAt(i) == '\'') {
+						if (i + 1 < length && statement.charAt(i + 1) == '\'') {
+							i++;
+						} else {
+							break;
+						}
+					}
+				}
+				appendParameter(result);
+			} else if (Character.isDigit(c) && !isPartOfIdentifier(result)) {
+				while (i + 1 < length && (Character.isDigit(statement.charAt(i + 1)) || statement.charAt(i + 1) == '.')) {
+					i++;
+				}
+				appendParameter(result);
+			} else if (c == '?') {
+				appendParameter(result);
+			} else if (Character.isWhitespace(c)) {
+				if (result.length() > 0 && result.charAt(result.length() - 1) != ' ') {
+					result.append(' ');
+				}
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString().trim();
+	}
+
+
+	private static boolean isPartOfIdentifier(StringBuffer result) {
+		if (result.length() == 0) {
+			return false;
+		}
+		char previous = result.charAt(result.length() - 1);
+		return Character.isLetterOrDigit(previous) || previous == '_';
+	}
+
+
+	//collapses IN lists such as (?, ?, ?) to (?)
+	private static void appendParameter(StringBuffer result) {
+		int end = result.length();
+		while (end > 0 && result.charAt(end - 1) == ' ') {
+			end--;
+		}
+		if (end > 0 && result.charAt(end - 1) == ',') {
+			end--;
+			while (end > 0 && result.charAt(end - 1) == ' ') {
+				end--;
+			}
+			if (end > 0 && result.charAt(end - 1) == '?') {
+				result.setLength(end);
+				return;
+			}
+		}
+		result.append('?');
+	}
+
+
+	/**
+	 * @return statistics of all statements, the ones taking the most time in total first
+	 */
+	public List<StatementStatistics> getStatistics() {
+		List<StatementStatistics> result = new ArrayList<StatementStatistics>();
+		for (Map.Entry<String, Counters> entry : entries.entrySet()) {
+			result.add(createStatistics(entry.getKey(), entry.getValue()));
+		}
+		if (otherStatements.latency.getCount() > 0) {
+			result.add(createStatistics(OTHER_STATEMENTS, otherStatements));
+		}
+		Collections.sort(result, new Comparator<StatementStatistics>() {
+			public int compare(StatementStatistics s1, StatementStatistics s2) {
+				long t1 = s1.getTotalTime();
+				long t2 = s2.getTotalTime();
+				return t1 < t2 ? 1 : (t1 == t2 ? 0 : -1);
+			}
+		});
+		return result;
+	}
+
+
+	private static StatementStatistics createStatistics(String statement, Counters entry) {
+		return new StatementStatistics(statement, entry.rows.get(), entry.errors.get(), entry.latency.getSnapshot());
+	}
+
+
+	/**
+	 * @param maxNrofStatements
+	 * @return readable overview of the statements taking the most time in total
+	 */
+	public String getReport(int maxNrofStatements) {
+		List<StatementStatistics> statistics = getStatistics();
+		StringBuffer result = new StringBuffer("statement statistics (" + statistics.size() + " statements, times in microseconds):\n");
+		for (int i = 0; i < statistics.size() && i < maxNrofStatements; i++) {
+			StatementStatistics s = statistics.get(i);
+			result.append("total: " + s.getTotalTime() + ", count: " + s.getCount() + ", errors: " + s.getErrors() +
+					", rows: " + s.getRows() + ", p50: " + s.getLatency().getPercentile(50) +
+					", p95: " + s.getLatency().getPercentile(95) + ", p99: " + s.getLatency().getPercentile(99) +
+					", max: " + s.getLatency().getMax() + " - " + s.getStatement() + '\n');
+		}
+		return result.toString();
+	}
+
+
+	/**
+	 * Clears all statistics.
+	 */
+	public void reset() {
+		entriesBySql.clear();
+		entries.clear();
+		otherStatements.latency.reset();
+		otherStatements.rows.reset();
+		otherStatements.errors.reset();
+	}
+}
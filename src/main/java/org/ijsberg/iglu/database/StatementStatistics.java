@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database;
+
+import org.ijsberg.iglu.util.statistics.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the statistics of a normalized SQL statement.
+ */
+public class StatementStatistics {
+
+	private final String statement;
+	private final long rows;
+	private final long errors;
+	private final LatencyHistogram.Snapshot latency;
+
+	public StatementStatistics(String statement, long rows, long errors, LatencyHistogram.Snapshot latency) {
+		this.statement = statement;
+		this.rows = rows;
+		this.errors = errors;
+		this.latency = latency;
+	}
+
+	/**
+	 * @return statement with literals replaced by question marks
+	 */
+	public String getStatement() {
+		return statement;
+	}
+
+	/**
+	 * @return number of executions, including failed ones
+	 */
+	public long getCount() {
+		return latency.getCount();
+	}
+
+	/**
+	 * @return total number of rows returned or affected
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return total execution time in microseconds
+	 */
+	public long getTotalTime() {
+		return latency.getCount() * latency.getMean();
+	}
+
+	/**
+	 * @return durations of executions
+	 */
+	public LatencyHistogram.Snapshot getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return all values by name, in a form suitable for monitoring systems
+	 */
+	public Map<String, Number> toMap() {
+		Map<String, Number> result = new LinkedHashMap<String, Number>();
+		result.put("count", latency.getCount());
+		result.put("rows", rows);
+		result.put("errors", errors);
+		result.put("mean_us", latency.getMean());
+		result.put("p50_us", latency.getPercentile(50));
+		result.put("p95_us", latency.getPercentile(95));
+		result.put("p99_us", latency.getPercentile(99));
+		result.put("max_us", latency.getMax());
+		return result;
+	}
+
+	public String toString() {
+		return statement + ' ' + toMap();
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database.component;
+
+import org.ijsberg.iglu.configuration.Startable;
+import org.ijsberg.iglu.database.ConnectionSettings;
+import org.ijsberg.iglu.database.JdbcProcessor;
+import org.ijsberg.iglu.database.ResultSetCopy;
+import org.ijsberg.iglu.database.StatementInput;
+import org.ijsberg.iglu.exception.ResourceException;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes statements of a JdbcProcessor in the background, so that independent
+ * statements can run in parallel.
+ * <p/>
+ * Statements are executed by a bounded number of threads. By default there are as many
+ * threads as the connection pool of the processor has connections, so that parallel
+ * statements do not compete for connections with each other. If too many statements
+ * are queued, the caller executes the statement itself.
+ * <p/>
+ * Properties:
+ * <ul>
+ * <li>nrof_threads: number of threads (default: maximum number of connections of the pool, or 10)</li>
+ * <li>max_queued_statements: maximum number of statements waiting for a thread (default: 1000)</li>
+ * </ul>
+ */
+public class AsyncJdbcProcessor implements Startable {
+
+	public static final int DEFAULT_NROF_THREADS = 10;
+
+	private final JdbcProcessor processor;
+	private int nrofThreads = DEFAULT_NROF_THREADS;
+	private int maxQueuedStatements = 1000;
+
+	private ThreadPoolExecutor executor;
+
+
+	/**
+	 * @param processor   processor that executes the statements
+	 * @param nrofThreads number of statements executed in parallel
+	 */
+	public AsyncJdbcProcessor(JdbcProcessor processor, int nrofThreads) {
+		this.processor = processor;
+		this.nrofThreads = nrofThreads;
+	}
+
+
+	/**
+	 * Creates an asynchronous processor that executes as many statements in parallel
+	 * as the connection pool of the processor has connections.
+	 *
+	 * @param processor processor that executes the statements
+	 */
+	public AsyncJdbcProcessor(StandardJdbcProcessor processor) {
+		this.processor = processor;
+		DataSource dataSource = processor.getDataSource();
+		if (dataSource instanceof StandardConnectionPool) {
+			nrofThreads = ((StandardConnectionPool) dataSource).getMaxNrofConnections();
+		}
+	}
+
+
+	public void setProperties(Properties properties) {
+		nrofThreads = Integer.valueOf(properties.getProperty("nrof_threads", "" + nrofThreads));
+		maxQueuedStatements = Integer.valueOf(properties.getProperty("max_queued_statements", "" + maxQueuedStatements));
+	}
+
+
+	public void start() {
+		executor = new ThreadPoolExecutor(nrofThreads, nrofThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(maxQueuedStatements), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "asynchronous JDBC");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+
+	public boolean isStarted() {
+		return executor != null;
+	}
+
+
+	/**
+	 * Lets statements that have been submitted complete.
+	 */
+	public void stop() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+
+	/**
+	 * @return number of statements executed in parallel
+	 */
+	public int getNrofThreads() {
+		return nrofThreads;
+	}
+
+
+	private <T> Future<T> submit(Callable<T> task) {
+		ThreadPoolExecutor executor = this.executor;
+		if (executor == null) {
+			throw new ResourceException("asynchronous JDBC processor is not started");
+		}
+		return executor.submit(task);
+	}
+
+
+	public Future<Object> executePreparedStatement(String statement) {
+		return executePreparedStatement(statement, new StatementInput(), new ConnectionSettings());
+	}
+
+
+	public Future<Object> executePreparedStatement(String statement, StatementInput input) {
+		return executePreparedStatement(statement, input, new ConnectionSettings());
+	}
+
+
+	/**
+	 * @param statement declaration of the prepared statement
+	 * @param input
+	 * @param settings
+	 * @return future outcome of the statement, this may be null, any kind of object, or a ResultSetCopy
+	 * @see JdbcProcessor#executePreparedStatement(String, StatementInput, ConnectionSettings)
+	 */
+	public Future<Object> executePreparedStatement(final String statement, final StatementInput input, final ConnectionSettings settings) {
+		return submit(new Callable<Object>() {
+			public Object call() throws SQLException {
+				return processor.executePreparedStatement(statement, input, settings);
+			}
+		});
+	}
+
+
+	/**
+	 * Executes a prepared query on a read-only connection if available.
+	 *
+	 * @param query declaration of the prepared statement
+	 * @param input
+	 * @return future result of the query
+	 */
+	public Future<ResultSetCopy> executePreparedQuery(final String query, final StatementInput input) {
+		return submit(new Callable<ResultSetCopy>() {
+			public ResultSetCopy call() throws SQLException {
+				Object result = processor.executePreparedStatement(query, input, new ConnectionSettings().setReadOnly());
+				if (!(result instanceof ResultSetCopy)) {
+					throw new SQLException("statement did not return a result set (" + query + ')');
+				}
+				return (ResultSetCopy) result;
+			}
+		});
+	}
+
+
+	/**
+	 * @param query SQL query statement
+	 * @return future result of the query
+	 */
+	public Future<ResultSetCopy> executeQuery(final String query) {
+		return submit(new Callable<ResultSetCopy>() {
+			public ResultSetCopy call() throws SQLException {
+				return processor.executeQuery(query);
+			}
+		});
+	}
+
+
+	/**
+	 * @param update SQL update statement
+	 * @return future number of affected rows
+	 */
+	public Future<Integer> executeUpdate(final String update) {
+		return submit(new Callable<Integer>() {
+			public Integer call() throws SQLException {
+				return processor.executeUpdate(update);
+			}
+		});
+	}
+
+
+	/**
+	 * Waits for the outcome of a statement.
+	 *
+	 * @param future future returned by this processor
+	 * @return the outcome of the statement
+	 * @throws SQLException if execution failed or waiting was interrupted
+	 */
+	public static <T> T get(Future<T> future) throws SQLException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.cancel(true);
+			throw new SQLException("interrupted while waiting for the outcome of a statement", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new SQLException("execution of statement failed", e.getCause());
+		}
+	}
+
+
+	public String toString() {
+		ThreadPoolExecutor executor = this.executor;
+		return "asynchronous JDBC processor (threads: " + nrofThreads + (executor != null ? ", active: " + executor.getActiveCount() + ", queued: " + executor.getQueue().size() : ", stopped") + ")";
+	}
+}
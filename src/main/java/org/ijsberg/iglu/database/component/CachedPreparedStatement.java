@@ -0,0 +1,581 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.database.component;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.*;
+import java.util.Calendar;
+
+/**
+ * Prepared statement kept by a PreparedStatementCache.
+ * <p/>
+ * Calls are delegated directly to the driver's statement. Closing the statement
+ * clears its parameters, restores settings such as fetch size and query timeout
+ * and returns it to the cache. The statement is handed out again in a new
+ * CachedPreparedStatement, the closed one can not be used anymore.
+ * <p/>
+ * A statement of which the cursor name is set, that is set to close on completion
+ * or that is marked as not poolable is closed instead of returned to the cache.
+ */
+public class CachedPreparedStatement implements PreparedStatement {
+
+	private final PreparedStatement statement;
+	private final PreparedStatementCache cache;
+	private final String key;
+	private volatile boolean closed;
+	//true if the batch may contain statements
+	private boolean batched;
+	//false if the statement has been changed in a way that can not be undone
+	private boolean reusable = true;
+
+	//original values of settings changed by the current user, null if unchanged
+	private Integer originalFetchSize;
+	private Integer originalFetchDirection;
+	private Integer originalMaxRows;
+	private Integer originalMaxFieldSize;
+	private Integer originalQueryTimeout;
+	private boolean escapeProcessingChanged;
+
+	CachedPreparedStatement(PreparedStatement statement, PreparedStatementCache cache, String key) {
+		this.statement = statement;
+		this.cache = cache;
+		this.key = key;
+	}
+
+	String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return a new handle to the statement, so that it can not be used anymore through this one
+	 */
+	CachedPreparedStatement reopen() {
+		return new CachedPreparedStatement(statement, cache, key);
+	}
+
+	private PreparedStatement getOpenStatement() throws SQLException {
+		if (closed) {
+			throw new SQLException("statement is closed");
+		}
+		return statement;
+	}
+
+	/**
+	 * Returns the statement to the cache.
+	 *
+	 * @throws SQLException
+	 */
+	public void close() throws SQLException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			ResultSet resultSet = statement.getResultSet();
+			if (resultSet != null) {
+				resultSet.close();
+			}
+			statement.clearParameters();
+			statement.clearWarnings();
+			if (batched) {
+				statement.clearBatch();
+				batched = false;
+			}
+			restoreSettings();
+		} catch (SQLException e) {
+			//statement is not reusable
+			reusable = false;
+		}
+		if (!reusable) {
+			closePhysically();
+			return;
+		}
+		cache.release(this);
+	}
+
+	private void restoreSettings() throws SQLException {
+		if (originalFetchSize != null) {
+			statement.setFetchSize(originalFetchSize);
+			originalFetchSize = null;
+		}
+		if (originalFetchDirection != null) {
+			statement.setFetchDirection(originalFetchDirection);
+			originalFetchDirection = null;
+		}
+		if (originalMaxRows != null) {
+			statement.setMaxRows(originalMaxRows);
+			originalMaxRows = null;
+		}
+		if (originalMaxFieldSize != null) {
+			statement.setMaxFieldSize(originalMaxFieldSize);
+			originalMaxFieldSize = null;
+		}
+		if (originalQueryTimeout != null) {
+			statement.setQueryTimeout(originalQueryTimeout);
+			originalQueryTimeout = null;
+		}
+		if (escapeProcessingChanged) {
+			//enabled by default
+			statement.setEscapeProcessing(true);
+			escapeProcessingChanged = false;
+		}
+	}
+
+	void closePhysically() {
+		closed = true;
+		try {
+			statement.close();
+		} catch (SQLException ignore) {
+			//the connection may have been closed
+		}
+	}
+
+	public boolean isClosed() throws SQLException {
+		return closed || statement.isClosed();
+	}
+
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		return getOpenStatement().unwrap(iface);
+	}
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || getOpenStatement().isWrapperFor(iface);
+	}
+
+	public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+		return getOpenStatement().execute(sql, autoGeneratedKeys);
+	}
+
+	public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+		return getOpenStatement().execute(sql, columnIndexes);
+	}
+
+	public boolean execute(String sql, String[] columnNames) throws SQLException {
+		return getOpenStatement().execute(sql, columnNames);
+	}
+
+	public boolean execute(String sql) throws SQLException {
+		return getOpenStatement().execute(sql);
+	}
+
+	public void cancel() throws SQLException {
+		getOpenStatement().cancel();
+	}
+
+	public ResultSet executeQuery(String sql) throws SQLException {
+		return getOpenStatement().executeQuery(sql);
+	}
+
+	public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+		return getOpenStatement().executeUpdate(sql, autoGeneratedKeys);
+	}
+
+	public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+		return getOpenStatement().executeUpdate(sql, columnIndexes);
+	}
+
+	public int executeUpdate(String sql) throws SQLException {
+		return getOpenStatement().executeUpdate(sql);
+	}
+
+	public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+		return getOpenStatement().executeUpdate(sql, columnNames);
+	}
+
+	public void addBatch(String sql) throws SQLException {
+		getOpenStatement();
+		batched = true;
+		statement.addBatch(sql);
+	}
+
+	public int getMaxFieldSize() throws SQLException {
+		return getOpenStatement().getMaxFieldSize();
+	}
+
+	public void setMaxFieldSize(int max) throws SQLException {
+		getOpenStatement();
+		if (originalMaxFieldSize == null) {
+			originalMaxFieldSize = statement.getMaxFieldSize();
+		}
+		statement.setMaxFieldSize(max);
+	}
+
+	public int getMaxRows() throws SQLException {
+		return getOpenStatement().getMaxRows();
+	}
+
+	public void setMaxRows(int max) throws SQLException {
+		getOpenStatement();
+		if (originalMaxRows == null) {
+			originalMaxRows = statement.getMaxRows();
+		}
+		statement.setMaxRows(max);
+	}
+
+	public void setEscapeProcessing(boolean enable) throws SQLException {
+		getOpenStatement();
+		escapeProcessingChanged = true;
+		statement.setEscapeProcessing(enable);
+	}
+
+	public int getQueryTimeout() throws SQLException {
+		return getOpenStatement().getQueryTimeout();
+	}
+
+	public void setQueryTimeout(int seconds) throws SQLException {
+		getOpenStatement();
+		if (originalQueryTimeout == null) {
+			originalQueryTimeout = statement.getQueryTimeout();
+		}
+		statement.setQueryTimeout(seconds);
+	}
+
+	public SQLWarning getWarnings() throws SQLException {
+		return getOpenStatement().getWarnings();
+	}
+
+	public void clearWarnings() throws SQLException {
+		getOpenStatement().clearWarnings();
+	}
+
+	public void setCursorName(String name) throws SQLException {
+		getOpenStatement();
+		reusable = false;
+		statement.setCursorName(name);
+	}
+
+	public ResultSet getResultSet() throws SQLException {
+		return getOpenStatement().getResultSet();
+	}
+
+	public int getUpdateCount() throws SQLException {
+		return getOpenStatement().getUpdateCount();
+	}
+
+	public boolean getMoreResults(int current) throws SQLException {
+		return getOpenStatement().getMoreResults(current);
+	}
+
+	public boolean getMoreResults() throws SQLException {
+		return getOpenStatement().getMoreResults();
+	}
+
+	public void setFetchDirection(int direction) throws SQLException {
+		getOpenStatement();
+		if (originalFetchDirection == null) {
+			originalFetchDirection = statement.getFetchDirection();
+		}
+		statement.setFetchDirection(direction);
+	}
+
+	public int getFetchDirection() throws SQLException {
+		return getOpenStatement().getFetchDirection();
+	}
+
+	public void setFetchSize(int rows) throws SQLException {
+		getOpenStatement();
+		if (originalFetchSize == null) {
+			originalFetchSize = statement.getFetchSize();
+		}
+		statement.setFetchSize(rows);
+	}
+
+	public int getFetchSize() throws SQLException {
+		return getOpenStatement().getFetchSize();
+	}
+
+	public int getResultSetConcurrency() throws SQLException {
+		return getOpenStatement().getResultSetConcurrency();
+	}
+
+	public int getResultSetType() throws SQLException {
+		return getOpenStatement().getResultSetType();
+	}
+
+	public void clearBatch() throws SQLException {
+		getOpenStatement().clearBatch();
+		batched = false;
+	}
+
+	public int[] executeBatch() throws SQLException {
+		int[] result = getOpenStatement().executeBatch();
+		batched = false;
+		return result;
+	}
+
+	public Connection getConnection() throws SQLException {
+		return getOpenStatement().getConnection();
+	}
+
+	public ResultSet getGeneratedKeys() throws SQLException {
+		return getOpenStatement().getGeneratedKeys();
+	}
+
+	public int getResultSetHoldability() throws SQLException {
+		return getOpenStatement().getResultSetHoldability();
+	}
+
+	public void setPoolable(boolean poolable) throws SQLException {
+		getOpenStatement();
+		reusable &= poolable;
+		statement.setPoolable(poolable);
+	}
+
+	public boolean isPoolable() throws SQLException {
+		return getOpenStatement().isPoolable();
+	}
+
+	public void closeOnCompletion() throws SQLException {
+		getOpenStatement();
+		reusable = false;
+		statement.closeOnCompletion();
+	}
+
+	public boolean isCloseOnCompletion() throws SQLException {
+		return getOpenStatement().isCloseOnCompletion();
+	}
+
+	public boolean execute() throws SQLException {
+		return getOpenStatement().execute();
+	}
+
+	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+		getOpenStatement().setBoolean(parameterIndex, x);
+	}
+
+	public void setByte(int parameterIndex, byte x) throws SQLException {
+		getOpenStatement().setByte(parameterIndex, x);
+	}
+
+	public void setShort(int parameterIndex, short x) throws SQLException {
+		getOpenStatement().setShort(parameterIndex, x);
+	}
+
+	public void setInt(int parameterIndex, int x) throws SQLException {
+		getOpenStatement().setInt(parameterIndex, x);
+	}
+
+	public void setLong(int parameterIndex, long x) throws SQLException {
+		getOpenStatement().setLong(parameterIndex, x);
+	}
+
+	public void setFloat(int parameterIndex, float x) throws SQLException {
+		getOpenStatement().setFloat(parameterIndex, x);
+	}
+
+	public void setDouble(int parameterIndex, double x) throws SQLException {
+		getOpenStatement().setDouble(parameterIndex, x);
+	}
+
+	public void setURL(int parameterIndex, URL x) throws SQLException {
+		getOpenStatement().setURL(parameterIndex, x);
+	}
+
+	public void setArray(int parameterIndex, Array x) throws SQLException {
+		getOpenStatement().setArray(parameterIndex, x);
+	}
+
+	public void setTime(int parameterIndex, Time x, Calendar calendar) throws SQLException {
+		getOpenStatement().setTime(parameterIndex, x, calendar);
+	}
+
+	public void setTime(int parameterIndex, Time x) throws SQLException {
+		getOpenStatement().setTime(parameterIndex, x);
+	}
+
+	public void setDate(int parameterIndex, Date x, Calendar calendar) throws SQLException {
+		getOpenStatement().setDate(parameterIndex, x, calendar);
+	}
+
+	public void setDate(int parameterIndex, Date x) throws SQLException {
+		getOpenStatement().setDate(parameterIndex, x);
+	}
+
+	public ResultSet executeQuery() throws SQLException {
+		return getOpenStatement().executeQuery();
+	}
+
+	public int executeUpdate() throws SQLException {
+		return getOpenStatement().executeUpdate();
+	}
+
+	public void setNull(int parameterIndex, int sqlType) throws SQLException {
+		getOpenStatement().setNull(parameterIndex, sqlType);
+	}
+
+	public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+		getOpenStatement().setNull(parameterIndex, sqlType, typeName);
+	}
+
+	public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+		getOpenStatement().setBigDecimal(parameterIndex, x);
+	}
+
+	public void setString(int parameterIndex, String x) throws SQLException {
+		getOpenStatement().setString(parameterIndex, x);
+	}
+
+	public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+		getOpenStatement().setBytes(parameterIndex, x);
+	}
+
+	public void setTimestamp(int parameterIndex, Timestamp x, Calendar calendar) throws SQLException {
+		getOpenStatement().setTimestamp(parameterIndex, x, calendar);
+	}
+
+	public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+		getOpenStatement().setTimestamp(parameterIndex, x);
+	}
+
+	public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+		getOpenStatement().setAsciiStream(parameterIndex, x);
+	}
+
+	public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+		getOpenStatement().setAsciiStream(parameterIndex, x, length);
+	}
+
+	public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+		getOpenStatement().setAsciiStream(parameterIndex, x, length);
+	}
+
+	public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+		getOpenStatement().setUnicodeStream(parameterIndex, x, length);
+	}
+
+	public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+		getOpenStatement().setBinaryStream(parameterIndex, x);
+	}
+
+	public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+		getOpenStatement().setBinaryStream(parameterIndex, x, length);
+	}
+
+	public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+		getOpenStatement().setBinaryStream(parameterIndex, x, length);
+	}
+
+	public void clearParameters() throws SQLException {
+		getOpenStatement().clearParameters();
+	}
+
+	public void setObject(int parameterIndex, Object x) throws SQLException {
+		getOpenStatement().setObject(parameterIndex, x);
+	}
+
+	public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+		getOpenStatement().setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+	}
+
+	public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+		getOpenStatement().setObject(parameterIndex, x, targetSqlType);
+	}
+
+	public void addBatch() throws SQLException {
+		getOpenStatement();
+		batched = true;
+		statement.addBatch();
+	}
+
+	public void setCharacterStream(int parameterIndex, Reader x, int length) throws SQLException {
+		getOpenStatement().setCharacterStream(parameterIndex, x, length);
+	}
+
+	public void setCharacterStream(int parameterIndex, Reader x) throws SQLException {
+		getOpenStatement().setCharacterStream(parameterIndex, x);
+	}
+
+	public void setCharacterStream(int parameterIndex, Reader x, long length) throws SQLException {
+		getOpenStatement().setCharacterStream(parameterIndex, x, length);
+	}
+
+	public void setRef(int parameterIndex, Ref x) throws SQLException {
+		getOpenStatement().setRef(parameterIndex, x);
+	}
+
+	public void setBlob(int parameterIndex, Blob x) throws SQLException {
+		getOpenStatement().setBlob(parameterIndex, x);
+	}
+
+	public void setBlob(int parameterIndex, InputStream x) throws SQLException {
+		getOpenStatement().setBlob(parameterIndex, x);
+	}
+
+	public void setBlob(int parameterIndex, InputStream x, long length) throws SQLException {
+		getOpenStatement().setBlob(parameterIndex, x, length);
+	}
+
+	public void setClob(int parameterIndex, Clob x) throws SQLException {
+		getOpenStatement().setClob(parameterIndex, x);
+	}
+
+	public void setClob(int parameterIndex, Reader x, long length) throws SQLException {
+		getOpenStatement().setClob(parameterIndex, x, length);
+	}
+
+	public void setClob(int parameterIndex, Reader x) throws SQLException {
+		getOpenStatement().setClob(parameterIndex, x);
+	}
+
+	public ResultSetMetaData getMetaData() throws SQLException {
+		return getOpenStatement().getMetaData();
+	}
+
+	public ParameterMetaData getParameterMetaData() throws SQLException {
+		return getOpenStatement().getParameterMetaData();
+	}
+
+	public void setRowId(int parameterIndex, RowId x) throws SQLException {
+		getOpenStatement().setRowId(parameterIndex, x);
+	}
+
+	public void setNString(int parameterIndex, String x) throws SQLException {
+		getOpenStatement().setNString(parameterIndex, x);
+	}
+
+	public void setNCharacterStream(int parameterIndex, Reader x) throws SQLException {
+		getOpenStatement().setNCharacterStream(parameterIndex, x);
+	}
+
+	public void setNCharacterStream(int parameterIndex, Reader x, long length) throws SQLException {
+		getOpenStatement().setNCharacterStream(parameterIndex, x, length);
+	}
+
+	public void setNClob(int parameterIndex, Reader x, long length) throws SQLException {
+		getOpenStatement().setNClob(parameterIndex, x, length);
+	}
+
+	public void setNClob(int parameterIndex, Reader x) throws SQLException {
+		getOpenStatement().setNClob(parameterIndex, x);
+	}
+
+	public void setNClob(int parameterIndex, NClob x) throws SQLException {
+		getOpenStatement().setNClob(parameterIndex, x);
+	}
+
+	public void setSQLXML(int parameterIndex, SQLXML x) throws SQLException {
+		getOpenStatement().setSQLXML(parameterIndex, x);
+	}
+}
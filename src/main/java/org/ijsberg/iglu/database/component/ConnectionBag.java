@@ -0,0 +1,290 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.database.component;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free collection of pooled entries, such as database connections.
+ * <p/>
+ * Every entry carries its own state, which is changed by compare-and-set.
+ * Borrowing an entry therefore does not require a lock on the collection.
+ * A thread first tries the entries it has released recently, which are
+ * likely to be available and still in its processor's cache, and only then
+ * scans the entries that are shared by all threads.
+ * <p/>
+ * Threads that wait for an entry are queued in order of arrival. An entry that
+ * is released or added while threads are waiting is offered to the thread that
+ * has been waiting longest. This handoff is best-effort: threads that do not
+ * have to wait are not held back, so such a thread may take the entry first.
+ * In that case the waiting thread keeps waiting, and the thread that released
+ * the entry returns as soon as it sees the entry is taken.
+ */
+public class ConnectionBag<T extends ConnectionBag.Entry> {
+
+	public static final int STATE_NOT_IN_USE = 0;
+	public static final int STATE_IN_USE = 1;
+	public static final int STATE_RESERVED = -1;
+	public static final int STATE_REMOVED = -2;
+
+	private static final int MAX_NROF_THREAD_LOCAL_ENTRIES = 16;
+
+	private final CopyOnWriteArrayList<T> sharedList = new CopyOnWriteArrayList<T>();
+	//fair: waiting threads are served first come, first served
+	private final SynchronousQueue<T> handoffQueue = new SynchronousQueue<T>(true);
+	private final AtomicInteger nrofWaiters = new AtomicInteger();
+	private final ThreadLocal<List<WeakReference<T>>> threadList = new ThreadLocal<List<WeakReference<T>>>() {
+		protected List<WeakReference<T>> initialValue() {
+			return new ArrayList<WeakReference<T>>(MAX_NROF_THREAD_LOCAL_ENTRIES);
+		}
+	};
+
+	/**
+	 * Base class for objects kept in a bag.
+	 */
+	public static class Entry {
+		private static final AtomicIntegerFieldUpdater<Entry> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "state");
+
+		private volatile int state;
+
+		public int getState() {
+			return state;
+		}
+
+		boolean compareAndSetState(int expectedState, int newState) {
+			return STATE_UPDATER.compareAndSet(this, expectedState, newState);
+		}
+
+		void setState(int newState) {
+			state = newState;
+		}
+	}
+
+	/**
+	 * Takes an entry that is not in use.
+	 *
+	 * @return an entry that is now in use or null if all entries are in use
+	 */
+	public T borrow() {
+		List<WeakReference<T>> recentlyReleased = threadList.get();
+		for (int i = recentlyReleased.size() - 1; i >= 0; i--) {
+			T entry = recentlyReleased.remove(i).get();
+			if (entry != null && entry.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE)) {
+				return entry;
+			}
+		}
+		for (T entry : sharedList) {
+			if (entry.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Takes an entry that is not in use, waiting for one to be released or added if necessary.
+	 *
+	 * @param timeout
+	 * @param timeUnit
+	 * @return an entry that is now in use or null if none became available within the timeout
+	 * @throws InterruptedException
+	 */
+	public T borrow(long timeout, TimeUnit timeUnit) throws InterruptedException {
+		long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+		nrofWaiters.incrementAndGet();
+		try {
+			T entry = borrow();
+			long timeLeft = deadline - System.nanoTime();
+			while (entry == null && timeLeft > 0) {
+				entry = handoffQueue.poll(timeLeft, TimeUnit.NANOSECONDS);
+				if (entry != null && !entry.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE)) {
+					//taken by a thread that did not have to wait
+					entry = null;
+				}
+				timeLeft = deadline - System.nanoTime();
+			}
+			return entry;
+		} finally {
+			nrofWaiters.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return number of threads waiting for an entry
+	 */
+	public int getNrofWaiters() {
+		return nrofWaiters.get();
+	}
+
+	/**
+	 * Returns a borrowed entry. It's offered to waiting threads if there are any.
+	 * Otherwise it becomes available to other threads, but will be offered first
+	 * to the current thread.
+	 *
+	 * @param entry
+	 * @return false if the entry was not in use
+	 */
+	public boolean requite(T entry) {
+		if (!entry.compareAndSetState(STATE_IN_USE, STATE_NOT_IN_USE)) {
+			return false;
+		}
+		if (handOff(entry)) {
+			return true;
+		}
+		List<WeakReference<T>> recentlyReleased = threadList.get();
+		if (recentlyReleased.size() >= MAX_NROF_THREAD_LOCAL_ENTRIES) {
+			recentlyReleased.remove(0);
+		}
+		recentlyReleased.add(new WeakReference<T>(entry));
+		return true;
+	}
+
+	/**
+	 * Adds an entry in its current state.
+	 * A new entry that is in use can be handed out directly.
+	 *
+	 * @param entry
+	 */
+	public void add(T entry) {
+		sharedList.add(entry);
+		if (entry.getState() == STATE_NOT_IN_USE) {
+			handOff(entry);
+		}
+	}
+
+	/**
+	 * Offers an entry that is not in use to waiting threads, as long as there are
+	 * waiting threads and the entry is not taken otherwise.
+	 *
+	 * @return true if the entry was handed off or taken by another thread
+	 */
+	private boolean handOff(T entry) {
+		for (int i = 0; nrofWaiters.get() > 0; i++) {
+			if (entry.getState() != STATE_NOT_IN_USE || handoffQueue.offer(entry)) {
+				return true;
+			}
+			//a waiting thread is about to poll, or is busy with an entry that was taken by another thread
+			if ((i & 0xff) == 0xff) {
+				LockSupport.parkNanos(10000);
+			} else {
+				Thread.yield();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reserves an entry that is not in use, for instance to test or close it.
+	 *
+	 * @param entry
+	 * @return true if the entry was reserved
+	 */
+	public boolean reserve(T entry) {
+		return entry.compareAndSetState(STATE_NOT_IN_USE, STATE_RESERVED);
+	}
+
+	/**
+	 * Makes a reserved entry available again, offering it to waiting threads if there are any.
+	 *
+	 * @param entry
+	 */
+	public void unreserve(T entry) {
+		if (entry.compareAndSetState(STATE_RESERVED, STATE_NOT_IN_USE)) {
+			handOff(entry);
+		}
+	}
+
+	/**
+	 * Removes an entry that is in use or reserved.
+	 *
+	 * @param entry
+	 * @return false if the entry was not in use or reserved, or has been removed already
+	 */
+	public boolean remove(T entry) {
+		if (!entry.compareAndSetState(STATE_IN_USE, STATE_REMOVED) && !entry.compareAndSetState(STATE_RESERVED, STATE_REMOVED)) {
+			return false;
+		}
+		sharedList.remove(entry);
+		return true;
+	}
+
+	/**
+	 * @return all entries
+	 */
+	public List<T> values() {
+		return new ArrayList<T>(sharedList);
+	}
+
+	/**
+	 * @param state
+	 * @return entries that are in the given state
+	 */
+	public List<T> values(int state) {
+		ArrayList<T> retval = new ArrayList<T>();
+		for (T entry : sharedList) {
+			if (entry.getState() == state) {
+				retval.add(entry);
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * @param state
+	 * @return number of entries in the given state
+	 */
+	public int getCount(int state) {
+		int count = 0;
+		for (T entry : sharedList) {
+			if (entry.getState() == state) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return number of entries
+	 */
+	public int size() {
+		return sharedList.size();
+	}
+
+	/**
+	 * Marks all entries as removed and forgets them.
+	 *
+	 * @return the entries that were present
+	 */
+	public List<T> clear() {
+		List<T> retval = values();
+		for (T entry : retval) {
+			entry.setState(STATE_REMOVED);
+		}
+		sharedList.removeAll(retval);
+		return retval;
+	}
+}
@@ -27,6 +27,8 @@ import org.ijsberg.iglu.util.reflection.ReflectionSupport;
 import javax.sql.DataSource;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
 
@@ -44,69 +46,251 @@ public class MySqlJdbcProcessor extends StandardJdbcProcessor {
 		super(dataSource, dataSourceReadOnly);
 	}
 
-	public Object insertDataObjectWithKeyGeneration(DataObject dataObject, String tableName, String columnName, Properties mapping) {
-		String[] statement = new String[2];
-		StringBuffer insertStatement = new StringBuffer("INSERT INTO " + tableName + " (");
-		StringBuffer valuesString = new StringBuffer("VALUES(");
+	/**
+	 * MySQL Connector/J reads the complete result into memory unless
+	 * the fetch size is Integer.MIN_VALUE, in which case rows are read one by one.
+	 *
+	 * @return Integer.MIN_VALUE
+	 */
+	protected int getStreamingFetchSize() {
+		return Integer.MIN_VALUE;
+	}
 
+	/**
+	 * Inserts a data object and copies the key generated by the database into it.
+	 * The key is obtained in the same round trip as the insert.
+	 *
+	 * @param dataObject
+	 * @param tableName
+	 * @param columnName name of the column with generated values
+	 * @param mapping
+	 * @return the generated key
+	 */
+	public Object insertDataObjectWithKeyGeneration(DataObject dataObject, String tableName, String columnName, Properties mapping) {
+		String[] memberNames = getMemberNames(mapping, columnName);
 		Properties inputProperties = dataObject.getMapper().toProperties();
-		Object[] insertInput = new Object[mapping.size() - 1];
-		int count = 0;
-		String primaryKeyMemberName = null;
+
+		Object returnValue;
+		try {
+			returnValue = this.executeInsert(createInsertStatement(tableName, memberNames, mapping), new StatementInput(getValues(inputProperties, memberNames, null)));
+		} catch (SQLException sqle) {
+			throw new ResourceException("cannot create record in table " + tableName + " with properties " + inputProperties, sqle);
+		}
+		if (returnValue == null) {
+			throw new ResourceException("no key generated for record in table " + tableName + " with properties " + inputProperties);
+		}
+
+		inputProperties.put(getPrimaryKeyMemberName(mapping, columnName), returnValue);
+		dataObject.getMapper().copy(inputProperties);
+
+		return returnValue;
+	}
+
+	/**
+	 * Inserts data objects in chunks of batch_chunk_size rows and copies the keys generated by the database into them.
+	 *
+	 * @param config
+	 * @param dataObjects
+	 * @return the generated keys in the iteration order of the collection
+	 * @throws BatchSQLException reporting the failed rows and the number of rows inserted
+	 */
+	public List<Object> insertDataObjectsWithKeyGeneration(TableConfig config, Collection<? extends DataObject> dataObjects) throws BatchSQLException {
+		return insertDataObjectsWithKeyGeneration(config, dataObjects, getBatchChunkSize());
+	}
+
+	/**
+	 * Inserts data objects in chunks, each chunk in its own transaction,
+	 * and copies the keys generated by the database into them.
+	 * Keys of a chunk are retrieved with the chunk; objects in chunks that are
+	 * not committed are left unchanged.
+	 *
+	 * @param config
+	 * @param dataObjects
+	 * @param chunkSize   maximum number of rows per transaction
+	 * @return the generated keys in the iteration order of the collection
+	 * @throws BatchSQLException reporting the failed rows and the number of rows inserted
+	 */
+	public List<Object> insertDataObjectsWithKeyGeneration(TableConfig config, Collection<? extends DataObject> dataObjects, int chunkSize) throws BatchSQLException {
+		Properties mapping = config.getOrMapping();
+		String columnName = mapping.getProperty(config.getPkAttrName());
+		String[] memberNames = getMemberNames(mapping, columnName);
+		List<Properties> inputProperties = new ArrayList<Properties>(dataObjects.size());
+		List<Object[]> input = new ArrayList<Object[]>(dataObjects.size());
+		for (DataObject dataObject : dataObjects) {
+			Properties properties = dataObject.getMapper().toProperties();
+			inputProperties.add(properties);
+			input.add(getValues(properties, memberNames, null));
+		}
+
+		Object[] keys;
+		try {
+			keys = executeBatchInsert(createInsertStatement(config.getTableName(), memberNames, mapping), input, chunkSize);
+		} catch (BatchSQLException e) {
+			copyKeys(dataObjects, inputProperties, config.getPkAttrName(), e.getGeneratedKeys());
+			throw e;
+		}
+		copyKeys(dataObjects, inputProperties, config.getPkAttrName(), keys);
+		return Arrays.asList(keys);
+	}
+
+	private static void copyKeys(Collection<? extends DataObject> dataObjects, List<Properties> inputProperties, String primaryKeyMemberName, Object[] keys) {
+		int i = 0;
+		for (DataObject dataObject : dataObjects) {
+			if (i >= keys.length) {
+				return;
+			}
+			if (keys[i] != null) {
+				Properties properties = inputProperties.get(i);
+				properties.put(primaryKeyMemberName, keys[i]);
+				dataObject.getMapper().copy(properties);
+			}
+			i++;
+		}
+	}
+
+	private static String getPrimaryKeyMemberName(Properties mapping, String columnName) {
 		for (String memberName : mapping.stringPropertyNames()) {
-			if (!columnName.equals(mapping.getProperty(memberName))) {
-				insertStatement.append(mapping.getProperty(memberName)).append(", ");
-				insertInput[count] = inputProperties.get(memberName);
-				count++;
-				valuesString.append("?,");
-			} else {
-				primaryKeyMemberName = memberName;
+			if (columnName.equals(mapping.getProperty(memberName))) {
+				return memberName;
 			}
 		}
-		//delete superfluous ','
-		insertStatement.deleteCharAt(insertStatement.length() - 2);
-		insertStatement.append(")");
+		throw new ConfigurationException("column " + columnName + " is not mapped in " + mapping);
+	}
 
-		valuesString.deleteCharAt(valuesString.length() - 1);
-		valuesString.append(")");
+	public void insertDataObject(DataObject dataObject, String tableName, Properties mapping) {
+		String[] memberNames = getMemberNames(mapping);
+		Properties inputProperties = dataObject.getMapper().toProperties();
+		Object[] input = getValues(inputProperties, memberNames, null);
 
-		statement[0] = insertStatement.toString() + valuesString.toString();
-		statement[1] = "SELECT MAX(" + columnName + ") FROM " + tableName;
+		try {
+			this.executePreparedStatement(createInsertStatement(tableName, memberNames, mapping), new StatementInput(input));
+		} catch (SQLException sqle) {
+			throw new ResourceException("cannot create record in table " + tableName + " with properties " + inputProperties, sqle);
+		}
+	}
 
-		ArrayList input = new ArrayList();
-		input.add(insertInput);
-		input.add(new Object[0]);
+	public void updateDataObject(DataObject dataObject, String tableName, String columnName, String attrName, Properties mapping) {
+		String[] memberNames = getMemberNames(mapping);
+		Properties inputProperties = dataObject.getMapper().toProperties();
+		Object[] input = getValues(inputProperties, memberNames, attrName);
+
+		//System.out.println("==>" + columnName + "in: " + inputProperties);
 
-		Object[] result;
 		try {
-			result = this.executeMultiplePreparedStatements(statement, input);
+			this.executePreparedStatement(createUpdateStatement(tableName, columnName, memberNames, mapping), new StatementInput(input));
 		} catch (SQLException sqle) {
-			throw new ResourceException("cannot create record in table " + tableName + " with properties " + inputProperties, sqle);
+			throw new ResourceException("cannot update table " + tableName + " with properties " + inputProperties, sqle);
 		}
-		ResultSetCopy rs = (ResultSetCopy) result[1];
-		rs.next();
-		Object returnValue = rs.getObject(1);
 
-		inputProperties.put(primaryKeyMemberName, returnValue);
-		dataObject.getMapper().copy(inputProperties);
+	}
 
-		return returnValue;
+	/**
+	 * Inserts data objects in chunks of batch_chunk_size rows, each chunk in its own transaction.
+	 *
+	 * @param config
+	 * @param dataObjects
+	 * @throws BatchSQLException reporting the failed rows and the number of rows inserted
+	 */
+	public void insertDataObjects(TableConfig config, Collection<? extends DataObject> dataObjects) throws BatchSQLException {
+		insertDataObjects(config, dataObjects, getBatchChunkSize());
 	}
 
-	public void insertDataObject(DataObject dataObject, String tableName, Properties mapping) {
-		StringBuffer statement = new StringBuffer("INSERT INTO " + tableName + " (");
+	/**
+	 * Inserts data objects in chunks, each chunk in its own transaction.
+	 * Row indexes reported by a BatchSQLException follow the iteration order of the collection.
+	 * <p/>
+	 * Rows are sent as a JDBC batch per chunk. Connector/J sends such a batch
+	 * as a multi-row INSERT if the connection URL contains rewriteBatchedStatements=true.
+	 *
+	 * @param config
+	 * @param dataObjects
+	 * @param chunkSize   maximum number of rows per transaction
+	 * @throws BatchSQLException reporting the failed rows and the number of rows inserted
+	 */
+	public void insertDataObjects(TableConfig config, Collection<? extends DataObject> dataObjects, int chunkSize) throws BatchSQLException {
+		Properties mapping = config.getOrMapping();
+		String[] memberNames = getMemberNames(mapping);
+		List<Object[]> input = new ArrayList<Object[]>(dataObjects.size());
+		for (DataObject dataObject : dataObjects) {
+			input.add(getValues(dataObject.getMapper().toProperties(), memberNames, null));
+		}
+		executeBatchPreparedStatement(createInsertStatement(config.getTableName(), memberNames, mapping), input, chunkSize);
+	}
 
-		StringBuffer valuesString = new StringBuffer("VALUES(");
+	/**
+	 * Updates data objects in chunks of batch_chunk_size rows, each chunk in its own transaction.
+	 *
+	 * @param config
+	 * @param dataObjects
+	 * @throws BatchSQLException reporting the failed rows and the number of rows updated
+	 */
+	public void updateDataObjects(TableConfig config, Collection<? extends DataObject> dataObjects) throws BatchSQLException {
+		updateDataObjects(config, dataObjects, getBatchChunkSize());
+	}
 
-		Properties inputProperties = dataObject.getMapper().toProperties();
-		Object[] input = new Object[mapping.size()];
-		int count = 0;
+	/**
+	 * Updates data objects in chunks, each chunk in its own transaction.
+	 * Row indexes reported by a BatchSQLException follow the iteration order of the collection.
+	 *
+	 * @param config
+	 * @param dataObjects
+	 * @param chunkSize   maximum number of rows per transaction
+	 * @throws BatchSQLException reporting the failed rows and the number of rows updated
+	 */
+	public void updateDataObjects(TableConfig config, Collection<? extends DataObject> dataObjects, int chunkSize) throws BatchSQLException {
+		Properties mapping = config.getOrMapping();
+		String[] memberNames = getMemberNames(mapping);
+		List<Object[]> input = new ArrayList<Object[]>(dataObjects.size());
+		for (DataObject dataObject : dataObjects) {
+			input.add(getValues(dataObject.getMapper().toProperties(), memberNames, config.getPkAttrName()));
+		}
+		String statement = createUpdateStatement(config.getTableName(), mapping.getProperty(config.getPkAttrName()), memberNames, mapping);
+		executeBatchPreparedStatement(statement, input, chunkSize);
+	}
+
+	private static String[] getMemberNames(Properties mapping) {
+		return mapping.stringPropertyNames().toArray(new String[0]);
+	}
+
+	/**
+	 * @param mapping
+	 * @param excludedColumnName
+	 * @return names of members that are not mapped to the excluded column
+	 */
+	private static String[] getMemberNames(Properties mapping, String excludedColumnName) {
+		List<String> memberNames = new ArrayList<String>();
 		for (String memberName : mapping.stringPropertyNames()) {
+			if (!excludedColumnName.equals(mapping.getProperty(memberName))) {
+				memberNames.add(memberName);
+			}
+		}
+		return memberNames.toArray(new String[memberNames.size()]);
+	}
+
+	/**
+	 * @param inputProperties
+	 * @param memberNames
+	 * @param keyAttrName     name of an attribute to append as last value, may be null
+	 * @return values in the order of the member names
+	 */
+	private static Object[] getValues(Properties inputProperties, String[] memberNames, String keyAttrName) {
+		Object[] input = new Object[memberNames.length + (keyAttrName != null ? 1 : 0)];
+		for (int i = 0; i < memberNames.length; i++) {
+			input[i] = inputProperties.get(memberNames[i]);
+		}
+		if (keyAttrName != null) {
+			input[memberNames.length] = inputProperties.get(keyAttrName);
+		}
+		return input;
+	}
+
+	private static String createInsertStatement(String tableName, String[] memberNames, Properties mapping) {
+		StringBuffer statement = new StringBuffer("INSERT INTO " + tableName + " (");
+		StringBuffer valuesString = new StringBuffer("VALUES(");
 
+		for (String memberName : memberNames) {
 			statement.append(mapping.getProperty(memberName)).append(", ");
-			input[count] = inputProperties.get(memberName);
 			valuesString.append("?,");
-			count++;
 		}
 		//delete superfluous ','
 		statement.deleteCharAt(statement.length() - 2);
@@ -115,39 +299,20 @@ public class MySqlJdbcProcessor extends StandardJdbcProcessor {
 		valuesString.deleteCharAt(valuesString.length() - 1);
 		valuesString.append(")");
 
-		try {
-			this.executePreparedStatement(statement.toString() + valuesString.toString(), new StatementInput(input));
-		} catch (SQLException sqle) {
-			throw new ResourceException("cannot create record in table " + tableName + " with properties " + inputProperties, sqle);
-		}
+		return statement.toString() + valuesString.toString();
 	}
 
-	public void updateDataObject(DataObject dataObject, String tableName, String columnName, String attrName, Properties mapping) {
+	private static String createUpdateStatement(String tableName, String columnName, String[] memberNames, Properties mapping) {
 		StringBuffer statement = new StringBuffer("UPDATE " + tableName + " SET ");
 
-		Properties inputProperties = dataObject.getMapper().toProperties();
-		Object[] input = new Object[mapping.size() + 1];
-		int count = 0;
-		for (String memberName : mapping.stringPropertyNames()) {
-
+		for (String memberName : memberNames) {
 			statement.append(mapping.getProperty(memberName)).append("=?, ");
-			input[count] = inputProperties.get(memberName);
-			count++;
 		}
 		//delete superfluous ','
 		statement.deleteCharAt(statement.length() - 2);
 		statement.append(" WHERE " + columnName + "=?");
 
-		//System.out.println("==>" + columnName + "in: " + inputProperties);
-
-		input[count] = inputProperties.get(attrName);
-
-		try {
-			this.executePreparedStatement(statement.toString(), new StatementInput(input));
-		} catch (SQLException sqle) {
-			throw new ResourceException("cannot update table " + tableName + " with properties " + inputProperties, sqle);
-		}
-
+		return statement.toString();
 	}
 
 	public Object insertDataObjectWithKeyGeneration(TableConfig config, DataObject dataObject) {
@@ -176,15 +341,10 @@ public class MySqlJdbcProcessor extends StandardJdbcProcessor {
 
 	public <T extends DataObject> List<T> getDataObjects(Class<T> type, Properties mapping, String tableName, String columnName, Object key) {
 
-		List retval = new ArrayList();
 		String sqlStatement = "SELECT * FROM " + tableName + " WHERE " + columnName + "=?";
 		try {
 			ResultSetCopy rs = (ResultSetCopy) executePreparedStatement(sqlStatement, new StatementInput(new Object[]{key}), new ConnectionSettings().setReadOnly());
-			while(rs.next()) {
-				T dataObject = createDataObject(type, mapping, rs);
-				retval.add(dataObject);
-			}
-			return retval;
+			return createDataObjects(type, mapping, rs);
 		} catch (SQLException sqle) {
 			throw new ResourceException("database call mislukt", sqle);
 		}
@@ -200,15 +360,10 @@ public class MySqlJdbcProcessor extends StandardJdbcProcessor {
 
 	public <T extends DataObject> List<T> getAllDataObjects(Class<T> type, Properties mapping, String tableName, String sortColumn) {
 
-		List retval = new ArrayList();
 		String sqlStatement = "SELECT * FROM " + tableName + (sortColumn != null ? " ORDER BY " + sortColumn : "");
 		try {
 			ResultSetCopy rs = (ResultSetCopy) executePreparedStatement(sqlStatement, new ConnectionSettings().setReadOnly());
-			while(rs.next()) {
-				T dataObject = createDataObject(type, mapping, rs);
-				retval.add(dataObject);
-			}
-			return retval;
+			return createDataObjects(type, mapping, rs);
 		} catch (SQLException sqle) {
 			throw new ResourceException("database call mislukt", sqle);
 		}
@@ -219,6 +374,19 @@ public class MySqlJdbcProcessor extends StandardJdbcProcessor {
 	}
 
 
+	private <T extends DataObject> List<T> createDataObjects(Class<T> type, Properties mapping, ResultSetCopy rs) {
+		RecordMapping<T> recordMapping = RecordMapping.getInstance(type, mapping);
+		if (recordMapping.isInstantiable()) {
+			return recordMapping.mapAll(rs);
+		}
+		List<T> retval = new ArrayList<T>();
+		while(rs.next()) {
+			retval.add(createDataObject(type, mapping, rs));
+		}
+		return retval;
+	}
+
+
 	private <T extends DataObject> T createDataObject(Class<T> type, Properties mapping, ResultSetCopy rs) {
 		T dataObject = null;
 		try {
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.database.component;
+
+import java.sql.*;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * Connection handed out by StandardConnectionPool.
+ * <p/>
+ * Calls are delegated directly to the driver's connection. Changes of connection
+ * settings are registered, so that they can be undone once the connection is returned.
+ * Prepared statements may be obtained from the statement cache of the connection.
+ * Closing a pooled connection returns the underlying connection to the pool,
+ * evicting it replaces the underlying connection by a fresh one.
+ * After that, the pooled connection can not be used anymore.
+ */
+public class PooledConnection implements Connection {
+
+	private final StandardConnectionPool.ConnectionWrapper connWrap;
+	private final Connection conn;
+	private volatile boolean closed;
+
+	/**
+	 * @param connWrap pool entry of the connection
+	 */
+	public PooledConnection(StandardConnectionPool.ConnectionWrapper connWrap) {
+		this.connWrap = connWrap;
+		this.conn = connWrap.getConnection();
+	}
+
+	private Connection getOpenConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("connection has been returned to the pool");
+		}
+		return conn;
+	}
+
+	/**
+	 * Returns the connection to the pool.
+	 *
+	 * @throws SQLException
+	 */
+	public void close() throws SQLException {
+		if (!closed) {
+			closed = true;
+			connWrap.close();
+		}
+	}
+
+	/**
+	 * Removes a failed connection from the pool instead of returning it.
+	 * The pool creates a fresh connection in its place.
+	 */
+	public void evict() {
+		if (!closed) {
+			closed = true;
+			connWrap.evict();
+		}
+	}
+
+	/**
+	 * Registers in the statistics of the pool that a statement that failed on this connection is retried.
+	 */
+	public void registerRetry() {
+		connWrap.registerRetry();
+	}
+
+	public boolean isClosed() throws SQLException {
+		return closed || conn.isClosed();
+	}
+
+	public Statement createStatement() throws SQLException {
+		return getOpenConnection().createStatement();
+	}
+
+	public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+		return getOpenConnection().createStatement(resultSetType, resultSetConcurrency);
+	}
+
+	public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		return getOpenConnection().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+	}
+
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		getOpenConnection();
+		return connWrap.prepareStatement(sql);
+	}
+
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		getOpenConnection();
+		connWrap.setLastStatement(sql);
+		return conn.prepareStatement(sql, resultSetType, resultSetConcurrency);
+	}
+
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		getOpenConnection();
+		connWrap.setLastStatement(sql);
+		return conn.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+	}
+
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+		getOpenConnection();
+		return connWrap.prepareStatement(sql, autoGeneratedKeys);
+	}
+
+	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+		getOpenConnection();
+		connWrap.setLastStatement(sql);
+		return conn.prepareStatement(sql, columnIndexes);
+	}
+
+	public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+		getOpenConnection();
+		connWrap.setLastStatement(sql);
+		return conn.prepareStatement(sql, columnNames);
+	}
+
+	public CallableStatement prepareCall(String sql) throws SQLException {
+		getOpenConnection();
+		connWrap.setLastStatement(sql);
+		return conn.prepareCall(sql);
+	}
+
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		getOpenConnection();
+		connWrap.setLastStatement(sql);
+		return conn.prepareCall(sql, resultSetType, resultSetConcurrency);
+	}
+
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		getOpenConnection();
+		connWrap.setLastStatement(sql);
+		return conn.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+	}
+
+	public String nativeSQL(String sql) throws SQLException {
+		return getOpenConnection().nativeSQL(sql);
+	}
+
+	public void setAutoCommit(boolean autoCommit) throws SQLException {
+		getOpenConnection();
+		connWrap.trackAutoCommit(autoCommit);
+		conn.setAutoCommit(autoCommit);
+	}
+
+	public boolean getAutoCommit() throws SQLException {
+		return getOpenConnection().getAutoCommit();
+	}
+
+	public void commit() throws SQLException {
+		getOpenConnection().commit();
+	}
+
+	public void rollback() throws SQLException {
+		getOpenConnection().rollback();
+	}
+
+	public void rollback(Savepoint savepoint) throws SQLException {
+		getOpenConnection().rollback(savepoint);
+	}
+
+	public DatabaseMetaData getMetaData() throws SQLException {
+		return getOpenConnection().getMetaData();
+	}
+
+	public void setReadOnly(boolean readOnly) throws SQLException {
+		getOpenConnection();
+		connWrap.trackReadOnly(readOnly);
+		conn.setReadOnly(readOnly);
+	}
+
+	public boolean isReadOnly() throws SQLException {
+		return getOpenConnection().isReadOnly();
+	}
+
+	public void setCatalog(String catalog) throws SQLException {
+		getOpenConnection();
+		connWrap.trackCatalog(catalog);
+		conn.setCatalog(catalog);
+	}
+
+	public String getCatalog() throws SQLException {
+		return getOpenConnection().getCatalog();
+	}
+
+	public void setTransactionIsolation(int level) throws SQLException {
+		getOpenConnection();
+		connWrap.trackTransactionIsolation(level);
+		conn.setTransactionIsolation(level);
+	}
+
+	public int getTransactionIsolation() throws SQLException {
+		return getOpenConnection().getTransactionIsolation();
+	}
+
+	public SQLWarning getWarnings() throws SQLException {
+		return getOpenConnection().getWarnings();
+	}
+
+	public void clearWarnings() throws SQLException {
+		getOpenConnection().clearWarnings();
+	}
+
+	public Map<String, Class<?>> getTypeMap() throws SQLException {
+		return getOpenConnection().getTypeMap();
+	}
+
+	public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+		getOpenConnection();
+		connWrap.trackTypeMap(map);
+		conn.setTypeMap(map);
+	}
+
+	public void setHoldability(int holdability) throws SQLException {
+		getOpenConnection();
+		connWrap.trackHoldability(holdability);
+		conn.setHoldability(holdability);
+	}
+
+	public int getHoldability() throws SQLException {
+		return getOpenConnection().getHoldability();
+	}
+
+	public Savepoint setSavepoint() throws SQLException {
+		return getOpenConnection().setSavepoint();
+	}
+
+	public Savepoint setSavepoint(String name) throws SQLException {
+		return getOpenConnection().setSavepoint(name);
+	}
+
+	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+		getOpenConnection().releaseSavepoint(savepoint);
+	}
+
+	public Clob createClob() throws SQLException {
+		return getOpenConnection().createClob();
+	}
+
+	public Blob createBlob() throws SQLException {
+		return getOpenConnection().createBlob();
+	}
+
+	public NClob createNClob() throws SQLException {
+		return getOpenConnection().createNClob();
+	}
+
+	public SQLXML createSQLXML() throws SQLException {
+		return getOpenConnection().createSQLXML();
+	}
+
+	public boolean isValid(int timeout) throws SQLException {
+		return !closed && conn.isValid(timeout);
+	}
+
+	public void setClientInfo(String name, String value) throws SQLClientInfoException {
+		if (closed) {
+			throw new SQLClientInfoException();
+		}
+		conn.setClientInfo(name, value);
+	}
+
+	public void setClientInfo(Properties properties) throws SQLClientInfoException {
+		if (closed) {
+			throw new SQLClientInfoException();
+		}
+		conn.setClientInfo(properties);
+	}
+
+	public String getClientInfo(String name) throws SQLException {
+		return getOpenConnection().getClientInfo(name);
+	}
+
+	public Properties getClientInfo() throws SQLException {
+		return getOpenConnection().getClientInfo();
+	}
+
+	public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+		return getOpenConnection().createArrayOf(typeName, elements);
+	}
+
+	public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+		return getOpenConnection().createStruct(typeName, attributes);
+	}
+
+	public void setSchema(String schema) throws SQLException {
+		getOpenConnection().setSchema(schema);
+	}
+
+	public String getSchema() throws SQLException {
+		return getOpenConnection().getSchema();
+	}
+
+	public void abort(Executor executor) throws SQLException {
+		getOpenConnection().abort(executor);
+	}
+
+	public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+		getOpenConnection().setNetworkTimeout(executor, milliseconds);
+	}
+
+	public int getNetworkTimeout() throws SQLException {
+		return getOpenConnection().getNetworkTimeout();
+	}
+
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		return getOpenConnection().unwrap(iface);
+	}
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || getOpenConnection().isWrapperFor(iface);
+	}
+
+	public String toString() {
+		return "pooled " + connWrap;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.database.component;
+
+import org.ijsberg.iglu.util.statistics.StripedCounter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps prepared statements of one connection for reuse.
+ * <p/>
+ * Statements are handed out as CachedPreparedStatement. Closing such a statement
+ * returns it to the cache, which holds at most a fixed number of idle statements.
+ * The least recently used statement is closed if the cache is full.
+ */
+public class PreparedStatementCache {
+
+	private final int maxSize;
+	private final StripedCounter hits;
+	private final StripedCounter misses;
+
+	private final LinkedHashMap<String, CachedPreparedStatement> idleStatements;
+
+	/**
+	 * @param maxSize maximum number of idle statements
+	 * @param hits    counter of statements obtained from the cache
+	 * @param misses  counter of statements that had to be prepared
+	 */
+	public PreparedStatementCache(final int maxSize, StripedCounter hits, StripedCounter misses) {
+		this.maxSize = maxSize;
+		this.hits = hits;
+		this.misses = misses;
+		idleStatements = new LinkedHashMap<String, CachedPreparedStatement>(maxSize * 2, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, CachedPreparedStatement> eldest) {
+				if (size() > maxSize) {
+					eldest.getValue().closePhysically();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param conn connection the statement is prepared on
+	 * @param sql
+	 * @return a statement that can be closed to return it to the cache
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+		CachedPreparedStatement statement = take(sql);
+		if (statement == null) {
+			statement = new CachedPreparedStatement(conn.prepareStatement(sql), this, sql);
+		}
+		return statement;
+	}
+
+	/**
+	 * @param conn              connection the statement is prepared on
+	 * @param sql
+	 * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+	 * @return a statement that can be closed to return it to the cache
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStatement(Connection conn, String sql, int autoGeneratedKeys) throws SQLException {
+		if (autoGeneratedKeys != Statement.RETURN_GENERATED_KEYS) {
+			return prepareStatement(conn, sql);
+		}
+		//statements that return generated keys are prepared differently
+		String key = "[keys] " + sql;
+		CachedPreparedStatement statement = take(key);
+		if (statement == null) {
+			statement = new CachedPreparedStatement(conn.prepareStatement(sql, autoGeneratedKeys), this, key);
+		}
+		return statement;
+	}
+
+	private synchronized CachedPreparedStatement take(String key) {
+		CachedPreparedStatement statement = idleStatements.remove(key);
+		if (statement == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return statement.reopen();
+	}
+
+	/**
+	 * Keeps a statement that is closed by its user, unless an identical statement is kept already.
+	 *
+	 * @param statement
+	 */
+	synchronized void release(CachedPreparedStatement statement) {
+		if (idleStatements.containsKey(statement.getKey())) {
+			statement.closePhysically();
+		} else {
+			idleStatements.put(statement.getKey(), statement);
+		}
+	}
+
+	/**
+	 * @return number of idle statements
+	 */
+	public synchronized int size() {
+		return idleStatements.size();
+	}
+
+	/**
+	 * Closes all idle statements.
+	 */
+	public void close() {
+		ArrayList<CachedPreparedStatement> statements;
+		synchronized (this) {
+			statements = new ArrayList<CachedPreparedStatement>(idleStatements.values());
+			idleStatements.clear();
+		}
+		for (CachedPreparedStatement statement : statements) {
+			statement.closePhysically();
+		}
+	}
+
+	public String toString() {
+		return "prepared statement cache (max " + maxSize + ")";
+	}
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database.component;
+
+import org.ijsberg.iglu.configuration.ConfigurationException;
+import org.ijsberg.iglu.logging.Level;
+import org.ijsberg.iglu.logging.LogEntry;
+import org.ijsberg.iglu.scheduling.Pageable;
+import org.ijsberg.iglu.util.statistics.StripedCounter;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Data source that distributes requests for read-only connections over a number of replica databases.
+ * <p/>
+ * Every replica is served by its own connection pool. A replica that can not deliver
+ * connections, or fails its connection test, is ejected until a later health check
+ * succeeds. If no replica is healthy, connections are obtained from the primary data source.
+ * <p/>
+ * A ReplicaRoutingDataSource can be passed to StandardJdbcProcessor as read-only data source.
+ * <p/>
+ * Properties:
+ * <ul>
+ * <li>balancing: least_connections (default): the replica with the least connections in use relative to its weight,
+ * or round_robin: replicas in turn, as often as their weight</li>
+ * <li>replica_weights: comma separated weights in the order of the replicas (default: 1 for each replica)</li>
+ * <li>health_check_interval: interval in minutes to test the connections of replicas (default: 1)</li>
+ * </ul>
+ */
+public class ReplicaRoutingDataSource implements DataSource, Pageable {
+
+	public static final String LEAST_CONNECTIONS = "least_connections";
+	public static final String ROUND_ROBIN = "round_robin";
+
+	private final DataSource primary;
+	private final Replica[] replicas;
+
+	private boolean roundRobin;
+	//replica indexes in round robin order
+	private int[] schedule;
+	private final AtomicInteger counter = new AtomicInteger();
+	private int healthCheckInterval = 1;
+
+	private final StripedCounter nrofFallbacks = new StripedCounter();
+	private final StripedCounter nrofEjections = new StripedCounter();
+
+
+	private static class Replica {
+		private final StandardConnectionPool pool;
+		private int weight = 1;
+		private volatile boolean healthy = true;
+		private final StripedCounter nrofConnectionsObtained = new StripedCounter();
+
+		private Replica(StandardConnectionPool pool) {
+			this.pool = pool;
+		}
+	}
+
+
+	/**
+	 * @param primary  data source used if no replica is available
+	 * @param replicas connection pools of the replica databases
+	 */
+	public ReplicaRoutingDataSource(DataSource primary, StandardConnectionPool... replicas) {
+		this.primary = primary;
+		this.replicas = new Replica[replicas.length];
+		for (int i = 0; i < replicas.length; i++) {
+			this.replicas[i] = new Replica(replicas[i]);
+		}
+		schedule = createSchedule();
+	}
+
+
+	public void setProperties(Properties properties) {
+		String balancing = properties.getProperty("balancing", LEAST_CONNECTIONS);
+		if (!LEAST_CONNECTIONS.equals(balancing) && !ROUND_ROBIN.equals(balancing)) {
+			throw new ConfigurationException("balancing must be " + LEAST_CONNECTIONS + " or " + ROUND_ROBIN + ", not " + balancing);
+		}
+		roundRobin = ROUND_ROBIN.equals(balancing);
+		String weights = properties.getProperty("replica_weights");
+		if (weights != null) {
+			String[] weightArray = weights.split(",");
+			if (weightArray.length != replicas.length) {
+				throw new ConfigurationException("replica_weights must contain " + replicas.length + " weights");
+			}
+			for (int i = 0; i < replicas.length; i++) {
+				int weight = Integer.parseInt(weightArray[i].trim());
+				if (weight <= 0) {
+					throw new ConfigurationException("replica weight must be greater than 0");
+				}
+				replicas[i].weight = weight;
+			}
+		}
+		schedule = createSchedule();
+		healthCheckInterval = Integer.valueOf(properties.getProperty("health_check_interval", "" + healthCheckInterval));
+	}
+
+
+	/**
+	 * Spreads turns of replicas evenly according to their weights.
+	 *
+	 * @return replica indexes in round robin order
+	 */
+	private int[] createSchedule() {
+		int totalWeight = 0;
+		for (Replica replica : replicas) {
+			totalWeight += replica.weight;
+		}
+		int[] result = new int[totalWeight];
+		int[] currentWeights = new int[replicas.length];
+		for (int turn = 0; turn < totalWeight; turn++) {
+			int selected = 0;
+			for (int i = 0; i < replicas.length; i++) {
+				currentWeights[i] += replicas[i].weight;
+				if (currentWeights[i] > currentWeights[selected]) {
+					selected = i;
+				}
+			}
+			currentWeights[selected] -= totalWeight;
+			result[turn] = selected;
+		}
+		return result;
+	}
+
+
+	/**
+	 * @return a connection to a healthy replica or, if none is available, to the primary database
+	 * @throws SQLException
+	 */
+	public Connection getConnection() throws SQLException {
+		Replica replica;
+		while ((replica = selectReplica()) != null) {
+			try {
+				Connection conn = replica.pool.getConnection();
+				replica.nrofConnectionsObtained.increment();
+				return conn;
+			} catch (RuntimeException e) {
+				//database unreachable
+				eject(replica, e);
+			} catch (SQLException e) {
+				if (replica.pool.isStarted()) {
+					//all connections are busy
+					throw e;
+				}
+				eject(replica, e);
+			}
+		}
+		nrofFallbacks.increment();
+		return primary.getConnection();
+	}
+
+
+	private Replica selectReplica() {
+		int start = counter.getAndIncrement() & Integer.MAX_VALUE;
+		if (roundRobin) {
+			for (int i = 0; i < schedule.length; i++) {
+				Replica replica = replicas[schedule[(start + i) % schedule.length]];
+				if (replica.healthy) {
+					return replica;
+				}
+			}
+			return null;
+		}
+		Replica selected = null;
+		int selectedInUse = 0;
+		//start at a different replica every time to spread requests if loads are equal
+		for (int i = 0; i < replicas.length; i++) {
+			Replica replica = replicas[(start + i) % replicas.length];
+			if (replica.healthy) {
+				int inUse = replica.pool.getNrofConnectionsInUse();
+				if (selected == null || (long) inUse * selected.weight < (long) selectedInUse * replica.weight) {
+					selected = replica;
+					selectedInUse = inUse;
+				}
+			}
+		}
+		return selected;
+	}
+
+
+	private void eject(Replica replica, Exception e) {
+		if (replica.healthy) {
+			replica.healthy = false;
+			nrofEjections.increment();
+			System.out.println(new LogEntry(Level.CRITICAL, "replica " + replica.pool + " ejected: " + e.getMessage(), e));
+		}
+	}
+
+
+	/**
+	 * Tests all replicas and ejects or restores them according to the outcome.
+	 */
+	public void checkHealth() {
+		for (Replica replica : replicas) {
+			boolean healthy = replica.pool.testConnection();
+			if (healthy && !replica.healthy) {
+				System.out.println(new LogEntry("replica " + replica.pool + " restored"));
+			} else if (!healthy && replica.healthy) {
+				nrofEjections.increment();
+				System.out.println(new LogEntry(Level.CRITICAL, "replica " + replica.pool + " ejected after failed connection test"));
+			}
+			replica.healthy = healthy;
+		}
+	}
+
+
+	public void onPageEvent(long officialTime) {
+		checkHealth();
+	}
+
+	public int getPageIntervalInMinutes() {
+		return healthCheckInterval;
+	}
+
+	public int getPageOffsetInMinutes() {
+		return 0;
+	}
+
+	public boolean isStarted() {
+		return true;
+	}
+
+
+	/**
+	 * @return number of healthy replicas
+	 */
+	public int getNrofHealthyReplicas() {
+		int count = 0;
+		for (Replica replica : replicas) {
+			if (replica.healthy) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+
+	public String getReport() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("Balancing: " + (roundRobin ? ROUND_ROBIN : LEAST_CONNECTIONS) + "\n");
+		for (int i = 0; i < replicas.length; i++) {
+			Replica replica = replicas[i];
+			sb.append("Replica " + i + " (weight " + replica.weight + "): " + (replica.healthy ? "healthy" : "ejected") +
+					", in use: " + replica.pool.getNrofConnectionsInUse() +
+					", obtained: " + replica.nrofConnectionsObtained.get() + "\n");
+		}
+		sb.append("Nr of ejections: " + nrofEjections.get() + "\n");
+		sb.append("Nr of fallbacks to primary: " + nrofFallbacks.get() + "\n");
+		return sb.toString();
+	}
+
+
+	/**
+	 * @param username
+	 * @param password
+	 * @return a connection to the primary database
+	 * @throws SQLException
+	 */
+	public Connection getConnection(String username, String password) throws SQLException {
+		return primary.getConnection(username, password);
+	}
+
+	public PrintWriter getLogWriter() throws SQLException {
+		return primary.getLogWriter();
+	}
+
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		primary.setLogWriter(out);
+	}
+
+	public void setLoginTimeout(int seconds) throws SQLException {
+		primary.setLoginTimeout(seconds);
+	}
+
+	public int getLoginTimeout() throws SQLException {
+		return primary.getLoginTimeout();
+	}
+
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	public <T> T unwrap(Class<T> clasz) throws SQLException {
+		if (clasz.isInstance(this)) {
+			return clasz.cast(this);
+		}
+		throw new SQLException("class '" + getClass().getName() + "' is not a wrapper for '" + clasz.getName() + "'");
+	}
+
+	public boolean isWrapperFor(Class<?> clasz) {
+		return clasz.isInstance(this);
+	}
+}
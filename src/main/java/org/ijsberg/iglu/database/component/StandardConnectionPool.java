@@ -25,18 +25,24 @@ import org.ijsberg.iglu.exception.ResourceException;
 import org.ijsberg.iglu.logging.Level;
 import org.ijsberg.iglu.logging.LogEntry;
 import org.ijsberg.iglu.scheduling.Pageable;
-import org.ijsberg.iglu.util.execution.Executable;
-import org.ijsberg.iglu.util.execution.TimeOutException;
+import org.ijsberg.iglu.util.statistics.StripedCounter;
 
 import javax.sql.DataSource;
 import java.io.PrintWriter;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.sql.*;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
@@ -60,10 +66,38 @@ import java.util.logging.Logger;
  * </ul>
  * <p/>
  * <ul>
- * <li>connection_request_timeout: the maximum time in seconds to wait for distribution of a request</li>
+ * <li>connection_request_timeout: the maximum time in seconds to wait for a connection if all connections are in use</li>
  * <li>astray_connection_timeout: timeout in seconds for a connection that is somehow not released</li>
  * <li>astray_connection_timeout_check_interval: interval in seconds to check for connections gone astray</li>
+ * <li>statement_cache_size: number of prepared statements kept per connection for reuse (default: 0 = no caching)</li>
  * </ul>
+ * <p/>
+ * <ul>
+ * <li>min_idle_connections: number of available connections kept ready (default: initial_nrof_connections)</li>
+ * <li>idle_timeout: time in seconds after which connections that are not used are closed,
+ * as long as more than min_idle_connections are available (default: 0 = never)</li>
+ * <li>validation_idle_time: time in seconds after which connections that are not used are validated
+ * by Connection.isValid, before being handed out and by the maintenance thread (default: 30)</li>
+ * <li>validation_timeout: time in seconds a validation may take (default: 5)</li>
+ * <li>maintenance_interval: interval in seconds of the maintenance thread (default: 30)</li>
+ * <li>connection_test_statement: statement used by testConnection instead of Connection.isValid (optional)</li>
+ * </ul>
+ * <p/>
+ * Connections are kept in a lock-free ConnectionBag. A thread that requests
+ * a connection is preferably given the connection it released most recently.
+ * If all connections are in use, requesting threads wait in line and a released
+ * connection is offered to the thread that has been waiting longest, although
+ * a thread that did not have to wait may take it first.
+ * <p/>
+ * Connections are handed out as PooledConnection, which delegates to the
+ * driver's connection and returns it to the pool when it's closed.
+ * <p/>
+ * Apart from the initial connections, connections are created by a background thread,
+ * so that a slow database connect does not block requesting threads. Requests wait
+ * in line for a connection that is created for them or released by another thread.
+ * If the creation fails, waiting requests fail without waiting for the request timeout.
+ * Idle connections are closed and validated by a separate maintenance thread,
+ * so that creating connections never has to wait for a slow validation.
  */
 
 public class StandardConnectionPool implements Startable, Pageable, DataSource {
@@ -77,9 +111,12 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 	});
 
 	//Connection storage
-	private final ArrayList allConnections = new ArrayList();
-	private final ArrayList availableConnections = new ArrayList();
-	private final ArrayList usedConnections = new ArrayList();
+	private final ConnectionBag<ConnectionWrapper> connections = new ConnectionBag<ConnectionWrapper>();
+	//includes connections being created
+	private final AtomicInteger nrofConnections = new AtomicInteger();
+	private final AtomicInteger nrofConnectionsInUse = new AtomicInteger();
+	//requests waiting for a connection to be released or created
+	private final AtomicInteger nrofPendingRequests = new AtomicInteger();
 
 	private String dbUrl;
 	private String dbUsername;
@@ -95,26 +132,50 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 	private int connectionRequestTimeout = 15;
 	private int connectionTimeout = 300;
 	private int connectionTimeoutCheck = 3;//min
-	private int maxNrOfConcurrentConnectionsCounted;
-
-
-	//Statistics
-	private long nrofRequests;
-	private long nrofConnectionsDistributed;
-	private long nrofReleased;
-	private long nrofReset;
-	private long nrofRequestsTimedOut;
-	private long nrofQueuedRequests;
-	private long nrofStaleCleanedUp;
-	private long cumulatedResponseTime;
-	private long nrofErrors;
+	private final AtomicInteger maxNrOfConcurrentConnectionsCounted = new AtomicInteger();
+	private int statementCacheSize;
+	private int minIdleConnections;//set to initial number of connections by default
+	private int idleTimeout = 0;//s, 0 = idle connections are kept
+	private int validationIdleTime = 30;//s
+	private int validationTimeout = 5;//s
+	private int maintenanceInterval = 30;//s
+
+	//interval in ms at which waiting requests check if the creation of a connection failed
+	private static final long CONNECTION_FAILURE_CHECK_INTERVAL = 200;
+
+	//creates connections
+	private volatile ThreadPoolExecutor connectionCreator;
+	//evicts and validates idle connections
+	private volatile ScheduledThreadPoolExecutor maintainer;
+	private final AtomicBoolean fillRequested = new AtomicBoolean();
+	private volatile ResourceException lastConnectionFailure;
+	private volatile long lastConnectionFailureTime;
+
+
+	//Statistics, updated concurrently
+	private final StripedCounter nrofRequests = new StripedCounter();
+	private final StripedCounter nrofConnectionsDistributed = new StripedCounter();
+	private final StripedCounter nrofReleased = new StripedCounter();
+	private final StripedCounter nrofReset = new StripedCounter();
+	private final StripedCounter nrofRequestsTimedOut = new StripedCounter();
+	private final StripedCounter nrofQueuedRequests = new StripedCounter();
+	private final StripedCounter nrofStaleCleanedUp = new StripedCounter();
+	private final StripedCounter cumulatedResponseTime = new StripedCounter();
+	private final StripedCounter nrofErrors = new StripedCounter();
+	private final StripedCounter nrofStatementCacheHits = new StripedCounter();
+	private final StripedCounter nrofStatementCacheMisses = new StripedCounter();
+	private final StripedCounter nrofEvictions = new StripedCounter();
+	private final StripedCounter nrofRetries = new StripedCounter();
+	private final StripedCounter nrofCreated = new StripedCounter();
+	private final StripedCounter nrofIdleClosed = new StripedCounter();
+	private final StripedCounter nrofInvalidDiscarded = new StripedCounter();
 	private String driverInfo;
 
 	//connection tester
 	private StandardJdbcProcessor connectionTester;
-	private String connectionTestStatement = "select 1 from dual";
+	private String connectionTestStatement;
 
-	private boolean isStarted = false;
+	private volatile boolean isStarted = false;
 
 	/**
 	 * Default log writer is System.out.
@@ -138,7 +199,7 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 	/**
 	 *
 	 */
-	public class ConnectionWrapper implements InvocationHandler {
+	public class ConnectionWrapper extends ConnectionBag.Entry implements InvocationHandler {
 		private String lastStatement;
 
 		private Connection conn;
@@ -159,6 +220,10 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 
 		private long timeout = 60;
 		private long creationDate = System.currentTimeMillis();
+		private volatile long borrowedAt = creationDate;
+		private volatile long lastUsed = creationDate;
+		private volatile long lastValidated = creationDate;
+		private PreparedStatementCache statementCache;
 
 		/**
 		 * @param conn
@@ -187,6 +252,9 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 				originalTypeMap = conn.getTypeMap();
 				originalHoldability = new Integer(conn.getHoldability());
 				setCurrentProperties();
+				if (pool.statementCacheSize > 0) {
+					statementCache = new PreparedStatementCache(pool.statementCacheSize, pool.nrofStatementCacheHits, pool.nrofStatementCacheMisses);
+				}
 			} catch (SQLException sqle) {
 				throw new ResourceException("cannot create ConnectionWrapper with message: " + sqle.getMessage(), sqle);
 			}
@@ -232,24 +300,105 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 		 */
 		private void storeSetValue(String methodName, Object[] args)
 				throws IllegalAccessException, InvocationTargetException {
-			if ("setAutoCommit".equals(methodName) && !args[0].equals(currentAutoCommit)) {
-				currentAutoCommit = (Boolean) args[0];
-			} else if ("setReadOnly".equals(methodName) && !args[0].equals(currentReadOnly)) {
-				currentReadOnly = (Boolean) args[0];
-			} else if ("setCatalog".equals(methodName) && !args[0].equals(currentCatalog)) {
-				currentCatalog = (String) args[0];
-			} else if ("setTransactionIsolation".equals(methodName) && !args[0].equals(currentTransactionIsolation)) {
-				currentTransactionIsolation = (Integer) args[0];
-			} else if ("setTypeMap".equals(methodName) && !args[0].equals(currentTypeMap)) {
-				currentTypeMap = (Map) args[0];
-			} else if ("setHoldability".equals(methodName) && !args[0].equals(currentHoldability)) {
-				currentHoldability = (Integer) args[0];
+			if ("setAutoCommit".equals(methodName)) {
+				trackAutoCommit((Boolean) args[0]);
+			} else if ("setReadOnly".equals(methodName)) {
+				trackReadOnly((Boolean) args[0]);
+			} else if ("setCatalog".equals(methodName)) {
+				trackCatalog((String) args[0]);
+			} else if ("setTransactionIsolation".equals(methodName)) {
+				trackTransactionIsolation((Integer) args[0]);
+			} else if ("setTypeMap".equals(methodName)) {
+				trackTypeMap((Map) args[0]);
+			} else if ("setHoldability".equals(methodName)) {
+				trackHoldability((Integer) args[0]);
+			}
+		}
+
+		//settings that are changed by users of the connection are reset on release
+
+		void trackAutoCommit(boolean autoCommit) {
+			currentAutoCommit = autoCommit;
+		}
+
+		void trackReadOnly(boolean readOnly) {
+			currentReadOnly = readOnly;
+		}
+
+		void trackCatalog(String catalog) {
+			currentCatalog = catalog;
+		}
+
+		void trackTransactionIsolation(int transactionIsolation) {
+			currentTransactionIsolation = transactionIsolation;
+		}
+
+		void trackTypeMap(Map typeMap) {
+			currentTypeMap = typeMap;
+		}
+
+		void trackHoldability(int holdability) {
+			currentHoldability = holdability;
+		}
+
+		void setLastStatement(String statement) {
+			lastStatement = statement;
+		}
+
+		PreparedStatement prepareStatement(String sql) throws SQLException {
+			lastStatement = sql;
+			if (statementCache != null) {
+				return statementCache.prepareStatement(conn, sql);
 			}
+			return conn.prepareStatement(sql);
+		}
+
+		PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+			lastStatement = sql;
+			if (statementCache != null) {
+				return statementCache.prepareStatement(conn, sql, autoGeneratedKeys);
+			}
+			return conn.prepareStatement(sql, autoGeneratedKeys);
+		}
+
+		/**
+		 * Closes the underlying connection and the statements it keeps.
+		 *
+		 * @throws SQLException
+		 */
+		void closeConnection() throws SQLException {
+			if (statementCache != null) {
+				statementCache.close();
+			}
+			conn.close();
 		}
 
 
 		public boolean isTimedOut() {
-			return System.currentTimeMillis() - creationDate > (timeout * 1000);
+			return System.currentTimeMillis() - borrowedAt > (timeout * 1000);
+		}
+
+
+		void borrowed() {
+			borrowedAt = System.currentTimeMillis();
+		}
+
+
+		void validated() {
+			lastValidated = System.currentTimeMillis();
+		}
+
+
+		/**
+		 * @return time in ms since the connection was last released
+		 */
+		long getIdleTime() {
+			return System.currentTimeMillis() - lastUsed;
+		}
+
+
+		boolean needsValidation() {
+			return System.currentTimeMillis() - Math.max(lastUsed, lastValidated) >= validationIdleTime * 1000L;
 		}
 
 
@@ -322,6 +471,29 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 		}
 
 
+		/**
+		 * Discards the connection, for instance because it is broken.
+		 */
+		void evict() {
+			if (pool == null) {
+				try {
+					conn.close();
+				} catch (SQLException sqle) {
+					System.out.println(new LogEntry("unable to close evicted connection", sqle));
+				}
+			} else {
+				pool.evictConnection(this);
+			}
+		}
+
+
+		void registerRetry() {
+			if (pool != null) {
+				pool.nrofRetries.increment();
+			}
+		}
+
+
 		public boolean isClosed() throws SQLException {
 			return conn.isClosed();
 		}
@@ -333,24 +505,6 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 	}
 
 
-	public Object obtainConnectionRepeated() throws InterruptedException {
-		ConnectionWrapper conn;
-		long tries = 1;
-
-		while (tries < 100) {
-			conn = obtainConnection();
-			if (conn != null) {
-				System.out.println(new LogEntry("Connection obtained in " + tries + " attempts"));
-				return conn;
-			} else {
-				tries++;
-				Thread.sleep(10);
-			}
-		}
-		return null;
-	}
-
-
 	/**
 	 * @param dbUrl
 	 * @param username
@@ -374,7 +528,7 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 	private Connection createConnection(String dbUrl, String username, String password) throws SQLException {
 		Connection conn = DriverManager.getConnection(dbUrl, username, password);
 		if (conn == null) {
-			nrofErrors++;
+			nrofErrors.increment();
 			throw new SQLException("failed to create a connection to database URL " + dbUrl + " using account " + dbUsername);
 		}
 		if (createReadOnlyConnections) {
@@ -393,42 +547,94 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 			throw new SQLException("data source is not active");
 		}
 
-		nrofRequests++;
+		nrofRequests.increment();
 		long start = System.currentTimeMillis();
 
-		ConnectionWrapper conn = obtainConnection();
+		ConnectionWrapper conn;
+		do {
+			conn = borrowConnection(start);
+		} while (!validate(conn));
+
+		conn.borrowed();
+		if (nrofConnections.get() - nrofConnectionsInUse.get() < minIdleConnections) {
+			//keep connections ready for subsequent requests
+			requestNewConnections();
+		}
+		cumulatedResponseTime.add(System.currentTimeMillis() - start);
+		nrofConnectionsDistributed.increment();
 
-		if (conn == null) {
-			System.out.println(new LogEntry("Connection not directly obtained"));
-			nrofQueuedRequests++;
+		return new PooledConnection(conn);
+
+	}
 
-			//create an executable which keeps trying to obtain a connection
-			Executable exec = new Executable() {
-				protected Object execute() throws Throwable {
-					return obtainConnectionRepeated();
+
+	private ConnectionWrapper borrowConnection(long start) throws SQLException {
+		ConnectionWrapper conn = obtainConnection();
+		if (conn != null) {
+			return conn;
+		}
+		nrofQueuedRequests.increment();
+		nrofPendingRequests.incrementAndGet();
+		try {
+			//connections are created in the background, so that a slow connect does not block callers
+			boolean creationRequested = requestNewConnections();
+			long deadline = start + connectionRequestTimeout * 1000L;
+			long timeLeft;
+			//wait in line for a connection that is released or created
+			while (conn == null && (timeLeft = deadline - System.currentTimeMillis()) > 0) {
+				if (creationRequested) {
+					conn = connections.borrow(Math.min(timeLeft, CONNECTION_FAILURE_CHECK_INTERVAL), TimeUnit.MILLISECONDS);
+					ResourceException failure = lastConnectionFailure;
+					if (conn == null && failure != null && lastConnectionFailureTime >= start) {
+						throw new ResourceException(failure.getMessage(), failure.getCause());
+					}
+				} else {
+					conn = connections.borrow(timeLeft, TimeUnit.MILLISECONDS);
 				}
-			};
-			try {
-				//execute the connection obtainer within a maximum period of time
-				conn = (ConnectionWrapper) exec.executeTimed(connectionRequestTimeout * 1000);
-				nrofConnectionsDistributed++;
-			} catch (TimeOutException e) {
-				nrofRequestsTimedOut++;
-				throw new SQLException("obtaining connection timed out");
-			} catch (Throwable t) {
-				this.nrofErrors++;
-				System.out.println(new LogEntry(Level.CRITICAL, "failed to obtain connection", t));
-				throw new SQLException("obtaining connection failed with message: " + t.getMessage());
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("interrupted while waiting for a connection");
+		} finally {
+			nrofPendingRequests.decrementAndGet();
+		}
+		if (conn == null) {
+			nrofRequestsTimedOut.increment();
+			throw new SQLException("obtaining connection timed out after " + connectionRequestTimeout + " s");
 		}
+		registerConnectionInUse();
+		return conn;
+	}
+
 
-		cumulatedResponseTime += System.currentTimeMillis() - start;
-		nrofConnectionsDistributed++;
+	/**
+	 * Validates a borrowed connection that has not been used or validated recently.
+	 * The connection is discarded if it's invalid.
+	 *
+	 * @param connWrap
+	 * @return false if the connection was discarded
+	 */
+	private boolean validate(ConnectionWrapper connWrap) {
+		if (!connWrap.needsValidation() || isValid(connWrap)) {
+			return true;
+		}
+		nrofInvalidDiscarded.increment();
+		replaceConnection(connWrap);
+		return false;
+	}
 
-		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
-				new Class[]{Connection.class},
-				conn);
 
+	private boolean isValid(ConnectionWrapper connWrap) {
+		try {
+			boolean valid = connWrap.getConnection().isValid(validationTimeout);
+			connWrap.validated();
+			return valid;
+		} catch (SQLException e) {
+			return false;
+		} catch (AbstractMethodError e) {
+			//pre-JDBC 4 driver
+			return true;
+		}
 	}
 
 
@@ -436,112 +642,186 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 	 * To be invoked by ConnectionWrapper and StandardConnectionPool only only
 	 *
 	 * @return A database connection (wrapped in a class that implements Connection as well)
+	 *         or null if all connections are in use
 	 */
 	ConnectionWrapper obtainConnection() {
-		synchronized (allConnections) {
-			//fails if connection pool not started
-			if (!availableConnections.isEmpty()) {
-				//retrieve and remove first connection from list
-				//  since released connections are added to the back, connections will rotate
-				ConnectionWrapper connWrap = (ConnectionWrapper) availableConnections.remove(0);
-				usedConnections.add(connWrap);
-				if (usedConnections.size() > maxNrOfConcurrentConnectionsCounted) {
-					maxNrOfConcurrentConnectionsCounted = usedConnections.size();
-				}
-				return connWrap;
-			} else {
-				//create one if max not reached
-				//this also restores lost connections
-				if ((allConnections.size() < initialNrofConnections) || (allConnections.size() < maxNrofConnections)) {
-					try {
-						ConnectionWrapper connWrap = createConnectionWrapper(dbUrl, dbUsername, dbUserpassword);
-
-						allConnections.add(connWrap);
-						usedConnections.add(connWrap);
-
-						System.out.println(new LogEntry("Creating new Connection, now " + allConnections.size() + " in use"));
-
-						return connWrap;
-					} catch (SQLException sqle) {
-						//happens if db unreachable
-						//connection will be lost for the time being
-						nrofErrors++;
-						System.out.println(new LogEntry("Cannot create new connection to " + dbUrl + " unreachable or useless connection settings", sqle));
-						throw new ResourceException("Cannot create new connection to " + dbUrl + " unreachable or useless connection settings", sqle);
+		ConnectionWrapper connWrap = connections.borrow();
+		if (connWrap != null) {
+			registerConnectionInUse();
+		}
+		return connWrap;
+	}
+
+	private void registerConnectionInUse() {
+		int nrInUse = nrofConnectionsInUse.incrementAndGet();
+		int maxNrInUse;
+		while (nrInUse > (maxNrInUse = maxNrOfConcurrentConnectionsCounted.get())
+				&& !maxNrOfConcurrentConnectionsCounted.compareAndSet(maxNrInUse, nrInUse)) {
+		}
+	}
+
+
+	/**
+	 * Makes the connection creator create connections for waiting requests.
+	 *
+	 * @return false if the maximum number of connections has been reached
+	 */
+	private boolean requestNewConnections() {
+		if (nrofConnections.get() >= getMaxNrofConnections()) {
+			return false;
+		}
+		ThreadPoolExecutor connectionCreator = this.connectionCreator;
+		if (connectionCreator != null && fillRequested.compareAndSet(false, true)) {
+			try {
+				connectionCreator.execute(new Runnable() {
+					public void run() {
+						fillRequested.set(false);
+						fillPool();
 					}
-				} else {
-					System.out.println(new LogEntry("maximum nr of connections (" + maxNrofConnections + ") reached while Application demands another"));
-				}
-				return null;
+				});
+			} catch (RejectedExecutionException e) {
+				//pool is stopping
+				fillRequested.set(false);
 			}
 		}
+		return true;
 	}
 
+
 	/**
-	 * Closes the connection and replaces it in the pool
-	 * To be invoked by ConnectionWrapper and StandardConnectionPool only only
+	 * Creates connections as long as requests are waiting or fewer than
+	 * min_idle_connections are available, up to the maximum.
+	 * Runs on the connection creator thread.
+	 */
+	private void fillPool() {
+		while (isStarted() && (connections.getCount(ConnectionBag.STATE_NOT_IN_USE) < minIdleConnections
+				|| (nrofPendingRequests.get() > 0 && connections.getCount(ConnectionBag.STATE_NOT_IN_USE) == 0))) {
+			if (!addConnection()) {
+				return;
+			}
+		}
+	}
+
+
+	/**
+	 * @return false if the maximum number of connections has been reached or the connection could not be created
+	 */
+	private boolean addConnection() {
+		int nrofConnectionsAllowed = getMaxNrofConnections();
+		int currentNrofConnections;
+		do {
+			currentNrofConnections = nrofConnections.get();
+			if (currentNrofConnections >= nrofConnectionsAllowed) {
+				return false;
+			}
+		} while (!nrofConnections.compareAndSet(currentNrofConnections, currentNrofConnections + 1));
+		try {
+			ConnectionWrapper connWrap = createConnectionWrapper(dbUrl, dbUsername, dbUserpassword);
+			lastConnectionFailure = null;
+			nrofCreated.increment();
+			//hands the connection to a waiting request if there is one
+			connections.add(connWrap);
+			System.out.println(new LogEntry("Created new Connection, now " + connections.size() + " connections"));
+			if (!isStarted() && connections.reserve(connWrap)) {
+				//pool stopped meanwhile
+				discardReserved(connWrap);
+			}
+			return true;
+		} catch (SQLException sqle) {
+			//happens if db unreachable
+			//waiting requests are informed
+			nrofConnections.decrementAndGet();
+			nrofErrors.increment();
+			lastConnectionFailureTime = System.currentTimeMillis();
+			lastConnectionFailure = new ResourceException("Cannot create new connection to " + dbUrl + " unreachable or useless connection settings", sqle);
+			System.out.println(new LogEntry(Level.CRITICAL, "Cannot create new connection to " + dbUrl + " unreachable or useless connection settings", sqle));
+			return false;
+		} catch (ResourceException re) {
+			nrofConnections.decrementAndGet();
+			nrofErrors.increment();
+			lastConnectionFailureTime = System.currentTimeMillis();
+			lastConnectionFailure = re;
+			System.out.println(new LogEntry(Level.CRITICAL, re.getMessage(), re));
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the connection and lets the connection creator create a successor.
+	 * A connection that has been released in the meantime is left alone.
+	 * To be invoked by ConnectionWrapper and StandardConnectionPool only
 	 *
 	 * @param connWrap
 	 */
 	void replaceConnection(ConnectionWrapper connWrap) {
-		synchronized (allConnections) {
-			try {
-				if (usedConnections.remove(connWrap)) {
-					nrofReset++;
+		if (connections.remove(connWrap)) {
+			nrofReset.increment();
+			//the object was indeed locked
+			nrofConnectionsInUse.decrementAndGet();
+			nrofConnections.decrementAndGet();
+			closeQuietly(connWrap);
+			System.out.println(new LogEntry(Level.CRITICAL, "Connection reset" + (connWrap.getLastStatement() != null ? " while executing '" + connWrap.getLastStatement() + '\'' : "")));
+			//lets create a fresh successor
+			requestNewConnections();
+		} else {
+			//released or removed meanwhile, another thread may be using it now
+			System.out.println(new LogEntry("connection released before it could be replaced", connWrap.toString()));
+		}
+	}
 
-					//the object was indeed locked
-					allConnections.remove(connWrap);
-					//IMPORTANT does this result in an SQL error which breaks off the connection?
-					connWrap.getConnection().close();
-					System.out.println(new LogEntry(Level.CRITICAL, "Connection reset" + (connWrap.getLastStatement() != null ? " while executing '" + connWrap.getLastStatement() + '\'' : "")));
-					//lets create a fresh successor
-					ConnectionWrapper newConnWrap = createConnectionWrapper(dbUrl, dbUsername, dbUserpassword);
-					availableConnections.add(newConnWrap);
-					allConnections.add(newConnWrap);
-				} else {
-					nrofErrors++;
-					System.out.println(new LogEntry(Level.CRITICAL, "error in connection pool: attempt to close a Connection that does not exist in pool"));
-				}
-			} catch (SQLException sqle) {
-				//happens if db unreachable
-				//connection will be lost for the time being
-				nrofErrors++;
-				System.out.println(new LogEntry(Level.CRITICAL, "can not create new connection to " + dbUrl + " unreachable or useless connection settings", sqle));
-			}
-			try {
-				if (!connWrap.isClosed()) {
-					connWrap.getConnection().close();
-				}
-			} catch (SQLException sqle) {
-				nrofErrors++;
-				System.out.println(new LogEntry(Level.CRITICAL, "", sqle));
-			}
+
+	/**
+	 * Closes a connection that has been reserved, removing it from the pool.
+	 */
+	private void discardReserved(ConnectionWrapper connWrap) {
+		if (connections.remove(connWrap)) {
+			nrofConnections.decrementAndGet();
+			closeQuietly(connWrap);
 		}
 	}
 
 
+	private void closeQuietly(ConnectionWrapper connWrap) {
+		try {
+			connWrap.closeConnection();
+		} catch (SQLException sqle) {
+			nrofErrors.increment();
+			System.out.println(new LogEntry(Level.CRITICAL, "unable to close connection", sqle));
+		}
+	}
+
+
+	/**
+	 * Closes a connection that failed and replaces it in the pool.
+	 *
+	 * @param connWrap
+	 */
+	void evictConnection(ConnectionWrapper connWrap) {
+		nrofEvictions.increment();
+		replaceConnection(connWrap);
+	}
+
+
 	void releaseConnection(ConnectionWrapper connWrap) {
-		synchronized (allConnections) {
-			try {
-				if (!connWrap.isClosed()) {
-					if (usedConnections.remove(connWrap)) {
-						//the object was indeed locked
-						//so make it available again
-						nrofReleased++;
-						//add released connection to the end of the list
-						availableConnections.add(connWrap);
-					} else {
-						nrofErrors++;
-						System.out.println(new LogEntry(Level.VERBOSE, "Error in connection pool: attempt made to release database connection which is not in use", "connection has probably been closed (and released) before"));
-					}
+		try {
+			if (!connWrap.isClosed()) {
+				connWrap.lastUsed = System.currentTimeMillis();
+				if (connections.requite(connWrap)) {
+					//the object was indeed locked
+					//so make it available again
+					nrofConnectionsInUse.decrementAndGet();
+					nrofReleased.increment();
 				} else {
-					//Connection might be useless
-					//Connection will be removed by cleanup
+					nrofErrors.increment();
+					System.out.println(new LogEntry(Level.VERBOSE, "Error in connection pool: attempt made to release database connection which is not in use", "connection has probably been closed (and released) before"));
 				}
-			} catch (SQLException sqle) {
-				nrofErrors++;
-				System.out.println(new LogEntry(sqle));
+			} else {
+				//Connection might be useless
+				//Connection will be removed by cleanup
 			}
+		} catch (SQLException sqle) {
+			nrofErrors.increment();
+			System.out.println(new LogEntry(sqle));
 		}
 	}
 
@@ -551,20 +831,33 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 	 */
 	public String getReport() {
 		StringBuffer sb = new StringBuffer("");
-		sb.append("Total connections: " + allConnections.size() + "\n");
-		sb.append("Nr available: " + availableConnections.size() + "\n");
-		sb.append("Nr used: " + usedConnections.size() + "\n");
+		sb.append("Total connections: " + connections.size() + "\n");
+		sb.append("Nr available: " + connections.getCount(ConnectionBag.STATE_NOT_IN_USE) + "\n");
+		sb.append("Nr used: " + connections.getCount(ConnectionBag.STATE_IN_USE) + "\n");
+		sb.append("Max nr used concurrently: " + maxNrOfConcurrentConnectionsCounted.get() + "\n");
 		sb.append("\n");
-		sb.append("Nr of requests: " + nrofRequests + "\n");
-		sb.append("Nr of requests queued: " + nrofQueuedRequests + "\n");
-		sb.append("Nr of requests timed out: " + nrofRequestsTimedOut + "\n");
-		sb.append("Nr of connections distributed: " + nrofConnectionsDistributed + "\n");
-		sb.append("Nr of connections released: " + nrofReleased + "\n");
-		sb.append("Nr of connections reset: " + nrofReset + "\n");
-		sb.append("Nr of astray connections cleaned up: " + nrofStaleCleanedUp + "\n");
-		sb.append("Nr of errors: " + nrofErrors + "\n");
-		if (nrofConnectionsDistributed > 0) {
-			sb.append("Average response time: " + (float) cumulatedResponseTime / (float) nrofConnectionsDistributed + " ms\n");
+		sb.append("Nr of requests: " + nrofRequests.get() + "\n");
+		sb.append("Nr of requests queued: " + nrofQueuedRequests.get() + "\n");
+		sb.append("Nr of requests waiting: " + connections.getNrofWaiters() + "\n");
+		sb.append("Nr of requests timed out: " + nrofRequestsTimedOut.get() + "\n");
+		sb.append("Nr of connections released: " + nrofReleased.get() + "\n");
+		sb.append("Nr of connections reset: " + nrofReset.get() + "\n");
+		sb.append("Nr of astray connections cleaned up: " + nrofStaleCleanedUp.get() + "\n");
+		sb.append("Nr of errors: " + nrofErrors.get() + "\n");
+		sb.append("Nr of connections evicted after errors: " + nrofEvictions.get() + "\n");
+		sb.append("Nr of statements retried: " + nrofRetries.get() + "\n");
+		sb.append("Nr of connections created: " + nrofCreated.get() + "\n");
+		sb.append("Nr of idle connections closed: " + nrofIdleClosed.get() + "\n");
+		sb.append("Nr of invalid connections discarded: " + nrofInvalidDiscarded.get() + "\n");
+		if (statementCacheSize > 0) {
+			sb.append("Statement cache size per connection: " + statementCacheSize + "\n");
+			sb.append("Statement cache hits: " + nrofStatementCacheHits.get() + "\n");
+			sb.append("Statement cache misses: " + nrofStatementCacheMisses.get() + "\n");
+		}
+		long nrofDistributed = nrofConnectionsDistributed.get();
+		sb.append("Nr of connections distributed: " + nrofDistributed + "\n");
+		if (nrofDistributed > 0) {
+			sb.append("Average response time: " + (float) cumulatedResponseTime.get() / (float) nrofDistributed + " ms\n");
 		}
 		if (driverInfo != null) {
 			sb.append(driverInfo);
@@ -573,17 +866,23 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 	}
 
 	/**
+	 * Creates the initial connections and starts the background threads.
+	 * Does nothing if the pool is started already.
+	 *
 	 * @throws ConfigurationException
 	 */
-	public void start() {
-		allConnections.clear();
-		availableConnections.clear();
-		usedConnections.clear();
+	public synchronized void start() {
+		if (isStarted) {
+			return;
+		}
+		connections.clear();
+		nrofConnections.set(0);
+		nrofConnectionsInUse.set(0);
 		try {
 			for (int i = 0; i < initialNrofConnections; i++) {
 				ConnectionWrapper connWrap = createConnectionWrapper(dbUrl, dbUsername, dbUserpassword);
-				availableConnections.add(connWrap);
-				allConnections.add(connWrap);
+				nrofConnections.incrementAndGet();
+				connections.add(connWrap);
 			}
 		} catch (SQLException sqle) {
 			System.out.println(new LogEntry(Level.CRITICAL, "unable to start connection pool, SQLException: " + sqle.getMessage(), sqle));
@@ -591,7 +890,33 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 		}
 
 		connectionTester = new StandardJdbcProcessor(this);
+		lastConnectionFailure = null;
 		isStarted = true;
+
+		connectionCreator = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "connection pool creator");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		maintainer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "connection pool maintenance");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		maintainer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					maintain();
+				} catch (RuntimeException e) {
+					nrofErrors.increment();
+					System.out.println(new LogEntry(Level.CRITICAL, "connection pool maintenance failed", e));
+				}
+			}
+		}, 0, maintenanceInterval, TimeUnit.SECONDS);
 	}
 
 
@@ -600,22 +925,37 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 	/**
 	 * Stops the component and closes all connections
 	 */
-	public void stop() {
+	public synchronized void stop() {
 		isStarted = false;
-		Iterator i = allConnections.iterator();
-		while (i.hasNext()) {
-			ConnectionWrapper connWrap = (ConnectionWrapper) i.next();
+		if (connectionCreator != null) {
+			connectionCreator.shutdownNow();
+		}
+		if (maintainer != null) {
+			maintainer.shutdownNow();
+		}
+		try {
+			//a connection may be in the process of being created or validated
+			if (connectionCreator != null) {
+				connectionCreator.awaitTermination(connectionRequestTimeout, TimeUnit.SECONDS);
+			}
+			if (maintainer != null) {
+				maintainer.awaitTermination(connectionRequestTimeout, TimeUnit.SECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		connectionCreator = null;
+		maintainer = null;
+		for (ConnectionWrapper connWrap : connections.clear()) {
 			try {
-				connWrap.getConnection().close();
+				connWrap.closeConnection();
 			} catch (SQLException e) {
-				nrofErrors++;
+				nrofErrors.increment();
 				System.out.println(new LogEntry(e));
 			}
 		}
-
-		allConnections.clear();
-		availableConnections.clear();
-		usedConnections.clear();
+		nrofConnections.set(0);
+		nrofConnectionsInUse.set(0);
 	}
 
 
@@ -647,7 +987,14 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 		connectionTimeout = Integer.valueOf(properties.getProperty("connection_timeout", "" + connectionTimeout));
 		connectionTimeoutCheck = Integer.valueOf(properties.getProperty("connection_timeout_check_interval", "" + connectionTimeoutCheck));
 
-		connectionTestStatement = properties.getProperty("connection_test_statement", connectionTestStatement).toString();
+		statementCacheSize = Integer.valueOf(properties.getProperty("statement_cache_size", "" + statementCacheSize));
+		minIdleConnections = Integer.valueOf(properties.getProperty("min_idle_connections", "" + initialNrofConnections));
+		idleTimeout = Integer.valueOf(properties.getProperty("idle_timeout", "" + idleTimeout));
+		validationIdleTime = Integer.valueOf(properties.getProperty("validation_idle_time", "" + validationIdleTime));
+		validationTimeout = Integer.valueOf(properties.getProperty("validation_timeout", "" + validationTimeout));
+		maintenanceInterval = Integer.valueOf(properties.getProperty("maintenance_interval", "" + maintenanceInterval));
+
+		connectionTestStatement = properties.getProperty("connection_test_statement", connectionTestStatement);
 
 		createReadOnlyConnections = Boolean.valueOf(properties.getProperty("create_readonly_connections", "" + createReadOnlyConnections));
 		defaultIsolationLevel = isolationLevelStrings.indexOf(properties.getProperty("default_isolaton_level", "" + defaultIsolationLevel));
@@ -670,58 +1017,156 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 	}
 
 	private void resetStatistics() {
-		nrofRequests = 0;
-		nrofConnectionsDistributed = 0;
-		nrofReleased = 0;
-		nrofReset = 0;
-		nrofRequestsTimedOut = 0;
-		long nrofRequestsFailed = 0;// ??
-		nrofQueuedRequests = 0;
-		nrofStaleCleanedUp = 0;
-		cumulatedResponseTime = 0;
-		nrofErrors = 0;
+		nrofRequests.reset();
+		nrofConnectionsDistributed.reset();
+		nrofReleased.reset();
+		nrofReset.reset();
+		nrofRequestsTimedOut.reset();
+		nrofQueuedRequests.reset();
+		nrofStaleCleanedUp.reset();
+		cumulatedResponseTime.reset();
+		nrofErrors.reset();
+		nrofStatementCacheHits.reset();
+		nrofStatementCacheMisses.reset();
+		nrofEvictions.reset();
+		nrofRetries.reset();
+		nrofCreated.reset();
+		nrofIdleClosed.reset();
+		nrofInvalidDiscarded.reset();
+		maxNrOfConcurrentConnectionsCounted.set(0);
 	}
 
 
 	/**
-	 * Cleanup routine that is to be called regularly
+	 * Cleanup routine that is to be called regularly.
+	 * It is run by the maintenance thread of the pool as well.
 	 */
 	public void onPageEvent(long l) {
-		System.out.println(new LogEntry("connection pool cleanup run"));
+		maintain();
+	}
+
+
+	/**
+	 * Replaces connections gone astray, closes connections that have been idle
+	 * for more than idle_timeout as long as more than min_idle_connections are available,
+	 * validates other idle connections and requests connections up to min_idle_connections.
+	 * <p/>
+	 * Idle connections are reserved while they're checked, so that the pool
+	 * does not need to be locked.
+	 */
+	void maintain() {
+		if (!isStarted()) {
+			return;
+		}
+		System.out.println(new LogEntry("connection pool maintenance run"));
 		cleanUpHangingConnections();
-		testConnection();
+		List<ConnectionWrapper> idleConnections = connections.values(ConnectionBag.STATE_NOT_IN_USE);
+		int nrofIdle = idleConnections.size();
+		for (ConnectionWrapper connWrap : idleConnections) {
+			boolean idleTimedOut = idleTimeout > 0 && connWrap.getIdleTime() >= idleTimeout * 1000L;
+			if ((idleTimedOut && nrofIdle > minIdleConnections) || connWrap.needsValidation()) {
+				if (!connections.reserve(connWrap)) {
+					//borrowed meanwhile
+					continue;
+				}
+				if (idleTimedOut && nrofIdle > minIdleConnections) {
+					nrofIdleClosed.increment();
+					nrofIdle--;
+					discardReserved(connWrap);
+				} else if (!isValid(connWrap)) {
+					nrofInvalidDiscarded.increment();
+					nrofIdle--;
+					discardReserved(connWrap);
+				} else {
+					connections.unreserve(connWrap);
+				}
+			}
+		}
+		requestNewConnections();
 	}
 
+
 	/**
-	 * Tests proper working of 1 connection.
-	 * Since connections are rotated, this also functions as a keep-alive mechanism.
+	 * Tests proper working of 1 connection, by the connection test statement if configured
+	 * or else by Connection.isValid.
+	 * If no connection can be obtained because all connections are in use, the test succeeds.
+	 *
+	 * @return false if the pool is not started or the test fails
 	 */
-	private void testConnection() {
-		if(connectionTestStatement != null && !"".equals(connectionTestStatement)) {
-			System.out.println(new LogEntry("performing connection test"));
-			try {
+	public boolean testConnection() {
+		if (!isStarted()) {
+			return false;
+		}
+		try {
+			if (connectionTestStatement != null && !"".equals(connectionTestStatement)) {
+				System.out.println(new LogEntry("performing connection test"));
 				connectionTester.executePreparedStatement(connectionTestStatement);
-			} catch (SQLException e) {
-				System.out.println(new LogEntry(Level.CRITICAL, "connection test failed with message: " + e.getMessage(), e));
+				return true;
 			}
+			Connection conn = getConnection();
+			try {
+				return conn.isValid(validationTimeout);
+			} finally {
+				conn.close();
+			}
+		} catch (SQLException e) {
+			return isBusy(e);
+		} catch (ResourceException e) {
+			return isBusy(e);
+		}
+	}
+
+
+	/**
+	 * @param e reason the connection test failed
+	 * @return true if the test failed because all connections are in use
+	 */
+	private boolean isBusy(Exception e) {
+		if (isStarted() && getNrofConnectionsInUse() >= getMaxNrofConnections()) {
+			System.out.println(new LogEntry("connection test skipped: all connections are in use"));
+			return true;
 		}
+		System.out.println(new LogEntry(Level.CRITICAL, "connection test failed with message: " + e.getMessage(), e));
+		return false;
+	}
+
+
+	/**
+	 * @return maximum number of connections the pool creates
+	 */
+	public int getMaxNrofConnections() {
+		return Math.max(initialNrofConnections, maxNrofConnections);
+	}
+
+
+	/**
+	 * @return number of connections evicted because they failed
+	 */
+	public long getNrofEvictions() {
+		return nrofEvictions.get();
+	}
+
+
+	/**
+	 * @return number of statements retried after a connection failure or transient error
+	 */
+	public long getNrofRetries() {
+		return nrofRetries.get();
+	}
+
+
+	/**
+	 * @return number of connections currently handed out
+	 */
+	public int getNrofConnectionsInUse() {
+		return nrofConnectionsInUse.get();
 	}
 
 	private void cleanUpHangingConnections() {
-		ArrayList deadConnections = new ArrayList();
-		synchronized (allConnections) {
-			if (isStarted() && !usedConnections.isEmpty()) {
-				Iterator i = usedConnections.iterator();
-				while (i.hasNext()) {
-					ConnectionWrapper connWrap = (ConnectionWrapper) i.next();
-					if (connWrap.isTimedOut()) {
-						deadConnections.add(connWrap);
-					}
-				}
-				i = deadConnections.iterator();
-				while (i.hasNext()) {
-					ConnectionWrapper connWrap = (ConnectionWrapper) i.next();
-					nrofStaleCleanedUp++;
+		if (isStarted()) {
+			for (ConnectionWrapper connWrap : connections.values(ConnectionBag.STATE_IN_USE)) {
+				if (connWrap.isTimedOut()) {
+					nrofStaleCleanedUp.increment();
 					System.out.println(new LogEntry(Level.CRITICAL, "Connection kept occupied for more than " + connectionTimeout + " s", connWrap.toString()));
 					replaceConnection(connWrap);
 				}
@@ -784,5 +1229,9 @@ public class StandardConnectionPool implements Startable, Pageable, DataSource {
 		return isStarted;
 	}
 
+	public String toString() {
+		return "connection pool for " + dbUrl;
+	}
+
 
 }
@@ -25,8 +25,10 @@ import org.ijsberg.iglu.logging.LogEntry;
 import javax.sql.DataSource;
 import java.io.IOException;
 import java.sql.*;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -39,6 +41,26 @@ import java.util.Properties;
  * <p/>
  * StandardJdbcProcessor is able to cache ResultSet copies for common database calls
  * <p/>
+ * Read-only calls use the read-only data source if one is provided, which may be
+ * a ReplicaRoutingDataSource that distributes them over several replicas.
+ * <p/>
+ * Large query results can be processed row by row by a RowHandler. Rows are then
+ * fetched from the database in chunks of fetch_size rows.
+ * <p/>
+ * Executed statements are logged by a SqlTracer. By default only statements that
+ * take longer than sql_slow_threshold ms are logged; see SqlTracer for its properties.
+ * <p/>
+ * Durations, rows and errors of all statements are kept per normalized statement
+ * by a StatementMonitor; see getStatementReport().
+ * <p/>
+ * Single statements, inserts, queries and updates that do not take part in a larger
+ * transaction are retried at most max_retries times (default 2) if an SqlErrorClassifier
+ * classifies their failure as a connection failure or a transient error, such as a deadlock.
+ * Retries are delayed by retry_backoff ms (default 50), doubled for every next attempt.
+ * Broken pooled connections are evicted from the pool. Note that a write of which the
+ * connection broke may have been executed before; set max_retries to 0 if executing it
+ * twice is not acceptable. Batches and streamed queries are not retried.
+ * <p/>
  * This class may be extended to form manageable database layers
  */
 
@@ -57,8 +79,22 @@ public class StandardJdbcProcessor implements JdbcProcessor {
 	//	private String connMgrComp = "CONNECTION_POOL";
 
 
+	private static final int MAX_NROF_REPORTED_STATEMENTS = 25;
+
 	//maximum number of rows of a result set to log
 	private int maxRowLog = 100;
+	//number of rows to fetch at once while streaming a result
+	private int fetchSize = 1000;
+	//number of rows per transaction in chunked batches
+	private int batchChunkSize = 1000;
+
+	private SqlTracer sqlTracer = new SqlTracer();
+	private StatementMonitor statementMonitor = new StatementMonitor();
+	private SqlErrorClassifier errorClassifier = new StandardSqlErrorClassifier();
+	//maximum number of retries after a connection failure or transient error
+	private int maxRetries = 2;
+	//delay in ms before the first retry, doubled for every next retry
+	private long retryBackoff = 50;
 
 	//source of database connections
 	private DataSource dataSource;
@@ -93,6 +129,15 @@ public class StandardJdbcProcessor implements JdbcProcessor {
 
 	public void setProperties(Properties properties) {
 		maxRowLog = Integer.valueOf(properties.getProperty("max_row_log", "" + maxRowLog));
+		fetchSize = Integer.valueOf(properties.getProperty("fetch_size", "" + fetchSize));
+		batchChunkSize = Integer.valueOf(properties.getProperty("batch_chunk_size", "" + batchChunkSize));
+		sqlTracer.setProperties(properties);
+		statementMonitor.setProperties(properties);
+		maxRetries = Integer.valueOf(properties.getProperty("max_retries", "" + maxRetries));
+		retryBackoff = Long.valueOf(properties.getProperty("retry_backoff", "" + retryBackoff));
+		if (errorClassifier instanceof StandardSqlErrorClassifier) {
+			((StandardSqlErrorClassifier) errorClassifier).setProperties(properties);
+		}
 		//TODO document this feature
 		allowIsolationLevelOverride = Boolean.valueOf(properties.getProperty("allow_isolationlevel_override", "" + allowIsolationLevelOverride));
 	}
@@ -102,6 +147,59 @@ public class StandardJdbcProcessor implements JdbcProcessor {
 		return dataSource;
 	}
 
+
+	/**
+	 * @return tracer that logs executed statements
+	 */
+	public SqlTracer getSqlTracer() {
+		return sqlTracer;
+	}
+
+
+	/**
+	 * @param errorClassifier decides which failed statements are retried
+	 */
+	public void setErrorClassifier(SqlErrorClassifier errorClassifier) {
+		this.errorClassifier = errorClassifier;
+	}
+
+
+	public List<StatementStatistics> getStatementStatistics() {
+		return statementMonitor.getStatistics();
+	}
+
+
+	public String getStatementReport() {
+		return statementMonitor.getReport(MAX_NROF_REPORTED_STATEMENTS);
+	}
+
+
+	public void resetStatementStatistics() {
+		statementMonitor.reset();
+	}
+
+
+	private void executed(String statement, Object[] params, Object result, long nrofRows, long startNanos) {
+		statementMonitor.record(statement, startNanos, nrofRows, false);
+		sqlTracer.trace(statement, params, result, startNanos);
+	}
+
+
+	private void failed(String statement, long nrofRows, long startNanos) {
+		statementMonitor.record(statement, startNanos, nrofRows, true);
+	}
+
+
+	private static long countRows(Object result) {
+		if (result instanceof ResultSetCopy) {
+			return ((ResultSetCopy) result).size();
+		}
+		if (result instanceof Integer) {
+			return (Integer) result;
+		}
+		return 0;
+	}
+
 	////////////////////////////////
 	//                            //
 	//  PREPARED STATEMENT CALLS  //
@@ -168,17 +266,75 @@ public class StandardJdbcProcessor implements JdbcProcessor {
 	}
 
 
-	public Object executePreparedStatement(String statement, StatementInput input, ConnectionSettings settings) throws SQLException {
-		Connection conn = getConnection(settings);
-		try {
-			return executePreparedStatement(statement, input, settings.resolveLobs, conn);
-		} finally {
-			if (conn != null) {
+	public Object executePreparedStatement(final String statement, final StatementInput input, final ConnectionSettings settings) throws SQLException {
+		return executeWithRetry(settings, new ConnectionCallback<Object>() {
+			public Object execute(Connection conn) throws SQLException {
+				return executePreparedStatement(statement, input, settings, conn);
+			}
+		});
+	}
+
+
+	private interface ConnectionCallback<T> {
+		T execute(Connection conn) throws SQLException;
+	}
+
+
+	/**
+	 * Executes a callback on a connection of its own. If it fails because the connection
+	 * is broken, the connection is evicted from the pool. If the error is classified as
+	 * a connection failure or a transient error, the callback is retried on a fresh
+	 * connection at most max_retries times.
+	 */
+	private <T> T executeWithRetry(ConnectionSettings settings, ConnectionCallback<T> callback) throws SQLException {
+		for (int attempt = 0; ; attempt++) {
+			if (attempt > 0) {
+				backOff(attempt);
+			}
+			Connection conn = getConnection(settings);
+			try {
+				return callback.execute(conn);
+			} catch (SQLException sqle) {
+				if (!prepareRetry(sqle, conn, attempt)) {
+					throw sqle;
+				}
+			} finally {
 				conn.close();
 			}
 		}
 	}
 
+
+	private boolean prepareRetry(SQLException sqle, Connection conn, int attempt) {
+		SqlErrorClassifier.ErrorType errorType = errorClassifier.classify(sqle);
+		boolean retry = errorType != SqlErrorClassifier.ErrorType.PERMANENT && attempt < maxRetries;
+		if (conn instanceof PooledConnection) {
+			if (retry) {
+				((PooledConnection) conn).registerRetry();
+			}
+			if (errorType == SqlErrorClassifier.ErrorType.CONNECTION) {
+				((PooledConnection) conn).evict();
+			}
+		}
+		if (retry) {
+			System.out.println(new LogEntry(Level.VERBOSE, "retrying statement after " + errorType + " error (attempt " + (attempt + 1) + " of " + maxRetries + "): " + sqle.getMessage()));
+		}
+		return retry;
+	}
+
+
+	//exponential backoff with jitter, so that deadlocked transactions do not collide again
+	private void backOff(int attempt) throws SQLException {
+		long delay = retryBackoff << (attempt - 1);
+		delay += (long) (Math.random() * delay);
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("interrupted while waiting to retry statement");
+		}
+	}
+
 	private Connection getConnection(ConnectionSettings settings) throws SQLException {
 
 		if (dataSource == null) {
@@ -201,65 +357,57 @@ public class StandardJdbcProcessor implements JdbcProcessor {
 
 
 	protected Object executePreparedStatement(String statement, StatementInput input, boolean resolveLOBs, Connection conn) throws SQLException {
+		ConnectionSettings settings = new ConnectionSettings();
+		settings.resolveLobs = resolveLOBs;
+		return executePreparedStatement(statement, input, settings, conn);
+	}
+
+
+	protected Object executePreparedStatement(String statement, StatementInput input, ConnectionSettings settings, Connection conn) throws SQLException {
 		Object result = null;
 		ResultSet rs = null;
-		StringBuffer statementDescription = new StringBuffer(statement);
 
-		for (int i = 0; i < (input.params.length); i++) {
-			if (input.params[i] == null) {
-				if (input.sqlTypes != null) {
-					statementDescription.append("[null(" + input.sqlTypes[i] + ":resolved)]");
-				} else {
+		if (input.sqlTypes == null) {
+			for (int i = 0; i < (input.params.length); i++) {
+				if (input.params[i] == null) {
+					//guess type
 					input.params[i] = new JdbcNullObject(Types.VARCHAR);
-					statementDescription.append("[null(VARCHAR:guessed)]");
 				}
-			} else if (input.params[i] instanceof JdbcNullObject) {
-				statementDescription.append("[null(marked by JdbcNullObject)]");
-			} else {
-				statementDescription.append("[" + input.params[i] + ']');
 			}
 		}
 
 		PreparedStatement ps = null;
+		long start = System.nanoTime();
 
 		try {
-			System.out.println(new LogEntry("executing:" + statementDescription + " using " + (conn.isReadOnly() ? "READ ONLY " : "") + "connection " + conn));
 
 			if (ps instanceof CallableStatement) {
 				ps = conn.prepareCall(statement);
-//				StandardEventTimer.startTimingEvent(deviceId, statement);
 				result = executeStoredProcedure((CallableStatement) ps, input);
-//				StandardEventTimer.stopTimingEvent();
 			} else {
 				ps = conn.prepareStatement(statement);
-//				StandardEventTimer.startTimingEvent(deviceId, statement);
 				result = executePreparedStatement(ps, input);
-//				StandardEventTimer.stopTimingEvent();
 			}
 			if (!input.returnsVoid) {
 				if (result instanceof ResultSet) {
 					rs = (ResultSet) result;
-					result = new ResultSetCopy(rs, maxRowLog, resolveLOBs);
+					if (settings.columnar) {
+						result = new ColumnarResultSetCopy(rs, maxRowLog, settings.resolveLobs);
+					} else {
+						result = new ResultSetCopy(rs, maxRowLog, settings.resolveLobs);
+					}
 					rs.close();
 				}
-				System.out.println(new LogEntry("InvocationResult of database call: " + result));
 			}
-			System.out.println(new LogEntry(result != null ? " (return type: " + result.getClass().getName() + ')' : ""));
+			executed(statement, input.params, result, countRows(result), start);
 			return result;
 		} catch (SQLException sqle) {
-			//some SQL errors occur due to:
-			// -communication problems -> reset connection(pool) / retry
-			// -deadlock or other internal database problems - retry
-			// -error in SQL - forward exception
-			// -database constraint - forward exception
-			//TODO load a list of known exceptions and how to handle them
-			//TODO resetconnection must immediately return the freshly made connection
-			//reset connection, try again, that's it (no list)
-//			StandardEventTimer.abortTimingEvent(sqle.getMessage() + '(' + statementDescription + ')');
+			failed(statement, 0, start);
+			//SQLState is preserved, so that the error can be classified for a retry
 			System.out.println(new LogEntry(sqle));
-			throw new SQLException(sqle.getMessage() + '(' + statementDescription + ')');
+			throw new SQLException(sqle.getMessage() + '(' + sqlTracer.describe(statement, input.params) + ')', sqle.getSQLState(), sqle.getErrorCode(), sqle);
 		} catch (IOException ioe) {
-//			StandardEventTimer.abortTimingEvent("failed to read input stream with message: " + ioe.getMessage() + '(' + statement + ')');
+			failed(statement, 0, start);
 			System.out.println(new LogEntry("failed to read input stream", ioe));
 			throw new SQLException("failed to read input stream with message: " + ioe.getMessage() + '(' + statement + ')');
 		} finally {
@@ -350,6 +498,7 @@ public class StandardJdbcProcessor implements JdbcProcessor {
 	public int[] executeBatchPreparedStatement(String statement, Collection inParamsBatch, boolean isCallable) throws SQLException {
 		Connection conn = null;
 		PreparedStatement ps = null;
+		long start = System.nanoTime();
 
 		try {
 			//read only connections not supported
@@ -365,8 +514,6 @@ public class StandardJdbcProcessor implements JdbcProcessor {
 
 			Iterator x = inParamsBatch.iterator();
 
-			System.out.println(new LogEntry("Executing:" + statement + " for " + inParamsBatch.size() + " input rows"));
-
 			while (x.hasNext()) {
 				Object[] inParams = (Object[]) x.next();
 
@@ -387,8 +534,10 @@ public class StandardJdbcProcessor implements JdbcProcessor {
 			int[] i = ps.executeBatch();
 			//TODO what if execution wasn't successful for all statements?
 			conn.commit();
+			executed(statement, null, inParamsBatch.size() + " input rows", inParamsBatch.size(), start);
 			return i;
 		} catch (SQLException e) {
+			failed(statement, 0, start);
 			StringBuffer sb = new StringBuffer(e.getMessage() + '(' + statement + ")\n\n");
 			Iterator x = inParamsBatch.iterator();
 			while (x.hasNext()) {
@@ -411,6 +560,200 @@ public class StandardJdbcProcessor implements JdbcProcessor {
 		}
 	}
 
+	public int[] executeBatchPreparedStatement(String statement, Collection inParamsBatch, int chunkSize) throws BatchSQLException {
+		return executeInChunks(statement, inParamsBatch, chunkSize, null);
+	}
+
+
+	public Object[] executeBatchInsert(String statement, Collection inParamsBatch, int chunkSize) throws BatchSQLException {
+		Object[] keys = new Object[inParamsBatch.size()];
+		executeInChunks(statement, inParamsBatch, chunkSize, keys);
+		return keys;
+	}
+
+
+	/**
+	 * @param statement
+	 * @param inParamsBatch
+	 * @param chunkSize
+	 * @param keys          receives generated keys if not null
+	 * @return an array containing the number of affected rows per statement
+	 * @throws BatchSQLException
+	 */
+	private int[] executeInChunks(String statement, Collection inParamsBatch, int chunkSize, Object[] keys) throws BatchSQLException {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunk size must be greater than 0");
+		}
+		int[] result = new int[inParamsBatch.size()];
+		int nrofRowsCommitted = 0;
+		int nrofRows = 0;
+		Connection conn = null;
+		PreparedStatement ps = null;
+
+		long start = System.nanoTime();
+		try {
+			//read only connections not supported
+			conn = dataSource.getConnection();
+			conn.setAutoCommit(false);
+			if (keys != null) {
+				ps = conn.prepareStatement(statement, Statement.RETURN_GENERATED_KEYS);
+			} else {
+				ps = conn.prepareStatement(statement);
+			}
+
+			Iterator x = inParamsBatch.iterator();
+			while (x.hasNext()) {
+				nrofRows = 0;
+				while (x.hasNext() && nrofRows < chunkSize) {
+					try {
+						bindParameters(ps, new StatementInput((Object[]) x.next()), 1);
+					} catch (SQLException e) {
+						int rowIndex = nrofRowsCommitted + nrofRows;
+						throw new BatchSQLException("binding row " + rowIndex + " failed: " + e.getMessage(), e, nrofRowsCommitted, new int[]{rowIndex});
+					}
+					ps.addBatch();
+					nrofRows++;
+				}
+				int[] counts = ps.executeBatch();
+				if (keys != null) {
+					readGeneratedKeys(ps, keys, nrofRowsCommitted, nrofRows);
+				}
+				conn.commit();
+				System.arraycopy(counts, 0, result, nrofRowsCommitted, counts.length);
+				nrofRowsCommitted += nrofRows;
+			}
+			executed(statement, null, inParamsBatch.size() + " input rows in chunks of " + chunkSize, inParamsBatch.size(), start);
+			return result;
+		} catch (SQLException e) {
+			failed(statement, nrofRowsCommitted, start);
+			rollback(conn);
+			BatchSQLException bsqle;
+			if (e instanceof BatchSQLException) {
+				bsqle = (BatchSQLException) e;
+			} else {
+				bsqle = new BatchSQLException("batch processing of " + statement + " failed after " + nrofRowsCommitted + " rows: " + e.getMessage(), e, nrofRowsCommitted, getFailedRowIndexes(e, nrofRowsCommitted, nrofRows));
+			}
+			if (keys != null) {
+				bsqle.setGeneratedKeys(Arrays.copyOf(keys, nrofRowsCommitted));
+			}
+			System.out.println(new LogEntry(Level.CRITICAL, bsqle.getMessage(), "failed rows: " + Arrays.toString(bsqle.getFailedRowIndexes())));
+			throw bsqle;
+		} finally {
+			try {
+				if (ps != null) {
+					ps.close();
+				}
+			} catch (SQLException e) {
+				System.out.println(new LogEntry("unable to close statement", e));
+			}
+			try {
+				if (conn != null) {
+					conn.close();
+				}
+			} catch (SQLException e) {
+				System.out.println(new LogEntry("unable to close connection", e));
+			}
+		}
+	}
+
+
+	private static void readGeneratedKeys(PreparedStatement ps, Object[] keys, int offset, int nrofRows) throws SQLException {
+		ResultSet rs = ps.getGeneratedKeys();
+		if (rs == null) {
+			return;
+		}
+		try {
+			for (int i = offset; i < offset + nrofRows && rs.next(); i++) {
+				keys[i] = rs.getObject(1);
+			}
+		} finally {
+			rs.close();
+		}
+	}
+
+
+	public Object executeInsert(final String statement, final StatementInput input) throws SQLException {
+		return executeWithRetry(new ConnectionSettings(), new ConnectionCallback<Object>() {
+			public Object execute(Connection conn) throws SQLException {
+				return executeInsert(statement, input, conn);
+			}
+		});
+	}
+
+
+	private Object executeInsert(String statement, StatementInput input, Connection conn) throws SQLException {
+		PreparedStatement ps = null;
+		long start = System.nanoTime();
+		try {
+			ps = conn.prepareStatement(statement, Statement.RETURN_GENERATED_KEYS);
+			bindParameters(ps, input, 1);
+			ps.executeUpdate();
+			Object[] key = new Object[1];
+			readGeneratedKeys(ps, key, 0, 1);
+			executed(statement, input.params, key[0], 1, start);
+			return key[0];
+		} catch (SQLException sqle) {
+			failed(statement, 0, start);
+			System.out.println(new LogEntry(sqle));
+			throw new SQLException(sqle.getMessage() + '(' + sqlTracer.describe(statement, input.params) + ')', sqle.getSQLState(), sqle.getErrorCode(), sqle);
+		} finally {
+			if (ps != null) {
+				ps.close();
+			}
+		}
+	}
+
+
+	private static void rollback(Connection conn) {
+		if (conn != null) {
+			try {
+				conn.rollback();
+			} catch (SQLException e) {
+				System.out.println(new LogEntry("unable to roll back", e));
+			}
+		}
+	}
+
+
+	/**
+	 * @param e          exception thrown while executing a chunk
+	 * @param chunkStart index of the first row in the chunk
+	 * @param chunkSize  number of rows added to the chunk
+	 * @return indexes of the rows in the chunk that failed, empty if unknown
+	 */
+	private static int[] getFailedRowIndexes(SQLException e, int chunkStart, int chunkSize) {
+		if (!(e instanceof BatchUpdateException) || ((BatchUpdateException) e).getUpdateCounts() == null) {
+			return new int[0];
+		}
+		int[] counts = ((BatchUpdateException) e).getUpdateCounts();
+		int nrofFailures = 0;
+		for (int count : counts) {
+			if (count == Statement.EXECUTE_FAILED) {
+				nrofFailures++;
+			}
+		}
+		if (nrofFailures == 0) {
+			//the driver stopped at the first failure
+			return counts.length < chunkSize ? new int[]{chunkStart + counts.length} : new int[0];
+		}
+		int[] failedRowIndexes = new int[nrofFailures];
+		int j = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == Statement.EXECUTE_FAILED) {
+				failedRowIndexes[j++] = chunkStart + i;
+			}
+		}
+		return failedRowIndexes;
+	}
+
+
+	/**
+	 * @return maximum number of rows per transaction in chunked batches
+	 */
+	protected int getBatchChunkSize() {
+		return batchChunkSize;
+	}
+
 	///////////////
 	//           //
 	//  QUERIES  //
@@ -418,26 +761,89 @@ public class StandardJdbcProcessor implements JdbcProcessor {
 	///////////////
 
 
-	public ResultSetCopy executeQuery(String query) throws SQLException {
-		System.out.println(new LogEntry("executing: " + query));
+	public ResultSetCopy executeQuery(final String query) throws SQLException {
+		//use readonly connection if available
+		return executeWithRetry(new ConnectionSettings().setReadOnly(), new ConnectionCallback<ResultSetCopy>() {
+			public ResultSetCopy execute(Connection conn) throws SQLException {
+				long start = System.nanoTime();
+				try {
+					Statement s = conn.createStatement();
+					ResultSet rs = s.executeQuery(query);
+					ResultSetCopy result = new ResultSetCopy(rs, maxRowLog);
+					rs.close();
+					executed(query, null, result, result.size(), start);
+					return result;
+				} catch (SQLException sqle) {
+					failed(query, 0, start);
+					throw sqle;
+				}
+			}
+		});
+	}
 
-		ResultSetCopy result = null;
 
-		//time execution time
-		Connection conn;
-		//use readonly connection if available
-		if (dataSourceReadOnly != null) {
-			conn = dataSourceReadOnly.getConnection();
-		} else {
-			conn = dataSource.getConnection();
+	public int executeQuery(String query, StatementInput input, RowHandler handler) throws SQLException {
+		return executeQuery(query, input, new ConnectionSettings().setReadOnly(), handler);
+	}
+
+
+	public int executeQuery(String query, StatementInput input, ConnectionSettings settings, RowHandler handler) throws SQLException {
+		long start = System.nanoTime();
+		Connection conn = getConnection(settings);
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		int previousFetchSize = 0;
+		int count = 0;
+		try {
+			//some drivers only fetch rows in chunks within a transaction
+			conn.setAutoCommit(false);
+			ps = conn.prepareStatement(query);
+			previousFetchSize = ps.getFetchSize();
+			ps.setFetchSize(getStreamingFetchSize());
+			bindParameters(ps, input, 1);
+			rs = ps.executeQuery();
+			boolean proceed = true;
+			while (proceed && rs.next()) {
+				count++;
+				proceed = handler.handleRow(rs);
+			}
+			conn.commit();
+		} catch (SQLException sqle) {
+			failed(query, count, start);
+			System.out.println(new LogEntry(sqle));
+			try {
+				conn.rollback();
+			} catch (SQLException e) {
+				System.out.println(new LogEntry("unable to roll back after failed query", e));
+			}
+			throw new SQLException(sqle.getMessage() + '(' + query + ')', sqle.getSQLState(), sqle.getErrorCode(), sqle);
+		} finally {
+			try {
+				if (rs != null) {
+					rs.close();
+				}
+				if (ps != null) {
+					try {
+						//the statement may be cached and reused by ordinary queries
+						ps.setFetchSize(previousFetchSize);
+					} finally {
+						ps.close();
+					}
+				}
+			} finally {
+				conn.close();
+			}
 		}
-		Statement s = conn.createStatement();
-		ResultSet rs = s.executeQuery(query);
-		result = new ResultSetCopy(rs, maxRowLog);
-		rs.close();
-		conn.close();
-		System.out.println(new LogEntry("", result));
-		return result;
+		executed(query, input.params, count + " rows processed", count, start);
+		return count;
+	}
+
+
+	/**
+	 * @return the fetch size to set on statements of which the result is streamed
+	 */
+	protected int getStreamingFetchSize() {
+		return fetchSize;
 	}
 
 	///////////////
@@ -446,16 +852,21 @@ public class StandardJdbcProcessor implements JdbcProcessor {
 	//           //
 	///////////////
 
-	public int executeUpdate(String update) throws SQLException {
-		System.out.println(new LogEntry("executing: " + update));
-
-		//TODO time execution time
-		Connection conn = dataSource.getConnection();
-		Statement s = conn.createStatement();
-		int result = s.executeUpdate(update);
-		conn.close();
-		System.out.println(new LogEntry(result + " rows affected"));
-		return result;
+	public int executeUpdate(final String update) throws SQLException {
+		return executeWithRetry(new ConnectionSettings(), new ConnectionCallback<Integer>() {
+			public Integer execute(Connection conn) throws SQLException {
+				long start = System.nanoTime();
+				try {
+					Statement s = conn.createStatement();
+					int result = s.executeUpdate(update);
+					executed(update, null, result + " rows affected", result, start);
+					return result;
+				} catch (SQLException sqle) {
+					failed(update, 0, start);
+					throw sqle;
+				}
+			}
+		});
 	}
 
 
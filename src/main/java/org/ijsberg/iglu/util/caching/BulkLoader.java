@@ -0,0 +1,35 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.util.caching;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Loads a number of objects in one go on behalf of a cache.
+ */
+public interface BulkLoader<K, V> {
+
+	/**
+	 * @param keys keys of the objects to load
+	 * @return the objects that exist by key; keys that are absent are cached as null
+	 * @throws Exception if loading fails
+	 */
+	Map<K, V> loadAll(Collection<K> keys) throws Exception;
+}
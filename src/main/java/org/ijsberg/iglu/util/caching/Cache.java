@@ -19,10 +19,12 @@
 package org.ijsberg.iglu.util.caching;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Interface for a cache service that stores objects for a certain amount of time.
+ * Keys may not be null.
  */
 public interface Cache<K, V> {
 	/**
@@ -36,6 +38,14 @@ public interface Cache<K, V> {
 	 */
 	void store(K key, V object);
 
+	/**
+	 * Stores a number of objects at once.
+	 *
+	 * @param objects objects to be cached by key
+	 * @see this#store(Object, Object)
+	 */
+	void storeAll(Map<K, V> objects);
+
 	/**
 	 * Nulls may be stored in the cache to indicate that it's
 	 * not possible to retrieve the value elsewhere.
@@ -54,6 +64,30 @@ public interface Cache<K, V> {
 	 */
 	Object retrieve(K key, int timeout);
 
+	/**
+	 * Retrieves an object from cache or loads it if it's not found or expired.
+	 * Concurrent requests for an object that is not cached share a single load.
+	 * The loaded object, which may be null, is stored in the cache.
+	 *
+	 * @param key    the key to retrieve the object by
+	 * @param loader loads the object from the original location
+	 * @return the cached or loaded object
+	 * @throws org.ijsberg.iglu.exception.ResourceException if loading fails
+	 */
+	V get(K key, Loader<K, V> loader);
+
+	/**
+	 * Retrieves a number of objects from cache and loads the ones that are not found
+	 * or expired in a single call. The loaded objects are stored in the cache.
+	 * Keys that the loader does not return an object for are stored as null.
+	 *
+	 * @param keys   the keys to retrieve the objects by
+	 * @param loader loads the objects from the original location
+	 * @return the cached or loaded objects by key, including nulls
+	 * @throws org.ijsberg.iglu.exception.ResourceException if loading fails
+	 */
+	Map<K, V> getAll(Collection<K> keys, BulkLoader<K, V> loader);
+
 
 	/**
 	 * @return a set containing all stored objects
@@ -68,6 +102,14 @@ public interface Cache<K, V> {
 	 */
 	V retrieve(K key);
 
+	/**
+	 * Retrieves a number of objects from cache.
+	 *
+	 * @param keys the keys to retrieve the objects by
+	 * @return the cached objects that are found by key
+	 */
+	Map<K, V> retrieveAll(Collection<K> keys);
+
 	/**
 	 * Removes an object from cache.
 	 *
@@ -86,4 +128,21 @@ public interface Cache<K, V> {
 	 * Removes all objects from cache.
 	 */
 	void clear();
+
+	/**
+	 * @return snapshot of the statistics of this cache
+	 */
+	CacheStatistics getStatistics();
+
+	/**
+	 * Registers a listener for cache events.
+	 *
+	 * @param listener
+	 */
+	void addListener(CacheListener<K, V> listener);
+
+	/**
+	 * @param listener
+	 */
+	void removeListener(CacheListener<K, V> listener);
 }
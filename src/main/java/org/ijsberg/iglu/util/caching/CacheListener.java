@@ -0,0 +1,54 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.util.caching;
+
+/**
+ * Receives events of a cache.
+ * Listeners are invoked synchronously by the thread that causes the event,
+ * so implementations must be fast and safe for use by concurrent threads.
+ */
+public interface CacheListener<K, V> {
+
+	/**
+	 * @param key
+	 * @param object stored object, which may be null
+	 */
+	void onStore(K key, V object);
+
+	/**
+	 * Is invoked if an object is removed explicitly.
+	 *
+	 * @param key
+	 */
+	void onRemoval(K key);
+
+	/**
+	 * Is invoked if an object is evicted to keep the cache within its bounds.
+	 *
+	 * @param key
+	 */
+	void onEviction(K key);
+
+	/**
+	 * Is invoked if an expired object is cleaned up.
+	 *
+	 * @param key
+	 */
+	void onExpiry(K key);
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.util.caching;
+
+import org.ijsberg.iglu.util.statistics.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of cache statistics.
+ */
+public class CacheStatistics {
+
+	private final long size;
+	private final long hits;
+	private final long misses;
+	private final long unavailable;
+	private final long delayedHits;
+	private final long delayedMisses;
+	private final long staleHits;
+	private final long evictions;
+	private final long refreshes;
+	private final long failedRefreshes;
+	private final long failedLoads;
+	private final LatencyHistogram.Snapshot loadLatency;
+
+	public CacheStatistics(long size, long hits, long misses, long unavailable, long delayedHits, long delayedMisses,
+			long staleHits, long evictions, long refreshes, long failedRefreshes, long failedLoads,
+			LatencyHistogram.Snapshot loadLatency) {
+		this.size = size;
+		this.hits = hits;
+		this.misses = misses;
+		this.unavailable = unavailable;
+		this.delayedHits = delayedHits;
+		this.delayedMisses = delayedMisses;
+		this.staleHits = staleHits;
+		this.evictions = evictions;
+		this.refreshes = refreshes;
+		this.failedRefreshes = failedRefreshes;
+		this.failedLoads = failedLoads;
+		this.loadLatency = loadLatency;
+	}
+
+	/**
+	 * @return number of stored objects
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return number of lookups that found a stored null or an object being retrieved
+	 */
+	public long getUnavailable() {
+		return unavailable;
+	}
+
+	/**
+	 * @return number of lookups that obtained an object after waiting for another thread
+	 */
+	public long getDelayedHits() {
+		return delayedHits;
+	}
+
+	/**
+	 * @return number of lookups that waited for another thread in vain
+	 */
+	public long getDelayedMisses() {
+		return delayedMisses;
+	}
+
+	/**
+	 * @return number of expired objects served while being reloaded
+	 */
+	public long getStaleHits() {
+		return staleHits;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return number of completed background loads
+	 */
+	public long getRefreshes() {
+		return refreshes;
+	}
+
+	public long getFailedRefreshes() {
+		return failedRefreshes;
+	}
+
+	public long getFailedLoads() {
+		return failedLoads;
+	}
+
+	/**
+	 * @return ratio of hits to lookups, or 0 if there were no lookups
+	 */
+	public double getHitRatio() {
+		long lookups = hits + staleHits + misses;
+		return lookups == 0 ? 0 : (double) (hits + staleHits) / lookups;
+	}
+
+	/**
+	 * @return durations of loads performed through the cache
+	 */
+	public LatencyHistogram.Snapshot getLoadLatency() {
+		return loadLatency;
+	}
+
+	/**
+	 * @return all values by name, in a form suitable for monitoring systems
+	 */
+	public Map<String, Number> toMap() {
+		Map<String, Number> result = new LinkedHashMap<String, Number>();
+		result.put("size", size);
+		result.put("hits", hits);
+		result.put("misses", misses);
+		result.put("unavailable", unavailable);
+		result.put("delayed_hits", delayedHits);
+		result.put("delayed_misses", delayedMisses);
+		result.put("stale_hits", staleHits);
+		result.put("evictions", evictions);
+		result.put("refreshes", refreshes);
+		result.put("failed_refreshes", failedRefreshes);
+		result.put("failed_loads", failedLoads);
+		result.put("hit_ratio", getHitRatio());
+		result.putAll(loadLatency.toMap("load_latency_"));
+		return result;
+	}
+
+	public String toString() {
+		return "cache statistics " + toMap();
+	}
+}
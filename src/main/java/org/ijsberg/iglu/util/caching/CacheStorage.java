@@ -0,0 +1,98 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.util.caching;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Storage engine behind a cache.
+ * Expiry metadata is kept inline in the stored CachedObject,
+ * so a storage only needs to map keys to cached objects.
+ * Implementations must be safe for use by concurrent threads.
+ * They are not required to accept null keys.
+ */
+public interface CacheStorage<K, V> {
+
+	/**
+	 * @param key
+	 * @return the cached object stored under key or null if absent
+	 */
+	CachedObject<V> get(K key);
+
+	/**
+	 * Looks up a number of keys at once.
+	 *
+	 * @param keys
+	 * @return the cached objects found by key
+	 */
+	Map<K, CachedObject<V>> getAll(Collection<K> keys);
+
+	/**
+	 * @param key
+	 * @param cachedObject
+	 * @return the cached object previously stored under key or null
+	 */
+	CachedObject<V> put(K key, CachedObject<V> cachedObject);
+
+	/**
+	 * @param key
+	 * @param cachedObject
+	 * @return the cached object currently stored under key, or null if cachedObject was stored
+	 */
+	CachedObject<V> putIfAbsent(K key, CachedObject<V> cachedObject);
+
+	/**
+	 * Stores a number of cached objects at once.
+	 *
+	 * @param cachedObjects
+	 * @return the cached objects previously stored by key
+	 */
+	Map<K, CachedObject<V>> putAll(Map<K, CachedObject<V>> cachedObjects);
+
+	/**
+	 * @param key
+	 * @return the removed cached object or null if absent
+	 */
+	CachedObject<V> remove(K key);
+
+	/**
+	 * Removes the entry only if key is still mapped to the given cached object.
+	 *
+	 * @param key
+	 * @param cachedObject
+	 * @return true if the entry was removed
+	 */
+	boolean remove(K key, CachedObject<V> cachedObject);
+
+	/**
+	 * @return a weakly consistent view or a snapshot of all entries, which may be iterated without blocking writers
+	 */
+	Collection<Map.Entry<K, CachedObject<V>>> entries();
+
+	/**
+	 * @return number of stored entries
+	 */
+	int size();
+
+	/**
+	 * Removes all entries.
+	 */
+	void clear();
+}
@@ -26,10 +26,11 @@ import java.io.Serializable;
  */
 
 public class CachedObject<T> implements Serializable {
-	private long lastTimeAccessed;
-	private long timeoutStartTime;
-	private T cachedObject;
-	private boolean isBeingRetrieved;
+	//volatile, since cached objects are shared by threads without locking
+	private volatile long lastTimeAccessed;
+	private volatile long timeoutStartTime;
+	private volatile T cachedObject;
+	private volatile boolean isBeingRetrieved;
 
 
 	public CachedObject() {
@@ -49,11 +50,18 @@ public class CachedObject<T> implements Serializable {
 		return cachedObject;
 	}
 
-	public Object setObject(T object) {
+	/**
+	 * Stores the object and wakes up threads that await its retrieval.
+	 *
+	 * @param object
+	 * @return the object
+	 */
+	public synchronized Object setObject(T object) {
 		timeoutStartTime = System.currentTimeMillis();
 		lastTimeAccessed = System.currentTimeMillis();
 		this.cachedObject = object;
 		isBeingRetrieved = false;
+		notifyAll();
 		return cachedObject;
 	}
 
@@ -64,6 +72,13 @@ public class CachedObject<T> implements Serializable {
 		return lastTimeAccessed;
 	}
 
+	/**
+	 * @return the time the wrapped object was stored or the retrieval state was set (in milliseconds since january 1st 1970)
+	 */
+	public long getTimeoutStartTime() {
+		return timeoutStartTime;
+	}
+
 	/**
 	 * @param timeoutInMillis time in milliseconds after which the object must be considered to be expired
 	 * @return true if the object's cache time is expired
@@ -89,6 +104,20 @@ public class CachedObject<T> implements Serializable {
 		this.isBeingRetrieved = true;
 	}
 
+	/**
+	 * Waits until some other thread has retrieved the object
+	 * or until the retrieval state has lasted for the given timeout.
+	 *
+	 * @param timeoutInMillis maximum duration of the retrieval state in milliseconds
+	 * @throws InterruptedException
+	 */
+	public synchronized void awaitRetrieval(int timeoutInMillis) throws InterruptedException {
+		long timeLeft;
+		while (isBeingRetrieved && (timeLeft = timeoutStartTime + timeoutInMillis - System.currentTimeMillis()) > 0) {
+			wait(timeLeft);
+		}
+	}
+
 	/**
 	 * @return description containg the toString()-result of the cached object
 	 */
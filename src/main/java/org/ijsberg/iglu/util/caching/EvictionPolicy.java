@@ -0,0 +1,84 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.util.caching;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which entries to evict from a cache that is bounded in size.
+ * The size of a cache is expressed as the total weight of its entries.
+ * If all entries weigh 1, the maximum weight is the maximum number of entries.
+ * <p/>
+ * Implementations must be safe for use by concurrent threads.
+ */
+public interface EvictionPolicy<K> {
+
+	/**
+	 * @param maximumWeight maximum total weight of all entries
+	 */
+	void setMaximumWeight(long maximumWeight);
+
+	/**
+	 * @return maximum total weight of all entries
+	 */
+	long getMaximumWeight();
+
+	/**
+	 * @return total weight of the entries currently tracked
+	 */
+	long getTotalWeight();
+
+	/**
+	 * Registers a cache hit.
+	 * This method is invoked on the read path and must not block.
+	 *
+	 * @param key
+	 */
+	void recordAccess(K key);
+
+	/**
+	 * Registers an entry that was stored or replaced.
+	 *
+	 * @param key
+	 * @param weight weight of the stored entry
+	 * @return keys of entries that must be evicted to stay within bounds, possibly including key itself
+	 */
+	List<K> recordStore(K key, int weight);
+
+	/**
+	 * Registers a number of entries that were stored or replaced.
+	 *
+	 * @param weights weights of the stored entries by key
+	 * @return keys of entries that must be evicted to stay within bounds, possibly including stored keys
+	 */
+	List<K> recordStores(Map<K, Integer> weights);
+
+	/**
+	 * Registers an entry that was removed from the cache.
+	 *
+	 * @param key
+	 */
+	void recordRemoval(K key);
+
+	/**
+	 * Forgets all entries.
+	 */
+	void clear();
+}
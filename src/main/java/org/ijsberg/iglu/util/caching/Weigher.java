@@ -0,0 +1,33 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.util.caching;
+
+/**
+ * Determines the weight of a cache entry for caches that are bounded by weight.
+ * Entries are weighed once their value is known, not while the value is being loaded.
+ */
+public interface Weigher<K, V> {
+
+	/**
+	 * @param key
+	 * @param value cached value, which is null if a null is stored to indicate that there is no value
+	 * @return weight of the entry, 1 or more
+	 */
+	int getWeight(K key, V value);
+}
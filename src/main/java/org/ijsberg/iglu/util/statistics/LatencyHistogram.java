@@ -0,0 +1,184 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.util.statistics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in microseconds that can be updated concurrently without locking.
+ * <p/>
+ * Every power of two is split into 4 buckets, so that percentiles are
+ * reported with an error of at most 25%, using a fixed amount of memory.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	//durations over 2^40 microseconds (about 12 days) end up in the last bucket
+	private static final int MAX_EXPONENT = 40;
+	private static final int NROF_BUCKETS = SUB_BUCKETS * MAX_EXPONENT;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(NROF_BUCKETS);
+	private final StripedCounter count = new StripedCounter();
+	private final StripedCounter total = new StripedCounter();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos duration in nanoseconds, as measured by System.nanoTime()
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		buckets.getAndIncrement(getBucketIndex(micros));
+		count.increment();
+		total.add(micros);
+		long currentMax;
+		while (micros > (currentMax = max.get()) && !max.compareAndSet(currentMax, micros)) {
+		}
+	}
+
+	static int getBucketIndex(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent >= MAX_EXPONENT) {
+			return NROF_BUCKETS - 1;
+		}
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + subBucket;
+	}
+
+	static long getBucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+		return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	/**
+	 * @return current state of the histogram
+	 */
+	public Snapshot getSnapshot() {
+		long[] counts = new long[NROF_BUCKETS];
+		long nrofValues = 0;
+		for (int i = 0; i < NROF_BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			nrofValues += counts[i];
+		}
+		return new Snapshot(counts, nrofValues, total.get(), max.get());
+	}
+
+	/**
+	 * Clears the histogram. Concurrent updates may get lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < NROF_BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		total.reset();
+		max.set(0);
+	}
+
+	/**
+	 * @return number of recorded durations
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Immutable state of a histogram.
+	 */
+	public static class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+		private final long total;
+		private final long max;
+
+		private Snapshot(long[] counts, long count, long total, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.total = total;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return mean duration in microseconds
+		 */
+		public long getMean() {
+			return count == 0 ? 0 : total / count;
+		}
+
+		/**
+		 * @return maximum duration in microseconds
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @param percentile value between 0 and 100
+		 * @return duration in microseconds that the given percentage of the durations does not exceed
+		 */
+		public long getPercentile(double percentile) {
+			long threshold = (long) Math.ceil(count * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= threshold && seen > 0) {
+					return Math.min(getBucketUpperBound(i), max);
+				}
+			}
+			return max;
+		}
+
+		/**
+		 * @param prefix prefix for the names of the values
+		 * @return count, mean, max and common percentiles in microseconds by name
+		 */
+		public Map<String, Long> toMap(String prefix) {
+			Map<String, Long> result = new LinkedHashMap<String, Long>();
+			result.put(prefix + "count", count);
+			result.put(prefix + "mean_us", getMean());
+			result.put(prefix + "p50_us", getPercentile(50));
+			result.put(prefix + "p90_us", getPercentile(90));
+			result.put(prefix + "p99_us", getPercentile(99));
+			result.put(prefix + "max_us", max);
+			return result;
+		}
+
+		public String toString() {
+			return "count: " + count + ", mean: " + getMean() + " us, p50: " + getPercentile(50) +
+					" us, p99: " + getPercentile(99) + " us, max: " + max + " us";
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.util.statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that can be incremented by many threads concurrently with little contention.
+ * <p/>
+ * Increments are spread over a number of cells, each on its own cache line.
+ * A thread always uses the same cell. The value of the counter is the sum of all cells.
+ */
+public class StripedCounter {
+
+	//a cell takes a cache line of 64 bytes to prevent false sharing
+	private static final int PADDING = 8;
+
+	private final AtomicLongArray cells;
+	private final int mask;
+
+	/**
+	 * Creates a counter with a number of cells based on the number of processors.
+	 */
+	public StripedCounter() {
+		int nrofCells = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2) - 1) << 1;
+		cells = new AtomicLongArray(nrofCells * PADDING);
+		mask = nrofCells - 1;
+	}
+
+	private int getCellIndex() {
+		long id = Thread.currentThread().getId();
+		//spread sequential thread ids
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return ((hash ^ (hash >>> 16)) & mask) * PADDING;
+	}
+
+	public void increment() {
+		cells.getAndIncrement(getCellIndex());
+	}
+
+	/**
+	 * @param delta
+	 */
+	public void add(long delta) {
+		cells.getAndAdd(getCellIndex(), delta);
+	}
+
+	/**
+	 * @return sum of all increments; concurrent increments may or may not be included
+	 */
+	public long get() {
+		long sum = 0;
+		for (int i = 0; i < cells.length(); i += PADDING) {
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+
+	/**
+	 * Sets the counter to 0. Concurrent increments may get lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < cells.length(); i += PADDING) {
+			cells.set(i, 0);
+		}
+	}
+
+	public String toString() {
+		return "" + get();
+	}
+}
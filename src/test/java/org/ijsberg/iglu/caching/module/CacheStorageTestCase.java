@@ -0,0 +1,158 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.caching.module;
+
+import org.ijsberg.iglu.util.caching.CacheStorage;
+import org.ijsberg.iglu.util.caching.CachedObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Behaviour every CacheStorage implementation must have.
+ */
+public abstract class CacheStorageTestCase {
+
+	private CacheStorage<String, String> storage;
+
+	protected abstract CacheStorage<String, String> createStorage();
+
+	@Before
+	public void setUp() {
+		storage = createStorage();
+	}
+
+	@Test
+	public void testGetAndPut() throws Exception {
+		CachedObject<String> a = new CachedObject<String>("A");
+		CachedObject<String> b = new CachedObject<String>("B");
+
+		assertNull(storage.get("a"));
+		assertNull(storage.put("a", a));
+		assertSame(a, storage.get("a"));
+		assertSame(a, storage.put("a", b));
+		assertSame(b, storage.get("a"));
+		assertEquals(1, storage.size());
+	}
+
+	@Test
+	public void testGetAll() throws Exception {
+		CachedObject<String> a = new CachedObject<String>("A");
+		CachedObject<String> b = new CachedObject<String>("B");
+		storage.put("a", a);
+		storage.put("b", b);
+
+		Map<String, CachedObject<String>> found = storage.getAll(Arrays.asList("a", "b", "c"));
+		assertEquals(2, found.size());
+		assertSame(a, found.get("a"));
+		assertSame(b, found.get("b"));
+		assertFalse(found.containsKey("c"));
+	}
+
+	@Test
+	public void testPutIfAbsent() throws Exception {
+		CachedObject<String> a = new CachedObject<String>("A");
+		CachedObject<String> b = new CachedObject<String>("B");
+
+		assertNull(storage.putIfAbsent("a", a));
+		assertSame(a, storage.putIfAbsent("a", b));
+		assertSame(a, storage.get("a"));
+	}
+
+	@Test
+	public void testPutAll() throws Exception {
+		CachedObject<String> a = new CachedObject<String>("A");
+		storage.put("a", a);
+
+		Map<String, CachedObject<String>> cachedObjects = new HashMap<String, CachedObject<String>>();
+		cachedObjects.put("a", new CachedObject<String>("A2"));
+		cachedObjects.put("b", new CachedObject<String>("B"));
+		Map<String, CachedObject<String>> previous = storage.putAll(cachedObjects);
+
+		assertEquals(1, previous.size());
+		assertSame(a, previous.get("a"));
+		assertEquals("A2", storage.get("a").getObject());
+		assertEquals("B", storage.get("b").getObject());
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		CachedObject<String> a = new CachedObject<String>("A");
+		storage.put("a", a);
+
+		assertNull(storage.remove("b"));
+		assertSame(a, storage.remove("a"));
+		assertNull(storage.get("a"));
+		assertEquals(0, storage.size());
+	}
+
+	@Test
+	public void testConditionalRemove() throws Exception {
+		CachedObject<String> a = new CachedObject<String>("A");
+		CachedObject<String> b = new CachedObject<String>("B");
+		storage.put("a", a);
+
+		assertFalse(storage.remove("a", b));
+		assertSame(a, storage.get("a"));
+		assertTrue(storage.remove("a", a));
+		assertNull(storage.get("a"));
+	}
+
+	@Test
+	public void testEntries() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			storage.put("" + i, new CachedObject<String>("value " + i));
+		}
+		Set<String> keys = new HashSet<String>();
+		for (Map.Entry<String, CachedObject<String>> entry : storage.entries()) {
+			assertEquals("value " + entry.getKey(), entry.getValue().getObject());
+			keys.add(entry.getKey());
+		}
+		assertEquals(10, keys.size());
+	}
+
+	@Test
+	public void testRemoveWhileIterating() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			storage.put("" + i, new CachedObject<String>("value " + i));
+		}
+		int count = 0;
+		for (Map.Entry<String, CachedObject<String>> entry : storage.entries()) {
+			assertTrue(storage.remove(entry.getKey(), entry.getValue()));
+			count++;
+		}
+		assertEquals(10, count);
+		assertEquals(0, storage.size());
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		storage.put("a", new CachedObject<String>("A"));
+		storage.put("b", new CachedObject<String>("B"));
+		storage.clear();
+
+		assertEquals(0, storage.size());
+		assertNull(storage.get("a"));
+		assertFalse(storage.entries().iterator().hasNext());
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.caching.module;
+
+import org.ijsberg.iglu.util.caching.CachedObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class OffHeapCacheTierTest {
+
+	@Test
+	public void testStoreAndRemove() throws Exception {
+		OffHeapCacheTier<String, String> tier = new OffHeapCacheTier<String, String>(65536, 16384);
+		assertTrue(tier.store("a", new CachedObject<String>("A")));
+		assertEquals(1, tier.size());
+
+		assertNull(tier.remove("b"));
+		assertEquals(1, tier.getMisses());
+		assertEquals("A", tier.remove("a").getObject());
+		assertEquals(1, tier.getHits());
+		assertNull(tier.remove("a"));
+		assertEquals(2, tier.getMisses());
+		assertEquals(0, tier.size());
+	}
+
+	@Test
+	public void testSlabSizeIsReducedToCapacity() throws Exception {
+		OffHeapCacheTier<String, String> tier = new OffHeapCacheTier<String, String>(8192, 4 * 1024 * 1024);
+		assertTrue(tier.getReport().contains("off-heap capacity: 8192 bytes in 2 slabs"));
+		assertTrue(tier.store("a", new CachedObject<String>("A")));
+		assertEquals("A", tier.remove("a").getObject());
+	}
+}
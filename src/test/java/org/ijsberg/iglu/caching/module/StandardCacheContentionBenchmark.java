@@ -0,0 +1,113 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import org.ijsberg.iglu.util.caching.CacheStorage;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures hit-path throughput of StandardCache for the available storage engines
+ * with 1, 8 and 32 concurrent threads.
+ * <p/>
+ * This is not a unit test. Run it by invoking main().
+ */
+public class StandardCacheContentionBenchmark {
+
+	private static final int NROF_KEYS = 1000;
+	private static final long MEASUREMENT_TIME_IN_MS = 2000;
+	private static final int[] NROF_THREADS = {1, 8, 32};
+
+	public static void main(String[] args) throws Exception {
+		for (int nrofThreads : NROF_THREADS) {
+			System.out.println(nrofThreads + " thread(s):");
+			report(new SynchronizedCacheStorage<Integer, String>(), nrofThreads);
+			report(new ConcurrentCacheStorage<Integer, String>(), nrofThreads);
+		}
+	}
+
+	private static void report(CacheStorage<Integer, String> storage, int nrofThreads) throws InterruptedException {
+		//warm up
+		measureHits(storage, nrofThreads, MEASUREMENT_TIME_IN_MS / 4);
+		long hits = measureHits(storage, nrofThreads, MEASUREMENT_TIME_IN_MS);
+		System.out.println("  " + storage + ": " + (hits * 1000 / MEASUREMENT_TIME_IN_MS) + " hits/s");
+	}
+
+	private static long measureHits(CacheStorage<Integer, String> storage, int nrofThreads, final long durationInMs) throws InterruptedException {
+		final StandardCache<Integer, String> cache = new StandardCache<Integer, String>(storage);
+		cache.setProperties(new Properties());
+		cache.start();
+		fill(cache);
+
+		final AtomicLong totalHits = new AtomicLong();
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		Thread[] threads = new Thread[nrofThreads];
+		for (int i = 0; i < nrofThreads; i++) {
+			final int seed = i;
+			threads[i] = new Thread() {
+				public void run() {
+					long hits = 0;
+					int key = seed * 31;
+					try {
+						startSignal.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					long end = System.currentTimeMillis() + durationInMs;
+					while (System.currentTimeMillis() < end) {
+						for (int j = 0; j < 100; j++) {
+							key = (key + 7) % NROF_KEYS;
+							if (cache.retrieve(key) != null) {
+								hits++;
+							}
+						}
+					}
+					totalHits.addAndGet(hits);
+				}
+			};
+			threads[i].start();
+		}
+		startSignal.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		cache.stop();
+		return totalHits.get();
+	}
+
+	private static void fill(StandardCache<Integer, String> cache) {
+		PrintStream out = System.out;
+		//suppress logging of stored objects
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		}));
+		try {
+			for (int i = 0; i < NROF_KEYS; i++) {
+				cache.store(i, "value " + i);
+			}
+		} finally {
+			System.setOut(out);
+		}
+	}
+}
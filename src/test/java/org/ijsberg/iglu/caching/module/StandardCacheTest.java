@@ -0,0 +1,549 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import org.ijsberg.iglu.exception.ResourceException;
+import org.ijsberg.iglu.util.caching.BulkLoader;
+import org.ijsberg.iglu.util.caching.CacheListener;
+import org.ijsberg.iglu.util.caching.CacheStatistics;
+import org.ijsberg.iglu.util.caching.Loader;
+import org.ijsberg.iglu.util.caching.Weigher;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class StandardCacheTest {
+
+	private StandardCache<String, String> createCache(Properties properties) {
+		StandardCache<String, String> cache = new StandardCache<String, String>();
+		cache.setProperties(properties);
+		cache.start();
+		return cache;
+	}
+
+	@Test
+	public void testStoreAndRetrieve() throws Exception {
+		StandardCache<String, String> cache = createCache(new Properties());
+		cache.store("a", "A");
+		assertEquals("A", cache.retrieve("a"));
+		assertNull(cache.retrieve("b"));
+
+		cache.store("b", null);
+		assertTrue(cache.containsStoredNull("b"));
+		cache.clear("a");
+		assertNull(cache.retrieve("a"));
+	}
+
+	@Test
+	public void testCleanup() throws Exception {
+		StandardCache<String, String> cache = new StandardCache<String, String>(1, 60);
+		cache.setProperties(new Properties());
+		cache.start();
+		cache.store("a", "A");
+		assertEquals(0, cache.cleanup());
+		Thread.sleep(2100);
+		cache.store("b", "B");
+		assertEquals(1, cache.cleanup());
+		assertNull(cache.retrieve("a"));
+		assertEquals("B", cache.retrieve("b"));
+	}
+
+	@Test
+	public void testGetLoadsOnce() throws Exception {
+		final StandardCache<String, String> cache = createCache(new Properties());
+		final AtomicInteger nrofLoads = new AtomicInteger();
+		final Loader<String, String> loader = new Loader<String, String>() {
+			public String load(String key) throws Exception {
+				nrofLoads.incrementAndGet();
+				Thread.sleep(200);
+				return key.toUpperCase();
+			}
+		};
+		Thread[] threads = new Thread[10];
+		final String[] results = new String[threads.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					results[index] = cache.get("a", loader);
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(1, nrofLoads.get());
+		for (String result : results) {
+			assertEquals("A", result);
+		}
+		assertEquals("A", cache.get("a", loader));
+		assertEquals(1, nrofLoads.get());
+	}
+
+	@Test
+	public void testGetWithFailingLoader() throws Exception {
+		StandardCache<String, String> cache = createCache(new Properties());
+		try {
+			cache.get("a", new Loader<String, String>() {
+				public String load(String key) throws Exception {
+					throw new IllegalStateException("unavailable");
+				}
+			});
+			fail("ResourceException expected");
+		} catch (ResourceException expected) {
+			assertTrue(expected.getCause() instanceof IllegalStateException);
+		}
+		assertNull(cache.retrieve("a"));
+		assertFalse(cache.containsStoredNull("a"));
+	}
+
+	@Test
+	public void testRetrieveWithTimeoutIsWokenUpByStore() throws Exception {
+		final StandardCache<String, String> cache = createCache(new Properties());
+		//first thread indicates that it's retrieving the object
+		assertNull(cache.retrieve("a", 5000));
+		new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					return;
+				}
+				cache.store("a", "A");
+			}
+		}.start();
+		long start = System.currentTimeMillis();
+		assertEquals("A", cache.retrieve("a", 5000));
+		assertTrue(System.currentTimeMillis() - start < 2000);
+	}
+
+	@Test
+	public void testStaleWhileRevalidate() throws Exception {
+		StandardCache<String, String> cache = new StandardCache<String, String>(1, 60);
+		Properties properties = new Properties();
+		properties.setProperty("stale_while_revalidate", "10");
+		cache.setProperties(properties);
+		cache.start();
+		CountingLoader loader = new CountingLoader();
+
+		assertEquals("a1", cache.get("a", loader));
+		Thread.sleep(1100);
+		//expired, so plain retrieval misses
+		assertNull(cache.retrieve("a"));
+		//stale object is served while it's reloaded
+		assertEquals("a1", cache.get("a", loader));
+		Thread.sleep(200);
+		assertEquals("a2", cache.get("a", loader));
+		assertEquals(2, loader.nrofLoads.get());
+		cache.stop();
+	}
+
+	@Test
+	public void testRefreshAhead() throws Exception {
+		StandardCache<String, String> cache = new StandardCache<String, String>(2, 60);
+		Properties properties = new Properties();
+		properties.setProperty("refresh_ahead_factor", "0.5");
+		cache.setProperties(properties);
+		cache.start();
+		CountingLoader loader = new CountingLoader();
+
+		assertEquals("a1", cache.get("a", loader));
+		assertEquals("a1", cache.get("a", loader));
+		assertEquals(1, loader.nrofLoads.get());
+		Thread.sleep(1100);
+		assertEquals("a1", cache.get("a", loader));
+		Thread.sleep(200);
+		assertEquals("a2", cache.retrieve("a"));
+		assertEquals(2, loader.nrofLoads.get());
+		cache.stop();
+	}
+
+	@Test
+	public void testStopReleasesThreadsWaitingForQueuedRefresh() throws Exception {
+		final StandardCache<String, String> cache = new StandardCache<String, String>(1, 60);
+		Properties properties = new Properties();
+		properties.setProperty("stale_while_revalidate", "10");
+		properties.setProperty("refresh_threads", "1");
+		cache.setProperties(properties);
+		cache.start();
+		final CountDownLatch blockRefresh = new CountDownLatch(1);
+		final CountingLoader loader = new CountingLoader() {
+			public String load(String key) throws Exception {
+				if ("a".equals(key) && nrofLoads.get() > 1) {
+					blockRefresh.await();
+				}
+				return super.load(key);
+			}
+		};
+		try {
+			cache.get("a", loader);
+			cache.get("b", loader);
+			Thread.sleep(1100);
+			//the refresh of a occupies the only refresh thread, the one of b is queued
+			cache.get("a", loader);
+			cache.get("b", loader);
+			cache.clear("b");
+			final List<String> result = Collections.synchronizedList(new ArrayList<String>());
+			Thread waiter = new Thread() {
+				public void run() {
+					//waits for the queued refresh
+					result.add(cache.get("b", loader));
+				}
+			};
+			waiter.setDaemon(true);
+			waiter.start();
+			Thread.sleep(200);
+			cache.stop();
+			waiter.join(2000);
+			assertFalse(waiter.isAlive());
+			assertEquals(1, result.size());
+		} finally {
+			blockRefresh.countDown();
+		}
+	}
+
+	private static class CountingLoader implements Loader<String, String> {
+		final AtomicInteger nrofLoads = new AtomicInteger();
+
+		public String load(String key) throws Exception {
+			return key + nrofLoads.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void testSynchronizedStorage() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("storage", "synchronized");
+		StandardCache<String, String> cache = createCache(properties);
+		cache.store("a", "A");
+		assertEquals("A", cache.retrieve("a"));
+		assertTrue(cache.getReport().contains("synchronized storage"));
+	}
+
+	@Test
+	public void testMaxEntriesLru() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("max_entries", "3");
+		StandardCache<String, String> cache = createCache(properties);
+		cache.store("a", "A");
+		cache.store("b", "B");
+		cache.store("c", "C");
+		//make b the most recently used entry
+		cache.retrieve("a");
+		cache.retrieve("b");
+		cache.store("d", "D");
+
+		assertNull(cache.retrieve("c"));
+		assertEquals("A", cache.retrieve("a"));
+		assertEquals("B", cache.retrieve("b"));
+		assertEquals("D", cache.retrieve("d"));
+		assertEquals(3, cache.retrieveAll().size());
+	}
+
+	@Test
+	public void testMaxEntriesTinyLfu() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("max_entries", "100");
+		properties.setProperty("eviction_policy", "tinylfu");
+		StandardCache<String, String> cache = createCache(properties);
+		for (int i = 0; i < 1000; i++) {
+			cache.store("key" + i, "value" + i);
+		}
+		assertTrue(cache.retrieveAll().size() <= 100);
+	}
+
+	@Test
+	public void testReplacedObjectIsNotRetained() throws Exception {
+		StandardCache<String, String> cache = createCache(new Properties());
+		String value = new String("A");
+		WeakReference<String> reference = new WeakReference<String>(value);
+		cache.store("a", value);
+		cache.store("a", "B");
+		value = null;
+		//the expiry timer of the replaced object must not keep it reachable
+		for (int i = 0; i < 10 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(reference.get());
+		assertEquals("B", cache.retrieve("a"));
+	}
+
+	@Test
+	public void testVictimRemovedMeanwhileIsNotCountedAsEvicted() throws Exception {
+		StandardCache<String, String> cache = createCache(new Properties());
+		cache.setEvictionPolicy(new LruEvictionPolicy<String>(10) {
+			public List<String> recordStore(String key, int weight) {
+				//as if the victim was removed by another thread
+				List<String> victims = new ArrayList<String>(super.recordStore(key, weight));
+				victims.add("removed");
+				return victims;
+			}
+		});
+		cache.store("a", "A");
+		assertEquals(0, cache.getStatistics().getEvictions());
+		assertEquals("A", cache.retrieve("a"));
+	}
+
+	@Test
+	public void testMaxWeight() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("max_weight", "10");
+		StandardCache<String, String> cache = createCache(properties);
+		cache.setWeigher(new Weigher<String, String>() {
+			public int getWeight(String key, String value) {
+				return value != null ? value.length() : 1;
+			}
+		});
+		cache.store("a", "12345");
+		cache.store("b", "12345");
+		cache.store("c", "123");
+
+		assertNull(cache.retrieve("a"));
+		assertEquals("12345", cache.retrieve("b"));
+		assertEquals("123", cache.retrieve("c"));
+	}
+
+	@Test
+	public void testLoadedObjectIsWeighed() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("max_weight", "10");
+		StandardCache<String, String> cache = createCache(properties);
+		final List<String> weighed = new ArrayList<String>();
+		cache.setWeigher(new Weigher<String, String>() {
+			public int getWeight(String key, String value) {
+				weighed.add(value);
+				return value.length();
+			}
+		});
+		assertEquals("12345", cache.get("a", new Loader<String, String>() {
+			public String load(String key) {
+				return "12345";
+			}
+		}));
+		assertEquals(Arrays.asList("12345"), weighed);
+	}
+
+	@Test
+	public void testOffHeapTier() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("max_entries", "2");
+		properties.setProperty("offheap_capacity", "65536");
+		properties.setProperty("offheap_slab_size", "16384");
+		StandardCache<String, String> cache = createCache(properties);
+		cache.store("a", "A");
+		cache.store("b", "B");
+		cache.store("c", "C");
+		assertEquals(2, cache.retrieveAll().size());
+
+		//evicted objects are promoted back from the off-heap tier
+		assertEquals("A", cache.retrieve("a"));
+		assertEquals("B", cache.retrieve("b"));
+		assertEquals("C", cache.retrieve("c"));
+		assertEquals(2, cache.retrieveAll().size());
+
+		cache.clear("a");
+		cache.clear("b");
+		cache.clear("c");
+		assertNull(cache.retrieve("a"));
+		assertNull(cache.retrieve("b"));
+	}
+
+	@Test
+	public void testSnapshotWarmsUpCache() throws Exception {
+		File snapshotFile = File.createTempFile("cache", ".snapshot");
+		snapshotFile.delete();
+		try {
+			Properties properties = new Properties();
+			properties.setProperty("snapshot_file", snapshotFile.getPath());
+			StandardCache<String, String> cache = createCache(properties);
+			cache.store("a", "A");
+			cache.store("b", null);
+			cache.stop();
+			assertTrue(snapshotFile.exists());
+			assertNull(cache.retrieve("a"));
+
+			cache = createCache(properties);
+			for (int i = 0; i < 100 && (cache.retrieve("a") == null || !cache.containsStoredNull("b")); i++) {
+				Thread.sleep(10);
+			}
+			assertEquals("A", cache.retrieve("a"));
+			assertTrue(cache.containsStoredNull("b"));
+			cache.stop();
+		} finally {
+			snapshotFile.delete();
+		}
+	}
+
+	@Test
+	public void testSnapshotSkipsObjectsThatCanNotBeSerialized() throws Exception {
+		File snapshotFile = File.createTempFile("cache", ".snapshot");
+		snapshotFile.delete();
+		try {
+			Properties properties = new Properties();
+			properties.setProperty("snapshot_file", snapshotFile.getPath());
+			StandardCache<String, Object> cache = new StandardCache<String, Object>();
+			cache.setProperties(properties);
+			cache.start();
+			cache.store("a", "A");
+			//serializable list containing an object that is not
+			cache.store("b", new ArrayList<Object>(Collections.singletonList(new Object())));
+			cache.store("c", "C");
+			cache.stop();
+			assertTrue(snapshotFile.exists());
+
+			cache = new StandardCache<String, Object>();
+			cache.setProperties(properties);
+			cache.start();
+			for (int i = 0; i < 100 && (cache.retrieve("a") == null || cache.retrieve("c") == null); i++) {
+				Thread.sleep(10);
+			}
+			assertEquals("A", cache.retrieve("a"));
+			assertEquals("C", cache.retrieve("c"));
+			assertNull(cache.retrieve("b"));
+			cache.stop();
+		} finally {
+			snapshotFile.delete();
+		}
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		StandardCache<String, String> cache = createCache(new Properties());
+		cache.store("a", "A");
+		cache.retrieve("a");
+		cache.retrieve("b");
+		cache.get("c", new Loader<String, String>() {
+			public String load(String key) {
+				return "C";
+			}
+		});
+		CacheStatistics statistics = cache.getStatistics();
+		assertEquals(2, statistics.getSize());
+		assertEquals(1, statistics.getHits());
+		assertEquals(2, statistics.getMisses());
+		assertEquals(1, statistics.getLoadLatency().getCount());
+		assertEquals(Long.valueOf(1), statistics.toMap().get("hits"));
+		assertEquals(Long.valueOf(1), statistics.toMap().get("load_latency_count"));
+
+		cache.stop();
+		assertEquals(0, cache.getStatistics().getHits());
+	}
+
+	@Test
+	public void testStoreAllAndRetrieveAll() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("max_entries", "3");
+		StandardCache<String, String> cache = createCache(properties);
+		Map<String, String> objects = new HashMap<String, String>();
+		objects.put("a", "A");
+		objects.put("b", "B");
+		objects.put("c", null);
+		cache.storeAll(objects);
+		assertTrue(cache.containsStoredNull("c"));
+
+		Map<String, String> retrieved = cache.retrieveAll(Arrays.asList("a", "b", "c", "d"));
+		assertEquals(2, retrieved.size());
+		assertEquals("A", retrieved.get("a"));
+		assertEquals("B", retrieved.get("b"));
+
+		objects.clear();
+		objects.put("d", "D");
+		objects.put("e", "E");
+		cache.storeAll(objects);
+		assertEquals(3, cache.getStatistics().getSize());
+		assertEquals(2, cache.getStatistics().getEvictions());
+	}
+
+	@Test
+	public void testGetAllLoadsMissesInOneCall() throws Exception {
+		StandardCache<String, String> cache = createCache(new Properties());
+		cache.store("a", "A");
+		final List<Collection<String>> calls = new ArrayList<Collection<String>>();
+		BulkLoader<String, String> loader = new BulkLoader<String, String>() {
+			public Map<String, String> loadAll(Collection<String> keys) {
+				calls.add(new ArrayList<String>(keys));
+				Map<String, String> result = new HashMap<String, String>();
+				for (String key : keys) {
+					if (!"x".equals(key)) {
+						result.put(key, key.toUpperCase());
+					}
+				}
+				return result;
+			}
+		};
+		Map<String, String> result = cache.getAll(Arrays.asList("a", "b", "c", "x"), loader);
+		assertEquals(4, result.size());
+		assertEquals("A", result.get("a"));
+		assertEquals("C", result.get("c"));
+		assertNull(result.get("x"));
+		assertTrue(result.containsKey("x"));
+		assertEquals(1, calls.size());
+		assertEquals(Arrays.asList("b", "c", "x"), calls.get(0));
+
+		result = cache.getAll(Arrays.asList("a", "b", "c", "x"), loader);
+		assertEquals("B", result.get("b"));
+		assertTrue(cache.containsStoredNull("x"));
+		assertEquals(1, calls.size());
+	}
+
+	@Test
+	public void testListener() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("max_entries", "1");
+		StandardCache<String, String> cache = createCache(properties);
+		final List<String> events = new ArrayList<String>();
+		CacheListener<String, String> listener = new CacheListener<String, String>() {
+			public void onStore(String key, String object) {
+				events.add("store " + key);
+			}
+
+			public void onRemoval(String key) {
+				events.add("removal " + key);
+			}
+
+			public void onEviction(String key) {
+				events.add("eviction " + key);
+			}
+
+			public void onExpiry(String key) {
+				events.add("expiry " + key);
+			}
+		};
+		cache.addListener(listener);
+		cache.store("a", "A");
+		cache.store("b", "B");
+		cache.clear("b");
+		cache.clear("c");
+		assertEquals(Arrays.asList("store a", "store b", "eviction a", "removal b"), events);
+
+		cache.removeListener(listener);
+		cache.store("c", "C");
+		assertEquals(4, events.size());
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class TimerWheelTest {
+
+	private static final long START = 1000000L * TimerWheel.TICK_IN_MS;
+
+	@Test
+	public void testExpiryAtLevel0() throws Exception {
+		TimerWheel<String> wheel = new TimerWheel<String>(START);
+		wheel.schedule("a", START, START + 5000);
+		wheel.schedule("b", START, START + 10000);
+
+		assertEquals(0, wheel.advance(START + 4999).size());
+		List<TimerWheel.Timer<String>> expired = wheel.advance(START + 5000);
+		assertEquals(1, expired.size());
+		assertEquals("a", expired.get(0).getKey());
+		assertEquals(0, wheel.advance(START + 9000).size());
+		assertEquals(1, wheel.advance(START + 20000).size());
+		assertEquals(0, wheel.advance(START + 30000).size());
+	}
+
+	@Test
+	public void testCascade() throws Exception {
+		TimerWheel<String> wheel = new TimerWheel<String>(START);
+		//15 minutes and 2 days
+		wheel.schedule("a", START, START + 900000);
+		wheel.schedule("b", START, START + 172800000);
+
+		long time = START;
+		int expiredCount = 0;
+		while (time < START + 900000) {
+			time += 60000;
+			List<TimerWheel.Timer<String>> expired = wheel.advance(time);
+			expiredCount += expired.size();
+			if (time < START + 900000) {
+				assertEquals(0, expired.size());
+			}
+		}
+		assertEquals(1, expiredCount);
+		assertEquals(0, wheel.advance(START + 172799000).size());
+		assertEquals(1, wheel.advance(START + 172801000).size());
+	}
+
+	@Test
+	public void testOverdueTimer() throws Exception {
+		TimerWheel<String> wheel = new TimerWheel<String>(START);
+		wheel.schedule("a", START, START - 5000);
+		assertEquals(1, wheel.advance(START + TimerWheel.TICK_IN_MS).size());
+	}
+
+	@Test
+	public void testTimerIsReplaced() throws Exception {
+		TimerWheel<String> wheel = new TimerWheel<String>(START);
+		for (int i = 1; i <= 1000; i++) {
+			wheel.schedule("a", START + i, START + 5000 + i);
+		}
+		assertEquals(0, wheel.advance(START + 5000).size());
+		List<TimerWheel.Timer<String>> expired = wheel.advance(START + 7000);
+		assertEquals(1, expired.size());
+		assertEquals(START + 1000, expired.get(0).getTimeoutStartTime());
+		assertEquals(0, wheel.advance(START + 20000).size());
+	}
+
+	@Test
+	public void testTimerInWheelIsReplaced() throws Exception {
+		TimerWheel<String> wheel = new TimerWheel<String>(START);
+		wheel.schedule("a", START, START + 5000);
+		wheel.schedule("b", START, START + 10000);
+		wheel.advance(START + 1000);
+		//later deadline
+		wheel.schedule("a", START + 3000, START + 8000);
+		//earlier deadline
+		wheel.schedule("b", START + 1000, START + 3000);
+
+		List<TimerWheel.Timer<String>> expired = wheel.advance(START + 3000);
+		assertEquals(1, expired.size());
+		assertEquals("b", expired.get(0).getKey());
+		assertEquals(0, wheel.advance(START + 7000).size());
+		expired = wheel.advance(START + 8000);
+		assertEquals(1, expired.size());
+		assertEquals("a", expired.get(0).getKey());
+		assertEquals(START + 3000, expired.get(0).getTimeoutStartTime());
+		assertEquals(0, wheel.advance(START + 20000).size());
+	}
+
+	@Test
+	public void testScheduleWhileAdvancing() throws Exception {
+		final TimerWheel<Integer> wheel = new TimerWheel<Integer>(START);
+		final long[] time = {START};
+		final ConcurrentHashMap<Integer, Long> deadlines = new ConcurrentHashMap<Integer, Long>();
+		Thread scheduler = new Thread() {
+			public void run() {
+				int i = 0;
+				long now;
+				//schedule while the wheel advances 300 seconds
+				while ((now = getTime(time)) < START + 300000) {
+					for (int j = 0; j < 20; j++) {
+						long deadline = now + (i % 200) * 1000 + i % 1000;
+						deadlines.put(i, deadline);
+						wheel.schedule(i++, now, deadline);
+					}
+					Thread.yield();
+				}
+			}
+		};
+		scheduler.start();
+		int expiredCount = 0;
+		while (getTime(time) < START + 600000) {
+			if (getTime(time) < START + 300000) {
+				Thread.sleep(1);
+			}
+			long now = getTime(time) + 1000;
+			synchronized (time) {
+				time[0] = now;
+			}
+			for (TimerWheel.Timer<Integer> timer : wheel.advance(now)) {
+				long deadline = deadlines.get(timer.getKey());
+				assertTrue("timer expired early", deadline <= now);
+				//at most one tick of waiting in the queue plus one tick of resolution
+				assertTrue("timer expired " + (now - deadline) + " ms late", now - deadline <= 2 * TimerWheel.TICK_IN_MS);
+				expiredCount++;
+			}
+		}
+		scheduler.join();
+		assertTrue(deadlines.size() > 0);
+		assertEquals(deadlines.size(), expiredCount);
+	}
+
+	private static long getTime(long[] time) {
+		synchronized (time) {
+			return time[0];
+		}
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		TimerWheel<String> wheel = new TimerWheel<String>(START);
+		wheel.schedule("a", START, START + 5000);
+		wheel.clear();
+		assertEquals(0, wheel.advance(START + 10000).size());
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.caching.module;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class TinyLfuEvictionPolicyTest {
+
+	@Test
+	public void testTotalWeightStaysWithinBounds() throws Exception {
+		TinyLfuEvictionPolicy<Integer> policy = new TinyLfuEvictionPolicy<Integer>(50);
+		Set<Integer> present = new HashSet<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			present.add(i % 200);
+			present.removeAll(policy.recordStore(i % 200, 1));
+			assertTrue(policy.getTotalWeight() <= 50);
+		}
+		assertEquals(present.size(), policy.getTotalWeight());
+	}
+
+	@Test
+	public void testFrequentlyUsedEntriesSurviveScan() throws Exception {
+		TinyLfuEvictionPolicy<Integer> policy = new TinyLfuEvictionPolicy<Integer>(100);
+		Set<Integer> present = new HashSet<Integer>();
+		for (int i = 0; i < 10; i++) {
+			present.add(i);
+			policy.recordStore(i, 1);
+		}
+		for (int j = 0; j < 10; j++) {
+			for (int i = 0; i < 10; i++) {
+				//stores are applied right away, accesses are buffered
+				policy.recordStore(i, 1);
+			}
+		}
+		//scan of entries that are used only once
+		for (int i = 1000; i < 2000; i++) {
+			present.add(i);
+			List<Integer> evicted = policy.recordStore(i, 1);
+			present.removeAll(evicted);
+		}
+		for (int i = 0; i < 10; i++) {
+			assertTrue("hot entry " + i + " evicted", present.contains(i));
+		}
+	}
+
+	@Test
+	public void testSketchIsSizedToNumberOfEntries() throws Exception {
+		//bounded by weight in bytes
+		TinyLfuEvictionPolicy<Integer> policy = new TinyLfuEvictionPolicy<Integer>(1L << 30);
+		assertEquals(1024, policy.getSketchSize());
+		for (int i = 0; i < 3000; i++) {
+			policy.recordStore(i, 10000);
+		}
+		assertEquals(4096, policy.getSketchSize());
+	}
+
+	@Test
+	public void testRemoval() throws Exception {
+		TinyLfuEvictionPolicy<Integer> policy = new TinyLfuEvictionPolicy<Integer>(10);
+		policy.recordStore(1, 3);
+		policy.recordStore(2, 4);
+		assertEquals(7, policy.getTotalWeight());
+		policy.recordRemoval(1);
+		assertEquals(4, policy.getTotalWeight());
+		policy.clear();
+		assertEquals(0, policy.getTotalWeight());
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database;
+
+import org.ijsberg.iglu.database.component.StubDriver;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class ColumnarResultSetCopyTest {
+
+	private static final int NROF_ROWS = 1000;
+
+	@Test
+	public void testSameContentsAsResultSetCopy() throws Exception {
+		ResultSetCopy rowCopy = new ResultSetCopy(StubDriver.createResultSet(null, NROF_ROWS), 10);
+		ResultSetCopy columnarCopy = new ColumnarResultSetCopy(StubDriver.createResultSet(null, NROF_ROWS), 10);
+
+		assertEquals(NROF_ROWS, columnarCopy.size());
+		assertEquals(3, columnarCopy.getColCount());
+		assertTrue(Arrays.equals(rowCopy.getColumnNames(), columnarCopy.getColumnNames()));
+		assertEquals(rowCopy.getDescription(), columnarCopy.getDescription());
+		assertEquals(rowCopy.toString(), columnarCopy.toString());
+
+		int count = 0;
+		while (rowCopy.next()) {
+			assertTrue(columnarCopy.next());
+			count++;
+			assertTrue(Arrays.equals(rowCopy.getRow(), columnarCopy.getRow()));
+			for (int i = 1; i <= 3; i++) {
+				assertEquals(rowCopy.getObject(i), columnarCopy.getObject(i));
+				assertEquals(rowCopy.isNull(i), columnarCopy.isNull(i));
+			}
+			assertEquals(Integer.valueOf(count), columnarCopy.getInt("id"));
+			assertEquals(Long.valueOf(count), columnarCopy.getLong("ID"));
+			assertEquals(Long.valueOf(count * 1000000000L), columnarCopy.getLong("amount"));
+			assertEquals(rowCopy.getString("name"), columnarCopy.getString("name"));
+			assertEquals(rowCopy.rowToProperties(), columnarCopy.rowToProperties());
+		}
+		assertFalse(columnarCopy.next());
+		assertEquals(NROF_ROWS, count);
+		//the last row stays current
+		assertNull(columnarCopy.getString("name"));
+
+		columnarCopy.reset();
+		assertTrue(columnarCopy.next());
+		assertEquals(1, columnarCopy.getObject("id"));
+	}
+
+	@Test
+	public void testRetrieveBeforeNext() throws Exception {
+		ResultSetCopy columnarCopy = new ColumnarResultSetCopy(StubDriver.createResultSet(null, 0), 10);
+		assertEquals(0, columnarCopy.size());
+		assertFalse(columnarCopy.next());
+		assertNull(columnarCopy.getRow());
+		try {
+			columnarCopy.getObject(1);
+			fail();
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test
+	public void testSerialize() throws Exception {
+		ResultSetCopy columnarCopy = new ColumnarResultSetCopy(StubDriver.createResultSet(null, NROF_ROWS), 10);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(columnarCopy);
+		out.close();
+		ResultSetCopy copy = (ResultSetCopy) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+		assertEquals(columnarCopy.toString(), copy.toString());
+		while (columnarCopy.next()) {
+			assertTrue(copy.next());
+			assertTrue(Arrays.equals(columnarCopy.getRow(), copy.getRow()));
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database;
+
+import org.ijsberg.iglu.configuration.ConfigurationException;
+import org.ijsberg.iglu.database.component.StubDriver;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class RecordMappingTest {
+
+	public static class Record implements DataObject {
+		private int id;
+		private String name = "unknown";
+		private long amount;
+
+		public RecordMapper getMapper() {
+			return null;
+		}
+
+		public void setField(Field field, Object value) throws IllegalAccessException {
+			field.set(this, value);
+		}
+
+		public Object getField(Field field) throws IllegalAccessException {
+			return field.get(this);
+		}
+	}
+
+	public static class SubRecord extends Record {
+		private Long total;
+	}
+
+	private static Properties createMapping() {
+		Properties mapping = new Properties();
+		mapping.setProperty("id", "id");
+		mapping.setProperty("name", "name");
+		mapping.setProperty("amount", "amount");
+		return mapping;
+	}
+
+	@Test
+	public void testMapResultSetCopy() throws Exception {
+		ResultSetCopy copy = new ResultSetCopy(StubDriver.createResultSet(null, 20), 10);
+		List<Record> records = RecordMapping.getInstance(Record.class, createMapping()).mapAll(copy);
+		assertEquals(20, records.size());
+		for (int i = 0; i < 20; i++) {
+			Record record = records.get(i);
+			assertEquals(i + 1, record.id);
+			assertEquals((i + 1) * 1000000000L, record.amount);
+			if ((i + 1) % 10 == 0) {
+				//null values are not mapped
+				assertEquals("unknown", record.name);
+			} else {
+				assertEquals("name" + ((i + 1) % 7), record.name);
+			}
+		}
+	}
+
+	@Test
+	public void testMapResultSetOntoSubclass() throws Exception {
+		Properties mapping = createMapping();
+		//converts BIGINT into int and INTEGER into Long
+		mapping.setProperty("id", "AMOUNT");
+		mapping.setProperty("total", "ID");
+		List<SubRecord> records = RecordMapping.getInstance(SubRecord.class, mapping).mapAll(StubDriver.createResultSet(null, 2));
+		assertEquals(2, records.size());
+		assertEquals((int) 2000000000L, ((Record) records.get(1)).id);
+		assertEquals(Long.valueOf(2), records.get(1).total);
+	}
+
+	@Test
+	public void testMappingIsShared() throws Exception {
+		assertSame(RecordMapping.getInstance(Record.class, createMapping()), RecordMapping.getInstance(Record.class, createMapping()));
+		Properties mapping = createMapping();
+		mapping.remove("amount");
+		assertNotSame(RecordMapping.getInstance(Record.class, createMapping()), RecordMapping.getInstance(Record.class, mapping));
+	}
+
+	@Test
+	public void testMissingField() throws Exception {
+		Properties mapping = createMapping();
+		mapping.setProperty("total", "id");
+		try {
+			RecordMapping.getInstance(Record.class, mapping);
+			fail();
+		} catch (ConfigurationException expected) {
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database;
+
+import org.ijsberg.iglu.logging.Level;
+import org.junit.Test;
+
+import java.sql.Types;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class SqlTracerTest {
+
+	private static SqlTracer createTracer(String level, String redaction) {
+		SqlTracer tracer = new SqlTracer();
+		Properties properties = new Properties();
+		properties.setProperty("sql_trace_level", level);
+		properties.setProperty("sql_trace_redaction", redaction);
+		tracer.setProperties(properties);
+		return tracer;
+	}
+
+	@Test
+	public void testDescribe() throws Exception {
+		Object[] params = new Object[]{"secret", 42, Boolean.TRUE, null, new JdbcNullObject(Types.INTEGER)};
+
+		SqlTracer tracer = createTracer("DEBUG", SqlTracer.REDACT_NONE);
+		assertEquals("select * from T", tracer.describe("select * from T", null));
+		assertEquals("insert into T values(?,?,?,?,?)[secret][42][true][null][null(" + Types.INTEGER + ")]",
+				tracer.describe("insert into T values(?,?,?,?,?)", params));
+
+		tracer = createTracer("DEBUG", SqlTracer.REDACT_TEXT);
+		assertEquals("insert into T values(?,?,?,?,?)[***][42][true][null][null(" + Types.INTEGER + ")]",
+				tracer.describe("insert into T values(?,?,?,?,?)", params));
+
+		tracer = createTracer("DEBUG", SqlTracer.REDACT_ALL);
+		assertEquals("insert into T values(?,?,?,?,?)[***][***][***][null][null(" + Types.INTEGER + ")]",
+				tracer.describe("insert into T values(?,?,?,?,?)", params));
+	}
+
+	@Test
+	public void testLongParameterIsTruncated() throws Exception {
+		StringBuffer value = new StringBuffer();
+		for (int i = 0; i < 200; i++) {
+			value.append('x');
+		}
+		String description = new SqlTracer().describe("?", new Object[]{value.toString()});
+		assertEquals(1 + 1 + 100 + 3 + 1, description.length());
+	}
+
+	@Test
+	public void testIsTracing() throws Exception {
+		SqlTracer tracer = new SqlTracer();
+		assertTrue(tracer.isTracing(Level.CRITICAL));
+		assertFalse(tracer.isTracing(Level.VERBOSE));
+
+		tracer = createTracer("verbose", SqlTracer.REDACT_NONE);
+		assertTrue(tracer.isTracing(Level.CRITICAL));
+		assertTrue(tracer.isTracing(Level.VERBOSE));
+		assertFalse(tracer.isTracing(Level.DEBUG));
+
+		tracer = createTracer("OFF", SqlTracer.REDACT_NONE);
+		assertFalse(tracer.isTracing(Level.CRITICAL));
+	}
+
+	@Test
+	public void testSlowStatementsAreCounted() throws Exception {
+		SqlTracer tracer = createTracer("OFF", SqlTracer.REDACT_NONE);
+		tracer.trace("select 1", null, null, System.nanoTime());
+		assertEquals(0, tracer.getNrofSlowStatements());
+
+		tracer.trace("select 1", null, null, System.nanoTime() - 2000 * 1000000L);
+		assertEquals(1, tracer.getNrofSlowStatements());
+
+		Properties properties = new Properties();
+		properties.setProperty("sql_slow_threshold", "0");
+		tracer.setProperties(properties);
+		tracer.trace("select 1", null, null, System.nanoTime() - 2000 * 1000000L);
+		assertEquals(1, tracer.getNrofSlowStatements());
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class StandardSqlErrorClassifierTest {
+
+	@Test
+	public void testClassify() throws Exception {
+		StandardSqlErrorClassifier classifier = new StandardSqlErrorClassifier();
+		assertEquals(SqlErrorClassifier.ErrorType.CONNECTION, classifier.classify(new SQLException("link failure", "08S01")));
+		assertEquals(SqlErrorClassifier.ErrorType.CONNECTION, classifier.classify(new SQLRecoverableException("gone")));
+		assertEquals(SqlErrorClassifier.ErrorType.TRANSIENT, classifier.classify(new SQLException("deadlock", "40P01")));
+		assertEquals(SqlErrorClassifier.ErrorType.TRANSIENT, classifier.classify(new SQLTransactionRollbackException("rolled back")));
+		assertEquals(SqlErrorClassifier.ErrorType.TRANSIENT, classifier.classify(new SQLException("deadlock", "HY000", 1213)));
+		assertEquals(SqlErrorClassifier.ErrorType.PERMANENT, classifier.classify(new SQLException("duplicate key", "23000", 1062)));
+		assertEquals(SqlErrorClassifier.ErrorType.PERMANENT, classifier.classify(new SQLException("timeout", "HYT00")));
+		assertEquals(SqlErrorClassifier.ErrorType.PERMANENT, classifier.classify(new SQLException("unknown")));
+	}
+
+	@Test
+	public void testClassifyCause() throws Exception {
+		StandardSqlErrorClassifier classifier = new StandardSqlErrorClassifier();
+		SQLException wrapped = new SQLException("statement failed", null, new SQLException("link failure", "08006"));
+		assertEquals(SqlErrorClassifier.ErrorType.CONNECTION, classifier.classify(wrapped));
+
+		SQLException chained = new SQLException("batch failed");
+		chained.setNextException(new SQLException("deadlock", "40001"));
+		assertEquals(SqlErrorClassifier.ErrorType.TRANSIENT, classifier.classify(chained));
+	}
+
+	@Test
+	public void testSetProperties() throws Exception {
+		StandardSqlErrorClassifier classifier = new StandardSqlErrorClassifier();
+		Properties properties = new Properties();
+		properties.setProperty("transient_sql_states", "HYT00, 40");
+		properties.setProperty("transient_error_codes", "");
+		classifier.setProperties(properties);
+		assertEquals(SqlErrorClassifier.ErrorType.TRANSIENT, classifier.classify(new SQLException("timeout", "HYT00")));
+		assertEquals(SqlErrorClassifier.ErrorType.PERMANENT, classifier.classify(new SQLException("deadlock", "HY000", 1213)));
+		assertEquals(SqlErrorClassifier.ErrorType.CONNECTION, classifier.classify(new SQLException("link failure", "08S01")));
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class StatementMonitorTest {
+
+	@Test
+	public void testNormalize() throws Exception {
+		assertEquals("SELECT * FROM test WHERE id = ?", StatementMonitor.normalize("SELECT *\n\tFROM test   WHERE id = 12"));
+		assertEquals("SELECT * FROM test WHERE name = ? AND amount > ?", StatementMonitor.normalize("SELECT * FROM test WHERE name = 'O''Brien' AND amount > 1.5"));
+		assertEquals("SELECT * FROM test2 WHERE id IN (?)", StatementMonitor.normalize("SELECT * FROM test2 WHERE id IN (1, 2, 3)"));
+		assertEquals("SELECT * FROM test2 WHERE id IN (?)", StatementMonitor.normalize("SELECT * FROM test2 WHERE id IN (?,?)"));
+		assertEquals("UPDATE test SET a = ?, b = ?", StatementMonitor.normalize("UPDATE test SET a = 'x', b = ?"));
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		StatementMonitor monitor = new StatementMonitor();
+		long now = System.nanoTime();
+		monitor.record("SELECT * FROM test WHERE id = 1", now - 1000000, 1, false);
+		monitor.record("SELECT * FROM test WHERE id = 2", now - 3000000, 0, false);
+		monitor.record("UPDATE test SET name = 'x'", now - 10000000, 5, false);
+		monitor.record("UPDATE test SET name = 'y'", now, 0, true);
+
+		List<StatementStatistics> statistics = monitor.getStatistics();
+		assertEquals(2, statistics.size());
+		StatementStatistics update = statistics.get(0);
+		assertEquals("UPDATE test SET name = ?", update.getStatement());
+		assertEquals(2, update.getCount());
+		assertEquals(5, update.getRows());
+		assertEquals(1, update.getErrors());
+
+		StatementStatistics select = statistics.get(1);
+		assertEquals("SELECT * FROM test WHERE id = ?", select.getStatement());
+		assertEquals(2, select.getCount());
+		assertEquals(1, select.getRows());
+		assertEquals(0, select.getErrors());
+		assertTrue(select.getLatency().getPercentile(50) >= 1000);
+		assertTrue(select.toMap().containsKey("p95_us"));
+
+		monitor.reset();
+		assertTrue(monitor.getStatistics().isEmpty());
+	}
+
+	@Test
+	public void testMaxTrackedStatements() throws Exception {
+		StatementMonitor monitor = new StatementMonitor();
+		Properties properties = new Properties();
+		properties.setProperty("max_tracked_statements", "2");
+		monitor.setProperties(properties);
+		monitor.record("SELECT * FROM a", System.nanoTime(), 0, false);
+		monitor.record("SELECT * FROM b", System.nanoTime(), 0, false);
+		monitor.record("SELECT * FROM c", System.nanoTime(), 0, false);
+		monitor.record("SELECT * FROM d", System.nanoTime(), 0, false);
+		monitor.record("SELECT * FROM a", System.nanoTime(), 0, false);
+
+		List<StatementStatistics> statistics = monitor.getStatistics();
+		assertEquals(3, statistics.size());
+		long total = 0;
+		for (StatementStatistics statementStatistics : statistics) {
+			total += statementStatistics.getCount();
+			if (StatementMonitor.OTHER_STATEMENTS.equals(statementStatistics.getStatement())) {
+				assertEquals(2, statementStatistics.getCount());
+			}
+		}
+		assertEquals(5, total);
+	}
+}
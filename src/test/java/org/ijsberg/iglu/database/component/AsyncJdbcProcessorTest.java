@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database.component;
+
+import org.ijsberg.iglu.database.ConnectionSettings;
+import org.ijsberg.iglu.database.ResultSetCopy;
+import org.ijsberg.iglu.database.StatementInput;
+import org.ijsberg.iglu.exception.ResourceException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsyncJdbcProcessorTest {
+
+	private static final int NROF_CONNECTIONS = 4;
+
+	private StandardConnectionPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("dburl", StubDriver.ROWS_URL + 10);
+		pool = ConnectionPoolBenchmark.createPool(NROF_CONNECTIONS, properties);
+	}
+
+	@After
+	public void tearDown() {
+		pool.stop();
+	}
+
+	@Test
+	public void testThreadsMatchConnections() throws Exception {
+		AsyncJdbcProcessor processor = new AsyncJdbcProcessor(new StandardJdbcProcessor(pool));
+		assertEquals(NROF_CONNECTIONS, processor.getNrofThreads());
+	}
+
+	@Test
+	public void testStatementsRunInParallel() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(NROF_CONNECTIONS);
+		AsyncJdbcProcessor processor = new AsyncJdbcProcessor(new StandardJdbcProcessor(pool) {
+			public Object executePreparedStatement(String statement, StatementInput input, ConnectionSettings settings) throws SQLException {
+				latch.countDown();
+				try {
+					//only succeeds if all statements run at the same time
+					return latch.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new SQLException(e);
+				}
+			}
+		});
+		processor.start();
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for (int i = 0; i < NROF_CONNECTIONS; i++) {
+			results.add(processor.executePreparedStatement("SELECT id FROM test"));
+		}
+		for (Future<Object> result : results) {
+			assertEquals(Boolean.TRUE, AsyncJdbcProcessor.get(result));
+		}
+		processor.stop();
+	}
+
+	@Test
+	public void testPreparedQuery() throws Exception {
+		AsyncJdbcProcessor processor = new AsyncJdbcProcessor(new StandardJdbcProcessor(pool));
+		processor.start();
+		List<Future<ResultSetCopy>> results = new ArrayList<Future<ResultSetCopy>>();
+		for (int i = 0; i < 10; i++) {
+			results.add(processor.executePreparedQuery("SELECT id, name, amount FROM test WHERE id > ?", new StatementInput(new Object[]{i})));
+		}
+		for (Future<ResultSetCopy> result : results) {
+			assertEquals(10, AsyncJdbcProcessor.get(result).size());
+		}
+		processor.stop();
+		assertTrue(pool.getReport().contains("Nr used: 0\n"));
+	}
+
+	@Test
+	public void testFailureIsRethrown() throws Exception {
+		AsyncJdbcProcessor processor = new AsyncJdbcProcessor(new StandardJdbcProcessor(pool));
+		processor.start();
+		StubDriver.failNextExecutions(1, "23000");
+		Future<Object> result = processor.executePreparedStatement("INSERT INTO test (name) VALUES ('a')");
+		try {
+			AsyncJdbcProcessor.get(result);
+			fail();
+		} catch (SQLException expected) {
+			assertEquals("23000", expected.getSQLState());
+		}
+		processor.stop();
+	}
+
+	@Test
+	public void testNotStarted() throws Exception {
+		AsyncJdbcProcessor processor = new AsyncJdbcProcessor(new StandardJdbcProcessor(pool), 2);
+		try {
+			processor.executeQuery("SELECT id FROM test");
+			fail();
+		} catch (ResourceException expected) {
+		}
+	}
+}
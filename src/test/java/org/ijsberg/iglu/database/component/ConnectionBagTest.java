@@ -0,0 +1,80 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.database.component;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConnectionBagTest {
+
+	@Test
+	public void testBorrowAndRequite() throws Exception {
+		ConnectionBag<ConnectionBag.Entry> bag = new ConnectionBag<ConnectionBag.Entry>();
+		ConnectionBag.Entry first = new ConnectionBag.Entry();
+		ConnectionBag.Entry second = new ConnectionBag.Entry();
+		bag.add(first);
+		bag.add(second);
+
+		assertSame(first, bag.borrow());
+		assertSame(second, bag.borrow());
+		assertNull(bag.borrow());
+		assertEquals(2, bag.getCount(ConnectionBag.STATE_IN_USE));
+
+		assertTrue(bag.requite(second));
+		assertFalse(bag.requite(second));
+		assertTrue(bag.requite(first));
+		//the most recently released entry is offered first
+		assertSame(first, bag.borrow());
+		assertEquals(1, bag.getCount(ConnectionBag.STATE_NOT_IN_USE));
+	}
+
+	@Test
+	public void testRequiteByOtherThread() throws Exception {
+		final ConnectionBag<ConnectionBag.Entry> bag = new ConnectionBag<ConnectionBag.Entry>();
+		final ConnectionBag.Entry entry = new ConnectionBag.Entry();
+		bag.add(entry);
+		assertSame(entry, bag.borrow());
+		Thread thread = new Thread() {
+			public void run() {
+				bag.requite(entry);
+			}
+		};
+		thread.start();
+		thread.join();
+		assertSame(entry, bag.borrow());
+	}
+
+	@Test
+	public void testReserveAndRemove() throws Exception {
+		ConnectionBag<ConnectionBag.Entry> bag = new ConnectionBag<ConnectionBag.Entry>();
+		ConnectionBag.Entry entry = new ConnectionBag.Entry();
+		bag.add(entry);
+		assertFalse(bag.remove(entry));
+		assertTrue(bag.reserve(entry));
+		assertNull(bag.borrow());
+		bag.unreserve(entry);
+		assertSame(entry, bag.borrow());
+		assertTrue(bag.remove(entry));
+		assertEquals(ConnectionBag.STATE_REMOVED, entry.getState());
+		assertEquals(0, bag.size());
+		bag.requite(entry);
+		assertNull(bag.borrow());
+	}
+}
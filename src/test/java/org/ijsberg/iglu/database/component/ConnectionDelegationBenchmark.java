@@ -0,0 +1,85 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.database.component;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Measures the cost per JDBC call of the ways StandardConnectionPool can wrap
+ * a driver's connection: a dynamic proxy with ConnectionWrapper as invocation handler,
+ * as the pool used to hand out, and the statically delegating PooledConnection.
+ * The overhead is the difference with calling the driver's connection directly.
+ * <p/>
+ * This is not a unit test. Run it by invoking main().
+ */
+public class ConnectionDelegationBenchmark {
+
+	private static final int NROF_CALLS = 10000000;
+	private static final int NROF_ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		Class.forName(StubDriver.class.getName());
+		Connection driverConnection = DriverManager.getConnection(StubDriver.URL, "user", "password");
+		StandardConnectionPool pool = new StandardConnectionPool();
+		StandardConnectionPool.ConnectionWrapper connWrap = pool.new ConnectionWrapper(driverConnection, 60);
+
+		Connection proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class[]{Connection.class}, connWrap);
+		Connection pooled = new PooledConnection(connWrap);
+
+		for (int round = 0; round < NROF_ROUNDS; round++) {
+			//the first rounds serve as warm up
+			double direct = measure(driverConnection);
+			double viaProxy = measure(proxy);
+			double viaPooled = measure(pooled);
+			System.out.println("round " + (round + 1) + ": direct " + format(direct) +
+					", proxy " + format(viaProxy) + " (+" + format(viaProxy - direct) + ")" +
+					", PooledConnection " + format(viaPooled) + " (+" + format(viaPooled - direct) + ")");
+		}
+	}
+
+	private static String format(double nanos) {
+		return String.format("%.1f ns/call", nanos);
+	}
+
+	/**
+	 * @return average time per call in nanoseconds
+	 */
+	private static double measure(Connection connection) throws SQLException {
+		int blackhole = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < NROF_CALLS; i += 3) {
+			if (connection.getAutoCommit()) {
+				blackhole++;
+			}
+			connection.setReadOnly(false);
+			if (connection.prepareStatement("select 1") == null) {
+				blackhole++;
+			}
+		}
+		long duration = System.nanoTime() - start;
+		if (blackhole == 42) {
+			System.out.println();
+		}
+		return (double) duration / NROF_CALLS;
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.database.component;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures acquire/release throughput of connection pool cores with 1, 8 and 32
+ * concurrent threads sharing 10 connections: the synchronized lists that
+ * StandardConnectionPool used to have against the lock-free ConnectionBag.
+ * It also measures getConnection()/close() on a complete pool with a stub driver,
+ * with and without threads having to wait for a connection.
+ * <p/>
+ * This is not a unit test. Run it by invoking main().
+ */
+public class ConnectionPoolBenchmark {
+
+	private static final int NROF_CONNECTIONS = 10;
+	private static final long MEASUREMENT_TIME_IN_MS = 2000;
+	private static final int[] NROF_THREADS = {1, 8, 32};
+
+	/**
+	 * Acquires and releases a connection.
+	 */
+	private interface PoolCore {
+		boolean acquireAndRelease() throws Exception;
+	}
+
+	/**
+	 * Replica of the previous pool core: three lists guarded by one monitor.
+	 */
+	private static class SynchronizedListCore implements PoolCore {
+		private final ArrayList<Object> allConnections = new ArrayList<Object>();
+		private final ArrayList<Object> availableConnections = new ArrayList<Object>();
+		private final ArrayList<Object> usedConnections = new ArrayList<Object>();
+
+		private SynchronizedListCore() {
+			for (int i = 0; i < NROF_CONNECTIONS; i++) {
+				Object connection = new Object();
+				allConnections.add(connection);
+				availableConnections.add(connection);
+			}
+		}
+
+		public boolean acquireAndRelease() {
+			Object connection;
+			synchronized (allConnections) {
+				if (availableConnections.isEmpty()) {
+					return false;
+				}
+				connection = availableConnections.remove(0);
+				usedConnections.add(connection);
+			}
+			synchronized (allConnections) {
+				if (usedConnections.remove(connection)) {
+					availableConnections.add(connection);
+				}
+			}
+			return true;
+		}
+
+		public String toString() {
+			return "synchronized lists";
+		}
+	}
+
+	private static class BagCore implements PoolCore {
+		private final ConnectionBag<ConnectionBag.Entry> bag = new ConnectionBag<ConnectionBag.Entry>();
+
+		private BagCore() {
+			for (int i = 0; i < NROF_CONNECTIONS; i++) {
+				bag.add(new ConnectionBag.Entry());
+			}
+		}
+
+		public boolean acquireAndRelease() {
+			ConnectionBag.Entry entry = bag.borrow();
+			if (entry == null) {
+				return false;
+			}
+			bag.requite(entry);
+			return true;
+		}
+
+		public String toString() {
+			return "connection bag";
+		}
+	}
+
+	private static class PoolAdapter implements PoolCore {
+		private final StandardConnectionPool pool;
+
+		private PoolAdapter(StandardConnectionPool pool) {
+			this.pool = pool;
+		}
+
+		public boolean acquireAndRelease() throws Exception {
+			Connection connection = pool.getConnection();
+			connection.close();
+			return true;
+		}
+
+		public String toString() {
+			return "StandardConnectionPool";
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Class.forName(StubDriver.class.getName());
+		for (int nrofThreads : NROF_THREADS) {
+			System.out.println(nrofThreads + " thread(s):");
+			report(new SynchronizedListCore(), nrofThreads);
+			report(new BagCore(), nrofThreads);
+		}
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		}));
+		try {
+			//with enough connections for all threads and with threads waiting for connections
+			for (int nrofConnections : new int[]{NROF_THREADS[NROF_THREADS.length - 1], NROF_CONNECTIONS}) {
+				StandardConnectionPool pool = createPool(nrofConnections);
+				for (int nrofThreads : NROF_THREADS) {
+					long operations = measure(new PoolAdapter(pool), nrofThreads);
+					out.println(nrofThreads + " thread(s), " + nrofConnections + " connections, StandardConnectionPool getConnection/close: " +
+							(operations * 1000 / MEASUREMENT_TIME_IN_MS) + " pairs/s");
+				}
+				pool.stop();
+			}
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	static StandardConnectionPool createPool(int nrofConnections) {
+		return createPool(nrofConnections, new Properties());
+	}
+
+	static StandardConnectionPool createPool(int nrofConnections, Properties properties) {
+		properties.setProperty("dbdriver", StubDriver.class.getName());
+		if (!properties.containsKey("dburl")) {
+			properties.setProperty("dburl", StubDriver.URL);
+		}
+		properties.setProperty("dbusername", "user");
+		properties.setProperty("dbuserpassword", "password");
+		properties.setProperty("nrof_connections", "" + nrofConnections);
+		StandardConnectionPool pool = new StandardConnectionPool();
+		pool.setProperties(properties);
+		pool.start();
+		return pool;
+	}
+
+	private static void report(PoolCore core, int nrofThreads) throws Exception {
+		//warm up
+		measure(core, nrofThreads);
+		long operations = measure(core, nrofThreads);
+		System.out.println("  " + core + ": " + (operations * 1000 / MEASUREMENT_TIME_IN_MS) + " acquire/release pairs/s");
+	}
+
+	private static long measure(final PoolCore core, int nrofThreads) throws InterruptedException {
+		final AtomicLong totalOperations = new AtomicLong();
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		Thread[] threads = new Thread[nrofThreads];
+		for (int i = 0; i < nrofThreads; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					long operations = 0;
+					try {
+						startSignal.await();
+						long end = System.currentTimeMillis() + MEASUREMENT_TIME_IN_MS;
+						while (System.currentTimeMillis() < end) {
+							for (int j = 0; j < 100; j++) {
+								if (core.acquireAndRelease()) {
+									operations++;
+								} else {
+									Thread.yield();
+								}
+							}
+						}
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					totalOperations.addAndGet(operations);
+				}
+			};
+			threads[i].start();
+		}
+		startSignal.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return totalOperations.get();
+	}
+}
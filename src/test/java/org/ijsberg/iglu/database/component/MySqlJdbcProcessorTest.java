@@ -0,0 +1,121 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database.component;
+
+import org.ijsberg.iglu.database.BatchSQLException;
+import org.ijsberg.iglu.database.DataObject;
+import org.ijsberg.iglu.database.RecordMapper;
+import org.ijsberg.iglu.database.TableConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class MySqlJdbcProcessorTest {
+
+	public static class Record implements DataObject {
+		private Long id;
+		private String name;
+		private RecordMapper<Record> mapper = new RecordMapper<Record>(this, createMapping().stringPropertyNames());
+
+		public Record(String name) {
+			this.name = name;
+		}
+
+		public RecordMapper getMapper() {
+			return mapper;
+		}
+
+		public void setField(Field field, Object value) throws IllegalAccessException {
+			field.set(this, value);
+		}
+
+		public Object getField(Field field) throws IllegalAccessException {
+			return field.get(this);
+		}
+	}
+
+	private static Properties createMapping() {
+		Properties mapping = new Properties();
+		mapping.setProperty("id", "id");
+		mapping.setProperty("name", "name");
+		return mapping;
+	}
+
+	private StandardConnectionPool pool;
+	private MySqlJdbcProcessor processor;
+	private TableConfig config = new TableConfig("test", "id", Record.class, createMapping());
+
+	@Before
+	public void setUp() throws Exception {
+		pool = ConnectionPoolBenchmark.createPool(1);
+		processor = new MySqlJdbcProcessor(pool);
+	}
+
+	@After
+	public void tearDown() {
+		pool.stop();
+	}
+
+	@Test
+	public void testInsertWithKeyGeneration() throws Exception {
+		Record record = new Record("a");
+		Object key = processor.insertDataObjectWithKeyGeneration(config, record);
+		assertNotNull(key);
+		assertEquals(key, record.id);
+		assertEquals("a", record.name);
+	}
+
+	@Test
+	public void testInsertBatchWithKeyGeneration() throws Exception {
+		List<Record> records = new ArrayList<Record>();
+		for (int i = 0; i < 25; i++) {
+			records.add(new Record("name" + i));
+		}
+		List<Object> keys = processor.insertDataObjectsWithKeyGeneration(config, records, 10);
+		assertEquals(25, keys.size());
+		for (int i = 0; i < 25; i++) {
+			assertEquals(keys.get(i), records.get(i).id);
+		}
+
+		records.clear();
+		for (int i = 0; i < 25; i++) {
+			records.add(new Record(i == 14 ? "fail" : "name" + i));
+		}
+		try {
+			processor.insertDataObjectsWithKeyGeneration(config, records, 10);
+			fail();
+		} catch (BatchSQLException expected) {
+			assertEquals(14, expected.getRowIndex());
+			assertEquals(10, expected.getNrofRowsCommitted());
+		}
+		//keys of the committed chunk are copied
+		assertNotNull(records.get(9).id);
+		assertNull(records.get(10).id);
+	}
+}
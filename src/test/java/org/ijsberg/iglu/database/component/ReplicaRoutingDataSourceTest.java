@@ -0,0 +1,141 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database.component;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class ReplicaRoutingDataSourceTest {
+
+	private StandardConnectionPool primary;
+	private StandardConnectionPool[] replicas;
+
+	@Before
+	public void setUp() throws Exception {
+		primary = ConnectionPoolBenchmark.createPool(2);
+		replicas = new StandardConnectionPool[3];
+		for (int i = 0; i < replicas.length; i++) {
+			replicas[i] = ConnectionPoolBenchmark.createPool(4);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		primary.stop();
+		for (StandardConnectionPool replica : replicas) {
+			replica.stop();
+		}
+	}
+
+	@Test
+	public void testLeastConnections() throws Exception {
+		ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, replicas);
+		List<Connection> connections = new ArrayList<Connection>();
+		for (int i = 0; i < 6; i++) {
+			connections.add(dataSource.getConnection());
+		}
+		for (StandardConnectionPool replica : replicas) {
+			assertEquals(2, replica.getNrofConnectionsInUse());
+		}
+		assertEquals(0, primary.getNrofConnectionsInUse());
+		for (Connection connection : connections) {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void testWeightedLeastConnections() throws Exception {
+		ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, replicas[0], replicas[1]);
+		Properties properties = new Properties();
+		properties.setProperty("replica_weights", "3,1");
+		dataSource.setProperties(properties);
+		List<Connection> connections = new ArrayList<Connection>();
+		for (int i = 0; i < 4; i++) {
+			connections.add(dataSource.getConnection());
+		}
+		assertEquals(3, replicas[0].getNrofConnectionsInUse());
+		assertEquals(1, replicas[1].getNrofConnectionsInUse());
+		for (Connection connection : connections) {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void testWeightedRoundRobin() throws Exception {
+		ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, replicas[0], replicas[1]);
+		Properties properties = new Properties();
+		properties.setProperty("balancing", ReplicaRoutingDataSource.ROUND_ROBIN);
+		properties.setProperty("replica_weights", "2,1");
+		dataSource.setProperties(properties);
+		for (int i = 0; i < 9; i++) {
+			dataSource.getConnection().close();
+		}
+		assertTrue(dataSource.getReport().contains("Replica 0 (weight 2): healthy, in use: 0, obtained: 6\n"));
+		assertTrue(dataSource.getReport().contains("Replica 1 (weight 1): healthy, in use: 0, obtained: 3\n"));
+	}
+
+	@Test
+	public void testEjectAndRestore() throws Exception {
+		ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, replicas[0], replicas[1]);
+		replicas[0].stop();
+		for (int i = 0; i < 4; i++) {
+			dataSource.getConnection().close();
+		}
+		assertEquals(1, dataSource.getNrofHealthyReplicas());
+		assertTrue(dataSource.getReport().contains("Replica 1 (weight 1): healthy, in use: 0, obtained: 4\n"));
+
+		replicas[1].stop();
+		Connection connection = dataSource.getConnection();
+		assertEquals(1, primary.getNrofConnectionsInUse());
+		connection.close();
+		assertEquals(0, dataSource.getNrofHealthyReplicas());
+		assertTrue(dataSource.getReport().contains("Nr of fallbacks to primary: 1\n"));
+
+		replicas[0].start();
+		dataSource.onPageEvent(System.currentTimeMillis());
+		assertEquals(1, dataSource.getNrofHealthyReplicas());
+		dataSource.getConnection().close();
+		assertTrue(dataSource.getReport().contains("Replica 0 (weight 1): healthy, in use: 0, obtained: 1\n"));
+	}
+
+	@Test
+	public void testBusyReplicaIsNotEjected() throws Exception {
+		replicas[0].stop();
+		Properties properties = new Properties();
+		properties.setProperty("connection_request_timeout", "1");
+		replicas[0] = ConnectionPoolBenchmark.createPool(1, properties);
+		ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, replicas[0]);
+		Connection connection = dataSource.getConnection();
+
+		dataSource.checkHealth();
+		assertEquals(1, dataSource.getNrofHealthyReplicas());
+		connection.close();
+	}
+}
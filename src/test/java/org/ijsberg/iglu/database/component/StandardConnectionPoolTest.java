@@ -0,0 +1,405 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.database.component;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class StandardConnectionPoolTest {
+
+	private StandardConnectionPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		Class.forName(StubDriver.class.getName());
+		pool = ConnectionPoolBenchmark.createPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		pool.stop();
+	}
+
+	@Test
+	public void testObtainAndRelease() throws Exception {
+		Connection first = pool.getConnection();
+		Connection second = pool.getConnection();
+		assertNull(pool.obtainConnection());
+		assertTrue(pool.getReport().contains("Nr used: 2\n"));
+
+		first.close();
+		assertTrue(pool.getReport().contains("Nr available: 1\n"));
+		second.close();
+		assertTrue(pool.getReport().contains("Nr available: 2\n"));
+		assertTrue(pool.getReport().contains("Nr of connections released: 2\n"));
+		assertTrue(pool.getReport().contains("Max nr used concurrently: 2\n"));
+	}
+
+	private Thread requestConnectionInBackground(final List<String> log, final String name) {
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					Connection connection = pool.getConnection();
+					log.add(name);
+					connection.close();
+				} catch (SQLException e) {
+					log.add(name + " failed");
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	private void awaitWaiters(int nrofWaiters) throws InterruptedException {
+		for (int i = 0; i < 500 && !pool.getReport().contains("Nr of requests waiting: " + nrofWaiters + "\n"); i++) {
+			Thread.sleep(2);
+		}
+	}
+
+	@Test
+	public void testReleasedConnectionIsHandedToOldestWaiter() throws Exception {
+		Connection first = pool.getConnection();
+		Connection second = pool.getConnection();
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		Thread firstWaiter = requestConnectionInBackground(log, "first");
+		awaitWaiters(1);
+		Thread secondWaiter = requestConnectionInBackground(log, "second");
+		awaitWaiters(2);
+
+		long start = System.currentTimeMillis();
+		first.close();
+		firstWaiter.join(1000);
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		secondWaiter.join(1000);
+		second.close();
+		assertEquals(2, log.size());
+		assertEquals("first", log.get(0));
+		assertTrue(pool.getReport().contains("Nr of requests queued: 2\n"));
+	}
+
+	@Test
+	public void testRequestTimesOut() throws Exception {
+		pool.stop();
+		Properties properties = new Properties();
+		properties.setProperty("connection_request_timeout", "1");
+		pool = ConnectionPoolBenchmark.createPool(1, properties);
+		Connection connection = pool.getConnection();
+		long start = System.currentTimeMillis();
+		try {
+			pool.getConnection();
+			fail();
+		} catch (SQLException expected) {
+		}
+		assertTrue(System.currentTimeMillis() - start >= 1000);
+		assertTrue(pool.getReport().contains("Nr of requests timed out: 1\n"));
+		connection.close();
+	}
+
+	@Test
+	public void testClosedConnectionCanNotBeUsed() throws Exception {
+		Connection connection = pool.getConnection();
+		assertTrue(connection instanceof PooledConnection);
+		connection.setAutoCommit(false);
+		connection.close();
+		assertTrue(connection.isClosed());
+		try {
+			connection.createStatement();
+			fail();
+		} catch (SQLException expected) {
+		}
+		//closing twice does not release the connection twice
+		connection.close();
+		assertTrue(pool.getReport().contains("Nr of connections released: 1\n"));
+		assertTrue(pool.getReport().contains("Nr of errors: 0\n"));
+	}
+
+	@Test
+	public void testClosedConnectionDoesNotChangeSettingsOfNextBorrower() throws Exception {
+		pool.stop();
+		pool = ConnectionPoolBenchmark.createPool(1);
+		Connection stale = pool.getConnection();
+		stale.close();
+
+		final Connection[] borrowed = new Connection[1];
+		Thread borrower = new Thread() {
+			public void run() {
+				try {
+					borrowed[0] = pool.getConnection();
+					borrowed[0].setAutoCommit(false);
+				} catch (SQLException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		borrower.start();
+		borrower.join();
+
+		try {
+			stale.setAutoCommit(true);
+			fail();
+		} catch (SQLException expected) {
+		}
+		try {
+			stale.prepareCall("CALL test()");
+			fail();
+		} catch (SQLException expected) {
+		}
+		borrowed[0].close();
+
+		Connection connection = pool.getConnection();
+		assertTrue(connection.getAutoCommit());
+		connection.close();
+	}
+
+	@Test
+	public void testPreparedStatementIsReused() throws Exception {
+		pool.stop();
+		Properties properties = new Properties();
+		properties.setProperty("statement_cache_size", "2");
+		pool = ConnectionPoolBenchmark.createPool(1, properties);
+		Connection connection = pool.getConnection();
+		PreparedStatement statement = connection.prepareStatement("SELECT * FROM test WHERE id = ?");
+		statement.setInt(1, 1);
+		statement.close();
+		assertTrue(statement.isClosed());
+		connection.close();
+
+		connection = pool.getConnection();
+		PreparedStatement reused = connection.prepareStatement("SELECT * FROM test WHERE id = ?");
+		assertTrue(pool.getReport().contains("Statement cache hits: 1\n"));
+		assertFalse(reused.isClosed());
+		//the statement is handed out in a new handle
+		assertTrue(statement.isClosed());
+		try {
+			statement.setInt(1, 2);
+			fail();
+		} catch (SQLException expected) {
+		}
+		try {
+			statement.executeQuery();
+			fail();
+		} catch (SQLException expected) {
+		}
+		//a statement in use is not handed out twice
+		PreparedStatement other = connection.prepareStatement("SELECT * FROM test WHERE id = ?");
+		assertNotSame(reused, other);
+		reused.close();
+		other.close();
+		connection.close();
+
+		assertTrue(pool.getReport().contains("Statement cache hits: 1\n"));
+		assertTrue(pool.getReport().contains("Statement cache misses: 2\n"));
+	}
+
+	@Test
+	public void testSettingsOfReusedStatementAreRestored() throws Exception {
+		pool.stop();
+		Properties properties = new Properties();
+		properties.setProperty("statement_cache_size", "2");
+		pool = ConnectionPoolBenchmark.createPool(1, properties);
+		Connection connection = pool.getConnection();
+		PreparedStatement statement = connection.prepareStatement("SELECT * FROM test");
+		statement.setFetchSize(Integer.MIN_VALUE);
+		statement.setMaxRows(10);
+		statement.setQueryTimeout(5);
+		statement.close();
+
+		PreparedStatement reused = connection.prepareStatement("SELECT * FROM test");
+		assertTrue(pool.getReport().contains("Statement cache hits: 1\n"));
+		assertEquals(0, reused.getFetchSize());
+		assertEquals(0, reused.getMaxRows());
+		assertEquals(0, reused.getQueryTimeout());
+		reused.close();
+		connection.close();
+	}
+
+	@Test
+	public void testStatementThatCanNotBeRestoredIsNotReused() throws Exception {
+		pool.stop();
+		Properties properties = new Properties();
+		properties.setProperty("statement_cache_size", "2");
+		pool = ConnectionPoolBenchmark.createPool(1, properties);
+		Connection connection = pool.getConnection();
+		PreparedStatement statement = connection.prepareStatement("SELECT * FROM test");
+		statement.setCursorName("cursor");
+		statement.close();
+
+		PreparedStatement other = connection.prepareStatement("SELECT * FROM test");
+		assertTrue(pool.getReport().contains("Statement cache hits: 0\n"));
+		assertTrue(pool.getReport().contains("Statement cache misses: 2\n"));
+		other.close();
+		connection.close();
+	}
+
+	private static StandardConnectionPool createPool(int initialNrofConnections, int maxNrofConnections, Properties properties) {
+		properties.setProperty("dbdriver", StubDriver.class.getName());
+		properties.setProperty("dburl", StubDriver.URL);
+		properties.setProperty("dbusername", "user");
+		properties.setProperty("dbuserpassword", "password");
+		properties.setProperty("initial_nrof_connections", "" + initialNrofConnections);
+		properties.setProperty("max_nrof_connections", "" + maxNrofConnections);
+		StandardConnectionPool pool = new StandardConnectionPool();
+		pool.setProperties(properties);
+		pool.start();
+		return pool;
+	}
+
+	private static Set<Thread> getThreads(String name) {
+		Set<Thread> threads = new HashSet<Thread>();
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (name.equals(thread.getName())) {
+				threads.add(thread);
+			}
+		}
+		return threads;
+	}
+
+	private void awaitReport(String line) throws InterruptedException {
+		for (int i = 0; i < 100 && !pool.getReport().contains(line); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(pool.getReport().contains(line));
+	}
+
+	@Test
+	public void testMinIdleConnectionsArePrewarmed() throws Exception {
+		pool.stop();
+		Properties properties = new Properties();
+		properties.setProperty("min_idle_connections", "2");
+		pool = createPool(1, 3, properties);
+		awaitReport("Nr available: 2\n");
+
+		Connection first = pool.getConnection();
+		Connection second = pool.getConnection();
+		//only one more connection is allowed
+		awaitReport("Total connections: 3\n");
+		awaitReport("Nr available: 1\n");
+		first.close();
+		second.close();
+	}
+
+	@Test
+	public void testWaitingRequestGetsNewConnection() throws Exception {
+		pool.stop();
+		Properties properties = new Properties();
+		properties.setProperty("min_idle_connections", "0");
+		pool = createPool(1, 2, properties);
+		Connection first = pool.getConnection();
+		Connection second = pool.getConnection();
+		assertTrue(pool.getReport().contains("Total connections: 2\n"));
+		assertTrue(pool.getReport().contains("Nr of connections created: 1\n"));
+		first.close();
+		second.close();
+	}
+
+	@Test
+	public void testIdleConnectionsAreClosed() throws Exception {
+		pool.stop();
+		Properties properties = new Properties();
+		properties.setProperty("min_idle_connections", "1");
+		properties.setProperty("idle_timeout", "1");
+		properties.setProperty("maintenance_interval", "3600");
+		pool = createPool(3, 3, properties);
+		Thread.sleep(1100);
+		pool.maintain();
+		assertTrue(pool.getReport().contains("Total connections: 1\n"));
+		assertTrue(pool.getReport().contains("Nr of idle connections closed: 2\n"));
+	}
+
+	@Test
+	public void testInvalidConnectionIsDiscarded() throws Exception {
+		pool.stop();
+		Properties properties = new Properties();
+		properties.setProperty("validation_idle_time", "0");
+		pool = createPool(2, 2, properties);
+		StandardConnectionPool.ConnectionWrapper connWrap = pool.obtainConnection();
+		pool.releaseConnection(connWrap);
+		connWrap.getConnection().close();
+
+		Connection first = pool.getConnection();
+		Connection second = pool.getConnection();
+		assertTrue(first.isValid(1));
+		assertTrue(second.isValid(1));
+		assertTrue(pool.getReport().contains("Nr of invalid connections discarded: 1\n"));
+		first.close();
+		second.close();
+	}
+
+	@Test
+	public void testReleasedConnectionIsNotReplaced() throws Exception {
+		StandardConnectionPool.ConnectionWrapper connWrap = pool.obtainConnection();
+		pool.releaseConnection(connWrap);
+		//as when a hanging connection is released just before it's cleaned up
+		pool.replaceConnection(connWrap);
+
+		assertFalse(connWrap.getConnection().isClosed());
+		assertTrue(pool.getReport().contains("Nr of connections reset: 0\n"));
+		assertTrue(pool.getReport().contains("Nr of errors: 0\n"));
+	}
+
+	@Test
+	public void testConnectionsAreCreatedDuringSlowValidation() throws Exception {
+		pool.stop();
+		Properties properties = new Properties();
+		properties.setProperty("validation_idle_time", "1");
+		properties.setProperty("maintenance_interval", "1");
+		StubDriver.setValidationDelay(3000);
+		try {
+			pool = createPool(1, 2, properties);
+			//the maintenance thread is now validating the idle connection
+			Thread.sleep(2300);
+			long start = System.currentTimeMillis();
+			Connection connection = pool.getConnection();
+			assertTrue(System.currentTimeMillis() - start < 1000);
+			connection.close();
+		} finally {
+			StubDriver.setValidationDelay(0);
+		}
+	}
+
+	@Test
+	public void testStartTwice() throws Exception {
+		Connection inUse = pool.getConnection();
+		//threads of pools stopped by earlier tests may not have exited yet
+		Set<Thread> maintenanceThreads = getThreads("connection pool maintenance");
+		pool.start();
+		assertTrue(maintenanceThreads.containsAll(getThreads("connection pool maintenance")));
+		assertTrue(pool.getReport().contains("Total connections: 2\n"));
+		assertTrue(pool.getReport().contains("Nr used: 1\n"));
+		inUse.close();
+		Connection connection = pool.getConnection();
+		connection.close();
+		pool.stop();
+		assertFalse(pool.isStarted());
+	}
+}
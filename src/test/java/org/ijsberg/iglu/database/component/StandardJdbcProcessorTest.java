@@ -0,0 +1,262 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.database.component;
+
+import org.ijsberg.iglu.database.BatchSQLException;
+import org.ijsberg.iglu.database.RowHandler;
+import org.ijsberg.iglu.database.StatementInput;
+import org.ijsberg.iglu.database.StatementStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class StandardJdbcProcessorTest {
+
+	private static final int NROF_ROWS = 100000;
+
+	private StandardConnectionPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("dburl", StubDriver.ROWS_URL + NROF_ROWS);
+		pool = ConnectionPoolBenchmark.createPool(1, properties);
+	}
+
+	@After
+	public void tearDown() {
+		pool.stop();
+	}
+
+	@Test
+	public void testStreamAllRows() throws Exception {
+		StandardJdbcProcessor processor = new StandardJdbcProcessor(pool);
+		Properties properties = new Properties();
+		properties.setProperty("fetch_size", "500");
+		processor.setProperties(properties);
+
+		final long[] sum = new long[1];
+		int count = processor.executeQuery("SELECT id, name FROM test WHERE id > ?", new StatementInput(new Object[]{0}), new RowHandler() {
+			public boolean handleRow(ResultSet resultSet) throws SQLException {
+				assertEquals(500, resultSet.getStatement().getFetchSize());
+				sum[0] += resultSet.getInt(1);
+				return true;
+			}
+		});
+		assertEquals(NROF_ROWS, count);
+		assertEquals((long) NROF_ROWS * (NROF_ROWS + 1) / 2, sum[0]);
+		assertTrue(pool.getReport().contains("Nr used: 0\n"));
+	}
+
+	@Test
+	public void testFetchSizeIsRestoredAfterStreaming() throws Exception {
+		pool.stop();
+		Properties properties = new Properties();
+		properties.setProperty("dburl", StubDriver.ROWS_URL + 10);
+		properties.setProperty("statement_cache_size", "2");
+		pool = ConnectionPoolBenchmark.createPool(1, properties);
+		StandardJdbcProcessor processor = new StandardJdbcProcessor(pool);
+		properties = new Properties();
+		properties.setProperty("fetch_size", "500");
+		processor.setProperties(properties);
+		processor.executeQuery("SELECT id, name FROM test", new StatementInput(), new RowHandler() {
+			public boolean handleRow(ResultSet resultSet) throws SQLException {
+				assertEquals(500, resultSet.getStatement().getFetchSize());
+				return true;
+			}
+		});
+
+		Connection connection = pool.getConnection();
+		PreparedStatement statement = connection.prepareStatement("SELECT id, name FROM test");
+		assertEquals(0, statement.getFetchSize());
+		statement.close();
+		connection.close();
+	}
+
+	@Test
+	public void testChunkedBatch() throws Exception {
+		StandardJdbcProcessor processor = new StandardJdbcProcessor(pool);
+		int[] result = processor.executeBatchPreparedStatement("INSERT INTO test (id, name) VALUES (?, ?)", createBatch(2500, -1), 1000);
+		assertEquals(2500, result.length);
+		assertEquals(1, result[2499]);
+		assertTrue(pool.getReport().contains("Nr used: 0\n"));
+	}
+
+	@Test
+	public void testChunkedBatchFailure() throws Exception {
+		StandardJdbcProcessor processor = new StandardJdbcProcessor(pool);
+		try {
+			processor.executeBatchPreparedStatement("INSERT INTO test (id, name) VALUES (?, ?)", createBatch(2500, 2103), 1000);
+			fail();
+		} catch (BatchSQLException expected) {
+			assertEquals(2103, expected.getRowIndex());
+			assertEquals(1, expected.getFailedRowIndexes().length);
+			assertEquals(2000, expected.getNrofRowsCommitted());
+		}
+		assertTrue(pool.getReport().contains("Nr used: 0\n"));
+	}
+
+	@Test
+	public void testInsertReturnsGeneratedKey() throws Exception {
+		StandardJdbcProcessor processor = new StandardJdbcProcessor(pool);
+		Long first = (Long) processor.executeInsert("INSERT INTO test (name) VALUES (?)", new StatementInput(new Object[]{"a"}));
+		Long second = (Long) processor.executeInsert("INSERT INTO test (name) VALUES (?)", new StatementInput(new Object[]{"b"}));
+		assertNotNull(first);
+		assertTrue(second > first);
+	}
+
+	@Test
+	public void testBatchInsertReturnsGeneratedKeys() throws Exception {
+		StandardJdbcProcessor processor = new StandardJdbcProcessor(pool);
+		Object[] keys = processor.executeBatchInsert("INSERT INTO test (id, name) VALUES (?, ?)", createBatch(250, -1), 100);
+		assertEquals(250, keys.length);
+		for (int i = 1; i < keys.length; i++) {
+			assertEquals((Long) keys[i - 1] + 1, keys[i]);
+		}
+		try {
+			processor.executeBatchInsert("INSERT INTO test (id, name) VALUES (?, ?)", createBatch(250, 120), 100);
+			fail();
+		} catch (BatchSQLException expected) {
+			assertEquals(100, expected.getGeneratedKeys().length);
+			assertNotNull(expected.getGeneratedKeys()[99]);
+		}
+	}
+
+	@Test
+	public void testStatementStatistics() throws Exception {
+		StandardJdbcProcessor processor = new StandardJdbcProcessor(pool);
+		processor.executeBatchPreparedStatement("INSERT INTO test (id, name) VALUES (?, ?)", createBatch(2500, -1), 1000);
+		try {
+			processor.executeBatchPreparedStatement("INSERT INTO test (id, name) VALUES (?, ?)", createBatch(2500, 2103), 1000);
+			fail();
+		} catch (BatchSQLException expected) {
+		}
+		processor.executeInsert("INSERT INTO test (name) VALUES ('a')", new StatementInput());
+		processor.executeInsert("INSERT INTO test (name) VALUES ('b')", new StatementInput());
+
+		List<StatementStatistics> statistics = processor.getStatementStatistics();
+		assertEquals(2, statistics.size());
+		for (StatementStatistics statementStatistics : statistics) {
+			if (statementStatistics.getStatement().startsWith("INSERT INTO test (id, name)")) {
+				assertEquals(2, statementStatistics.getCount());
+				assertEquals(1, statementStatistics.getErrors());
+				assertEquals(4500, statementStatistics.getRows());
+			} else {
+				assertEquals("INSERT INTO test (name) VALUES (?)", statementStatistics.getStatement());
+				assertEquals(2, statementStatistics.getCount());
+				assertEquals(0, statementStatistics.getErrors());
+			}
+		}
+		assertTrue(processor.getStatementReport().contains("INSERT INTO test (name) VALUES (?)"));
+
+		processor.resetStatementStatistics();
+		assertTrue(processor.getStatementStatistics().isEmpty());
+	}
+
+	@Test
+	public void testRetryOnFreshConnection() throws Exception {
+		StandardJdbcProcessor processor = new StandardJdbcProcessor(pool);
+		processor.setProperties(createRetryProperties());
+		StubDriver.failNextExecutions(2, "08S01");
+		assertEquals(0, processor.executePreparedStatement("UPDATE test SET name = 'a'"));
+		assertEquals(2, pool.getNrofEvictions());
+		assertEquals(2, pool.getNrofRetries());
+		assertTrue(pool.getReport().contains("Nr used: 0\n"));
+		assertTrue(pool.getReport().contains("Nr of statements retried: 2\n"));
+	}
+
+	@Test
+	public void testRetryAfterDeadlock() throws Exception {
+		StandardJdbcProcessor processor = new StandardJdbcProcessor(pool);
+		processor.setProperties(createRetryProperties());
+		StubDriver.failNextExecutions(1, "40001");
+		assertNotNull(processor.executeInsert("INSERT INTO test (name) VALUES (?)", new StatementInput(new Object[]{"a"})));
+		assertEquals(0, pool.getNrofEvictions());
+		assertEquals(1, pool.getNrofRetries());
+	}
+
+	@Test
+	public void testNoRetryAfterPermanentError() throws Exception {
+		StandardJdbcProcessor processor = new StandardJdbcProcessor(pool);
+		processor.setProperties(createRetryProperties());
+		StubDriver.failNextExecutions(1, "23000");
+		try {
+			processor.executePreparedStatement("INSERT INTO test (name) VALUES ('a')");
+			fail();
+		} catch (SQLException expected) {
+			assertEquals("23000", expected.getSQLState());
+		}
+		assertEquals(0, pool.getNrofRetries());
+	}
+
+	@Test
+	public void testRetriesAreBounded() throws Exception {
+		StandardJdbcProcessor processor = new StandardJdbcProcessor(pool);
+		processor.setProperties(createRetryProperties());
+		StubDriver.failNextExecutions(5, "40P01");
+		try {
+			processor.executePreparedStatement("UPDATE test SET name = 'a'");
+			fail();
+		} catch (SQLException expected) {
+		}
+		StubDriver.failNextExecutions(0, null);
+		assertEquals(2, pool.getNrofRetries());
+		assertTrue(pool.getReport().contains("Nr used: 0\n"));
+	}
+
+	private static Properties createRetryProperties() {
+		Properties properties = new Properties();
+		properties.setProperty("max_retries", "2");
+		properties.setProperty("retry_backoff", "1");
+		return properties;
+	}
+
+	private static List<Object[]> createBatch(int nrofRows, int failingRow) {
+		List<Object[]> batch = new ArrayList<Object[]>();
+		for (int i = 0; i < nrofRows; i++) {
+			batch.add(new Object[]{i, i == failingRow ? "fail" : "name" + i});
+		}
+		return batch;
+	}
+
+	@Test
+	public void testStopStreaming() throws Exception {
+		StandardJdbcProcessor processor = new MySqlJdbcProcessor(pool);
+		int count = processor.executeQuery("SELECT id, name FROM test", new StatementInput(), new RowHandler() {
+			public boolean handleRow(ResultSet resultSet) throws SQLException {
+				assertEquals(Integer.MIN_VALUE, resultSet.getStatement().getFetchSize());
+				return resultSet.getInt(1) < 10;
+			}
+		});
+		assertEquals(10, count);
+	}
+}
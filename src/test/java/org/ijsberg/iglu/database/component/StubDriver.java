@@ -0,0 +1,389 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.database.component;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver for URLs starting with 'jdbc:stub:' that creates connections
+ * that do nothing, so that connection pooling can be measured in isolation.
+ * <p/>
+ * Queries on connections obtained with URL 'jdbc:stub:rows=N' return N rows
+ * with columns ID (INTEGER 1..N), NAME (VARCHAR "name0".."name6", null for
+ * every tenth row) and AMOUNT (BIGINT ID * 1000000000). Prepared statements starting with
+ * SELECT also return such a result set when executed by execute().
+ * <p/>
+ * Result sets can also be obtained directly by createResultSet.
+ * <p/>
+ * Batches fail at the first row with a parameter "fail", like drivers
+ * that stop executing a batch at the first failure.
+ * <p/>
+ * Every row inserted by executeUpdate or executeBatch gets a generated key
+ * from a sequence shared by all connections.
+ * <p/>
+ * Failures with a given SQLState can be injected by failNextExecutions.
+ */
+public class StubDriver implements Driver {
+
+	public static final String URL = "jdbc:stub:test";
+	public static final String ROWS_URL = "jdbc:stub:rows=";
+
+	private static final AtomicLong keySequence = new AtomicLong();
+	private static final AtomicInteger nrofFailuresToInject = new AtomicInteger();
+	private static volatile String injectedSqlState;
+	private static volatile long validationDelay;
+
+	static {
+		try {
+			DriverManager.registerDriver(new StubDriver());
+		} catch (SQLException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * Makes the next executions of statements on any connection fail.
+	 *
+	 * @param nrofFailures
+	 * @param sqlState     SQLState of the exceptions thrown
+	 */
+	public static void failNextExecutions(int nrofFailures, String sqlState) {
+		injectedSqlState = sqlState;
+		nrofFailuresToInject.set(nrofFailures);
+	}
+
+	/**
+	 * @param delay time in millis Connection.isValid takes
+	 */
+	public static void setValidationDelay(long delay) {
+		validationDelay = delay;
+	}
+
+	private static void throwInjectedFailure() throws SQLException {
+		int nrofFailures;
+		while ((nrofFailures = nrofFailuresToInject.get()) > 0) {
+			if (nrofFailuresToInject.compareAndSet(nrofFailures, nrofFailures - 1)) {
+				throw new SQLException("injected failure", injectedSqlState);
+			}
+		}
+	}
+
+	public Connection connect(String url, Properties info) throws SQLException {
+		if (!acceptsURL(url)) {
+			return null;
+		}
+		int nrofRows = 0;
+		if (url.startsWith(ROWS_URL)) {
+			nrofRows = Integer.parseInt(url.substring(ROWS_URL.length()));
+		}
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[]{Connection.class}, new StubConnection(nrofRows));
+	}
+
+	private static class StubConnection implements InvocationHandler {
+		private boolean closed;
+		private boolean autoCommit = true;
+		private final int nrofRows;
+
+		private StubConnection(int nrofRows) {
+			this.nrofRows = nrofRows;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+			if ("close".equals(methodName)) {
+				closed = true;
+			} else if ("isClosed".equals(methodName)) {
+				return closed;
+			} else if ("isValid".equals(methodName)) {
+				if (validationDelay > 0) {
+					try {
+						Thread.sleep(validationDelay);
+					} catch (InterruptedException e) {
+						//pool stopped while validating
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+				return !closed;
+			} else if ("setAutoCommit".equals(methodName)) {
+				autoCommit = (Boolean) args[0];
+			} else if ("getAutoCommit".equals(methodName)) {
+				return autoCommit;
+			} else if ("getCatalog".equals(methodName)) {
+				return "";
+			} else if ("getTypeMap".equals(methodName)) {
+				return new HashMap();
+			} else if ("getTransactionIsolation".equals(methodName)) {
+				return Connection.TRANSACTION_READ_COMMITTED;
+			} else if ("getHoldability".equals(methodName)) {
+				return ResultSet.HOLD_CURSORS_OVER_COMMIT;
+			} else if ("hashCode".equals(methodName)) {
+				return System.identityHashCode(proxy);
+			} else if ("equals".equals(methodName)) {
+				return proxy == args[0];
+			} else if ("toString".equals(methodName)) {
+				return "stub connection";
+			} else if ("prepareStatement".equals(methodName)) {
+				return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class[]{PreparedStatement.class}, new StubStatement(nrofRows, (String) args[0]));
+			}
+			return defaultValue(method);
+		}
+	}
+
+	private static class StubStatement implements InvocationHandler {
+		private boolean closed;
+		private final int nrofRows;
+		private final boolean isQuery;
+		private int fetchSize;
+		private int maxRows;
+		private int queryTimeout;
+		private boolean failRow;
+		private List<Boolean> batch = new ArrayList<Boolean>();
+		private List<Long> generatedKeys = new ArrayList<Long>();
+
+		private StubStatement(int nrofRows, String sql) {
+			this.nrofRows = nrofRows;
+			this.isQuery = sql.trim().toUpperCase().startsWith("SELECT");
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+			if ("close".equals(methodName)) {
+				closed = true;
+			} else if ("isClosed".equals(methodName)) {
+				return closed;
+			} else if ("setFetchSize".equals(methodName)) {
+				fetchSize = (Integer) args[0];
+			} else if ("getFetchSize".equals(methodName)) {
+				return fetchSize;
+			} else if ("setMaxRows".equals(methodName)) {
+				maxRows = (Integer) args[0];
+			} else if ("getMaxRows".equals(methodName)) {
+				return maxRows;
+			} else if ("setQueryTimeout".equals(methodName)) {
+				queryTimeout = (Integer) args[0];
+			} else if ("getQueryTimeout".equals(methodName)) {
+				return queryTimeout;
+			} else if ("execute".equals(methodName)) {
+				throwInjectedFailure();
+				return isQuery;
+			} else if ("getResultSet".equals(methodName)) {
+				return isQuery ? createResultSet((Statement) proxy, nrofRows) : null;
+			} else if ("executeQuery".equals(methodName)) {
+				throwInjectedFailure();
+				return createResultSet((Statement) proxy, nrofRows);
+			} else if ("setObject".equals(methodName)) {
+				failRow |= "fail".equals(args[1]);
+			} else if ("clearParameters".equals(methodName)) {
+				failRow = false;
+			} else if ("addBatch".equals(methodName)) {
+				batch.add(failRow);
+				failRow = false;
+			} else if ("clearBatch".equals(methodName)) {
+				batch.clear();
+			} else if ("executeUpdate".equals(methodName)) {
+				throwInjectedFailure();
+				generatedKeys.clear();
+				generatedKeys.add(keySequence.incrementAndGet());
+				return 1;
+			} else if ("getGeneratedKeys".equals(methodName)) {
+				return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class[]{ResultSet.class}, new StubKeys(generatedKeys));
+			} else if ("executeBatch".equals(methodName)) {
+				int nrofRows = batch.indexOf(Boolean.TRUE);
+				int[] updateCounts = new int[nrofRows >= 0 ? nrofRows : batch.size()];
+				Arrays.fill(updateCounts, 1);
+				batch.clear();
+				generatedKeys.clear();
+				for (int i = 0; i < updateCounts.length; i++) {
+					generatedKeys.add(keySequence.incrementAndGet());
+				}
+				if (nrofRows >= 0) {
+					throw new BatchUpdateException("row " + nrofRows + " failed", updateCounts);
+				}
+				return updateCounts;
+			} else if ("hashCode".equals(methodName)) {
+				return System.identityHashCode(proxy);
+			} else if ("equals".equals(methodName)) {
+				return proxy == args[0];
+			} else if ("toString".equals(methodName)) {
+				return "stub statement";
+			}
+			return defaultValue(method);
+		}
+	}
+
+	/**
+	 * @param statement statement the result set belongs to, may be null
+	 * @param nrofRows
+	 * @return result set with generated rows
+	 */
+	public static ResultSet createResultSet(Statement statement, int nrofRows) {
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class[]{ResultSet.class}, new StubResultSet(statement, nrofRows));
+	}
+
+	private static class StubKeys implements InvocationHandler {
+		private final List<Long> keys;
+		private int row;
+
+		private StubKeys(List<Long> keys) {
+			this.keys = new ArrayList<Long>(keys);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+			if ("next".equals(methodName)) {
+				return ++row <= keys.size();
+			} else if ("getObject".equals(methodName) || "getLong".equals(methodName)) {
+				return keys.get(row - 1);
+			}
+			return defaultValue(method);
+		}
+	}
+
+	private static final String[] COLUMN_NAMES = {"ID", "NAME", "AMOUNT"};
+	private static final int[] COLUMN_TYPES = {Types.INTEGER, Types.VARCHAR, Types.BIGINT};
+	private static final String[] COLUMN_CLASS_NAMES = {Integer.class.getName(), String.class.getName(), Long.class.getName()};
+
+	private static class StubMetaData implements InvocationHandler {
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+			if ("getColumnCount".equals(methodName)) {
+				return COLUMN_NAMES.length;
+			} else if ("getColumnName".equals(methodName) || "getColumnLabel".equals(methodName)) {
+				return COLUMN_NAMES[(Integer) args[0] - 1];
+			} else if ("getColumnType".equals(methodName)) {
+				return COLUMN_TYPES[(Integer) args[0] - 1];
+			} else if ("getColumnClassName".equals(methodName)) {
+				return COLUMN_CLASS_NAMES[(Integer) args[0] - 1];
+			}
+			return defaultValue(method);
+		}
+	}
+
+	private static class StubResultSet implements InvocationHandler {
+		private final Statement statement;
+		private final int nrofRows;
+		private int row;
+		private boolean wasNull;
+
+		private Object getValue(Object column) {
+			int columnIndex = column instanceof Integer ? (Integer) column : 1 + Arrays.asList(COLUMN_NAMES).indexOf(column.toString().toUpperCase());
+			Object value;
+			switch (columnIndex) {
+				case 1:
+					value = row;
+					break;
+				case 2:
+					value = row % 10 == 0 ? null : "name" + (row % 7);
+					break;
+				case 3:
+					value = row * 1000000000L;
+					break;
+				default:
+					throw new IllegalArgumentException("column " + column + " does not exist");
+			}
+			wasNull = value == null;
+			return value;
+		}
+
+		private StubResultSet(Statement statement, int nrofRows) {
+			this.statement = statement;
+			this.nrofRows = nrofRows;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+			if ("next".equals(methodName)) {
+				return ++row <= nrofRows;
+			} else if ("getStatement".equals(methodName)) {
+				return statement;
+			} else if ("getMetaData".equals(methodName)) {
+				return Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(), new Class[]{ResultSetMetaData.class}, new StubMetaData());
+			} else if ("wasNull".equals(methodName)) {
+				return wasNull;
+			} else if ("getInt".equals(methodName)) {
+				Object value = getValue(args[0]);
+				return value != null ? ((Number) value).intValue() : 0;
+			} else if ("getLong".equals(methodName)) {
+				Object value = getValue(args[0]);
+				return value != null ? ((Number) value).longValue() : 0L;
+			} else if ("getString".equals(methodName)) {
+				Object value = getValue(args[0]);
+				return value != null ? value.toString() : null;
+			} else if ("getObject".equals(methodName)) {
+				return getValue(args[0]);
+			} else if ("hashCode".equals(methodName)) {
+				return System.identityHashCode(proxy);
+			} else if ("equals".equals(methodName)) {
+				return proxy == args[0];
+			} else if ("toString".equals(methodName)) {
+				return "stub result set";
+			}
+			return defaultValue(method);
+		}
+	}
+
+	private static Object defaultValue(Method method) {
+		Class returnType = method.getReturnType();
+		if (returnType == Boolean.TYPE) {
+			return false;
+		} else if (returnType == Integer.TYPE) {
+			return 0;
+		} else if (returnType == Long.TYPE) {
+			return 0L;
+		}
+		return null;
+	}
+
+	public boolean acceptsURL(String url) {
+		return url.startsWith("jdbc:stub:");
+	}
+
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+}
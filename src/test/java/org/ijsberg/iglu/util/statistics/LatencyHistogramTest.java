@@ -0,0 +1,84 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.util.statistics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBucketBoundaries() throws Exception {
+		long previousUpperBound = -1;
+		for (int i = 0; i < 150; i++) {
+			long upperBound = LatencyHistogram.getBucketUpperBound(i);
+			assertEquals(previousUpperBound + 1, lowerBound(i));
+			assertEquals(i, LatencyHistogram.getBucketIndex(lowerBound(i)));
+			assertEquals(i, LatencyHistogram.getBucketIndex(upperBound));
+			previousUpperBound = upperBound;
+		}
+	}
+
+	private static long lowerBound(int index) {
+		return index == 0 ? 0 : LatencyHistogram.getBucketUpperBound(index - 1) + 1;
+	}
+
+	@Test
+	public void testPercentiles() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(500, snapshot.getMean());
+		assertEquals(1000, snapshot.getMax());
+		assertEquals(500, snapshot.getPercentile(50), 500 / 4);
+		assertEquals(990, snapshot.getPercentile(99), 990 / 4);
+		assertEquals(1000, snapshot.getPercentile(100));
+		assertEquals(Long.valueOf(1000), snapshot.toMap("load_").get("load_count"));
+
+		histogram.reset();
+		assertEquals(0, histogram.getSnapshot().getCount());
+		assertEquals(0, histogram.getSnapshot().getPercentile(99));
+	}
+
+	@Test
+	public void testStripedCounter() throws Exception {
+		final StripedCounter counter = new StripedCounter();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						counter.increment();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(40000, counter.get());
+		counter.reset();
+		assertEquals(0, counter.get());
+	}
+}